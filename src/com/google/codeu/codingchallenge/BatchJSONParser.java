@@ -0,0 +1,210 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Parses newline-delimited JSON-lite, one record per line, on a pool of
+// threads. The input is cut into chunks of lines at newline boundaries and
+// each chunk is parsed by one task; results always come back in input
+// order. A record that fails to parse is reported with its line number and
+// the rest of the batch carries on.
+//
+// Blank lines are skipped and a "\r" before a newline is ignored. Since a
+// record ends at the first newline, strings inside records can't contain
+// raw newlines (escaped ones are fine).
+final class BatchJSONParser implements Closeable {
+
+  // CALLBACK
+  //
+  // Receives the records of a batch in input order, on the thread that
+  // called parse. Lines are numbered from 1.
+  interface Callback {
+
+    void record(long line, JSON object);
+
+    void error(long line, IOException error);
+  }
+
+  // The outcome of parsing one line: either the object or the error.
+  static final class Record {
+
+    final long line;
+    final JSON object;
+    final IOException error;
+
+    Record(long line, JSON object, IOException error) {
+      this.line = line;
+      this.object = object;
+      this.error = error;
+    }
+  }
+
+  // Lines per task. Large enough that scheduling costs vanish next to
+  // parsing, small enough to spread a modest batch over every thread.
+  private static final int CHUNK_LINES = 512;
+
+  private final JSONFactory factory;
+  private final ForkJoinPool pool;
+  private final int threads;
+
+  public BatchJSONParser(JSONFactory factory, int threads) {
+    this.factory = factory;
+    this.threads = threads;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  // PARSE
+  //
+  // Parse every line of the input and return the records in order.
+  public List<Record> parse(CharSequence in) throws InterruptedException {
+    final List<Record> records = new ArrayList<>();
+    parse(in, new Callback() {
+      @Override
+      public void record(long line, JSON object) {
+        records.add(new Record(line, object, null));
+      }
+
+      @Override
+      public void error(long line, IOException error) {
+        records.add(new Record(line, null, error));
+      }
+    });
+    return records;
+  }
+
+  // PARSE FILE
+  //
+  // Parse every line of a UTF-8 file and return the records in order.
+  public List<Record> parse(Path file) throws IOException, InterruptedException {
+    return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+  }
+
+  // PARSE WITH CALLBACK
+  //
+  // Parse every line of the input and hand the records to the callback in
+  // order. Only a few chunks per thread are in flight at once, so results
+  // don't pile up when the callback consumes them as they come.
+  public void parse(CharSequence in, Callback callback) throws InterruptedException {
+    final ArrayDeque<Future<Record[]>> pending = new ArrayDeque<>();
+    final int window = threads * 4;
+    final int length = in.length();
+    int start = 0;
+    long line = 1;
+    while (start < length || !pending.isEmpty()) {
+      while (start < length && pending.size() < window) {
+        int end = start;
+        int lines = 0;
+        while (end < length && lines < CHUNK_LINES) {
+          if (in.charAt(end++) == '\n') {
+            ++lines;
+          }
+        }
+        if (end == length && in.charAt(end - 1) != '\n') {
+          ++lines;  // the last line has no newline
+        }
+        pending.add(pool.submit(new Chunk(in, start, end, line)));
+        start = end;
+        line += lines;
+      }
+      for (final Record record : await(pending.remove())) {
+        if (record.error == null) {
+          callback.record(record.line, record.object);
+        } else {
+          callback.error(record.line, record.error);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+
+  private static Record[] await(Future<Record[]> chunk) throws InterruptedException {
+    try {
+      return chunk.get();
+    } catch (ExecutionException ex) {
+      // Parse errors are captured per record, so this is a bug in a parser.
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  // Parses the lines in [start, end) of the input.
+  private final class Chunk implements Callable<Record[]> {
+
+    private final CharSequence in;
+    private final int start;
+    private final int end;
+    private final long firstLine;
+
+    Chunk(CharSequence in, int start, int end, long firstLine) {
+      this.in = in;
+      this.start = start;
+      this.end = end;
+      this.firstLine = firstLine;
+    }
+
+    @Override
+    public Record[] call() {
+      final JSONParser parser = factory.parser();
+      final ArrayList<Record> records = new ArrayList<>();
+      long line = firstLine;
+      int from = start;
+      while (from < end) {
+        int to = from;
+        while (to < end && in.charAt(to) != '\n') {
+          ++to;
+        }
+        int last = to;
+        if (last > from && in.charAt(last - 1) == '\r') {
+          --last;
+        }
+        if (!isBlank(from, last)) {
+          try {
+            records.add(new Record(line, parser.parse(in.subSequence(from, last).toString()), null));
+          } catch (IOException ex) {
+            records.add(new Record(line, null, ex));
+          }
+        }
+        from = to + 1;
+        ++line;
+      }
+      return records.toArray(new Record[records.size()]);
+    }
+
+    private boolean isBlank(int from, int to) {
+      for (int i = from; i < to; ++i) {
+        final char c = in.charAt(i);
+        if (c != ' ' && c != '\t' && c != '\r') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,1217 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Usage: bench.sh [filter] [--sizes=10,1000,100000] [--csv=results.csv]
+//
+// Only benchmarks whose name contains the filter are run. Sizes are the
+// number of entries in the generated documents of the size-parameterized
+// benchmarks.
+final class BenchMain {
+
+  public static void main(String[] args) throws Exception {
+    String filter = "";
+    int[] sizes = { 10, 1000, 100000 };
+    String csv = null;
+    for (final String arg : args) {
+      if (arg.startsWith("--sizes=")) {
+        final String[] parts = arg.substring("--sizes=".length()).split(",");
+        sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+          sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+      } else if (arg.startsWith("--csv=")) {
+        csv = arg.substring("--csv=".length());
+      } else {
+        filter = arg;
+      }
+    }
+
+    final Benchmarker benchmarks = new Benchmarker();
+    addParserBenchmarks(benchmarks, sizes);
+    addModelBenchmarks(benchmarks, sizes);
+    addUtf8Benchmarks(benchmarks);
+    addLazyBenchmarks(benchmarks);
+    addWriterBenchmarks(benchmarks);
+    addBatchBenchmarks(benchmarks);
+    addConcurrencyBenchmarks(benchmarks);
+    addKeyTableBenchmarks(benchmarks);
+    addCacheBenchmarks(benchmarks);
+    addPersistentBenchmarks(benchmarks);
+    addPathBenchmarks(benchmarks);
+    addBinaryBenchmarks(benchmarks);
+    addIncrementalBenchmarks(benchmarks);
+    addLimitBenchmarks(benchmarks);
+    addInstrumentationBenchmarks(benchmarks);
+    addLargeDocumentBenchmarks(benchmarks);
+    addContextBenchmarks(benchmarks);
+    addDiffBenchmarks(benchmarks);
+    addTransformBenchmarks(benchmarks);
+    addBindingBenchmarks(benchmarks);
+    addCollectionBenchmarks(benchmarks);
+    addFootprints(benchmarks);
+
+    if (csv == null) {
+      benchmarks.run(filter);
+    } else {
+      try (PrintWriter out = new PrintWriter(new FileWriter(csv))) {
+        benchmarks.writeCsv(out);
+        benchmarks.run(filter);
+      }
+    }
+  }
+
+  // MyJSONParser.parse on the basic document shapes, and the scanner on its
+  // own (which should allocate nothing, whatever the input).
+  private static void addParserBenchmarks(Benchmarker benchmarks, int[] sizes) {
+    final JSONParser parser = new MyJSONParser();
+    final JSONParser scanOnly = scanOnly();
+    addParse(benchmarks, "parse: MyJSONParser small", parser, Documents.small());
+    for (final int n : sizes) {
+      addParse(benchmarks, "scan: JSONScanner only flat n=" + n, scanOnly, Documents.flat(n));
+      addParse(benchmarks, "scan: JSONScanner only escapes n=" + n, scanOnly, Documents.escapes(n));
+      addParse(benchmarks, "parse: MyJSONParser flat n=" + n, parser, Documents.flat(n));
+      addParse(benchmarks, "parse: MyJSONParser wide n=" + n, parser, Documents.wide(n));
+      addParse(benchmarks, "parse: MyJSONParser deep n=" + n, parser, Documents.deep(n));
+      addParse(benchmarks, "parse: MyJSONParser escapes n=" + n, parser, Documents.escapes(n));
+    }
+  }
+
+  private static void addParse(Benchmarker benchmarks, String name, final JSONParser parser, final String in) {
+    benchmarks.add(name, in.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return parser.parse(in);
+      }
+    });
+  }
+
+  // A "parser" that only runs the scanner and builds nothing.
+  private static JSONParser scanOnly() {
+    return new JSONParser() {
+      @Override
+      public JSON parse(String in) throws IOException {
+        new JSONScanner(in, new JSONHandler() {
+          @Override
+          public void startObject(int position) {}
+
+          @Override
+          public void key(int start, int end, boolean escaped) {}
+
+          @Override
+          public void string(int start, int end, boolean escaped) {}
+
+          @Override
+          public void endObject(int position) {}
+        }).scan();
+        return null;
+      }
+    };
+  }
+
+  // Lookups and enumeration on a MyJSON with n strings and n objects.
+  private static void addModelBenchmarks(Benchmarker benchmarks, int[] sizes) {
+    for (final int n : sizes) {
+      final MyJSON object = new MyJSON();
+      final String[] strings = new String[n];
+      final String[] objects = new String[n];
+      for (int i = 0; i < n; ++i) {
+        strings[i] = "string " + i;
+        objects[i] = "object " + i;
+        object.setString(strings[i], "value " + i);
+        object.setObject(objects[i], new MyJSON());
+      }
+
+      benchmarks.add("model: MyJSON.getString hit n=" + n, new Benchmark() {
+        private int next;
+
+        @Override
+        public Object run() {
+          next = next + 1 == n ? 0 : next + 1;
+          return object.getString(strings[next]);
+        }
+      });
+
+      benchmarks.add("model: MyJSON.getString miss n=" + n, new Benchmark() {
+        private int next;
+
+        @Override
+        public Object run() {
+          next = next + 1 == n ? 0 : next + 1;
+          return object.getString(objects[next]);
+        }
+      });
+
+      benchmarks.add("model: MyJSON.getObject hit n=" + n, new Benchmark() {
+        private int next;
+
+        @Override
+        public Object run() {
+          next = next + 1 == n ? 0 : next + 1;
+          return object.getObject(objects[next]);
+        }
+      });
+
+      final ArrayList<String> names = new ArrayList<>(n);
+      benchmarks.add("model: MyJSON.getStrings n=" + n, new Benchmark() {
+        @Override
+        public Object run() {
+          names.clear();
+          object.getStrings(names);
+          return names;
+        }
+      });
+
+      benchmarks.add("model: MyJSON.getObjects n=" + n, new Benchmark() {
+        @Override
+        public Object run() {
+          names.clear();
+          object.getObjects(names);
+          return names;
+        }
+      });
+    }
+  }
+
+  // The String path against the byte path on a large UTF-8 file.
+  private static void addUtf8Benchmarks(Benchmarker benchmarks) throws Exception {
+    final byte[] large = Documents.users(100000).getBytes(StandardCharsets.UTF_8);
+    final Path file = Files.createTempFile("codeu-bench", ".json");
+    file.toFile().deleteOnExit();
+    Files.write(file, large);
+
+    benchmarks.add("UTF-8 file: read + decode + MyJSONParser", large.length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new MyJSONParser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      }
+    });
+
+    benchmarks.add("UTF-8 file: mapped + Utf8JSONParser", large.length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new Utf8JSONParser().parse(file);
+      }
+    });
+
+    benchmarks.add("UTF-8 bytes: decode + MyJSONParser", large.length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new MyJSONParser().parse(new String(large, StandardCharsets.UTF_8));
+      }
+    });
+
+    benchmarks.add("UTF-8 bytes: Utf8JSONParser", large.length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new Utf8JSONParser().parse(ByteBuffer.wrap(large));
+      }
+    });
+
+    benchmarks.add("UTF-8 bytes: Utf8JSONParser + one lookup", large.length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new Utf8JSONParser().parse(ByteBuffer.wrap(large))
+            .getObject("user 500").getString("name");
+      }
+    });
+  }
+
+  // Reading a few values out of a large record, eagerly and lazily.
+  private static void addLazyBenchmarks(Benchmarker benchmarks) {
+    final String record = Documents.flat(300);
+    benchmarks.add("300-key record: MyJSONParser + 3 lookups", record.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        final JSON obj = new MyJSONParser().parse(record);
+        return obj.getString("field 7") + obj.getString("field 150") + obj.getObject("nested").getString("id");
+      }
+    });
+
+    benchmarks.add("300-key record: LazyJSONParser + 3 lookups", record.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        final JSON obj = new LazyJSONParser().parse(record);
+        return obj.getString("field 7") + obj.getString("field 150") + obj.getObject("nested").getString("id");
+      }
+    });
+  }
+
+  private static void addWriterBenchmarks(Benchmarker benchmarks) throws Exception {
+    final String text = Documents.users(100000);
+    final JSON users = new MyJSONParser().parse(text);
+    final int length = text.getBytes(StandardCharsets.UTF_8).length;
+
+    benchmarks.add("JSONWriter: 100000 users to StringBuilder", length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        final StringBuilder out = new StringBuilder(length);
+        new JSONWriter(out).object(users);
+        return out;
+      }
+    });
+
+    final ByteBuffer output = ByteBuffer.allocate(length * 2);
+    benchmarks.add("JSONWriter: 100000 users to ByteBuffer", length, new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        output.clear();
+        new JSONWriter(output).object(users);
+        return output;
+      }
+    });
+  }
+
+  // Parsing 200000 newline-delimited records on 1, 2, 4 and 8 threads.
+  private static void addBatchBenchmarks(Benchmarker benchmarks) {
+    final StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 200000; ++i) {
+      lines.append(Documents.small()).append('\n');
+    }
+    final String in = lines.toString();
+    for (final int threads : new int[] { 1, 2, 4, 8 }) {
+      final BatchJSONParser batch = new BatchJSONParser(new MyJSONFactory(), threads);
+      // Records are dropped as they arrive so the collector doesn't end up
+      // measuring the retention of 200000 trees.
+      benchmarks.add("batch: 200000 records, threads=" + threads, in.length(), new Benchmark() {
+        private int parsed;
+
+        @Override
+        public Object run() throws Exception {
+          batch.parse(in, new BatchJSONParser.Callback() {
+            @Override
+            public void record(long line, JSON object) {
+              ++parsed;
+            }
+
+            @Override
+            public void error(long line, IOException error) {
+              throw new IllegalStateException(error);
+            }
+          });
+          return parsed;
+        }
+      });
+    }
+  }
+
+  // Eight threads sharing one 16-key object, 95% reads and 5% writes.
+  private static void addConcurrencyBenchmarks(Benchmarker benchmarks) {
+    final ExecutorService pool = Executors.newFixedThreadPool(8, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable task) {
+        final Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    final JSON[] shared = { new ConcurrentJSON(), new SynchronizedJSON(new MyJSON()) };
+    for (final JSON object : shared) {
+      for (int i = 0; i < 16; ++i) {
+        object.setString("key " + i, "value " + i);
+      }
+      final String name = object.getClass().getSimpleName();
+      benchmarks.add("contention: 8 threads x 10000 ops, " + name, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          final CountDownLatch done = new CountDownLatch(8);
+          for (int t = 0; t < 8; ++t) {
+            final int id = t;
+            pool.execute(new Runnable() {
+              @Override
+              public void run() {
+                for (int i = 0; i < 10000; ++i) {
+                  final String key = "key " + ((i + id) & 15);
+                  if (i % 20 == 0) {
+                    object.setString(key, "value");
+                  } else {
+                    object.getString(key);
+                  }
+                }
+                done.countDown();
+              }
+            });
+          }
+          done.await();
+          return object;
+        }
+      });
+    }
+  }
+
+  // The simplest way to share a MyJSON: one lock around every call.
+  private static final class SynchronizedJSON implements JSON {
+
+    private final JSON object;
+
+    SynchronizedJSON(JSON object) {
+      this.object = object;
+    }
+
+    @Override
+    public synchronized JSON getObject(String name) {
+      return object.getObject(name);
+    }
+
+    @Override
+    public synchronized JSON setObject(String name, JSON value) {
+      object.setObject(name, value);
+      return this;
+    }
+
+    @Override
+    public synchronized String getString(String name) {
+      return object.getString(name);
+    }
+
+    @Override
+    public synchronized JSON setString(String name, String value) {
+      object.setString(name, value);
+      return this;
+    }
+
+    @Override
+    public synchronized void getObjects(Collection<String> names) {
+      object.getObjects(names);
+    }
+
+    @Override
+    public synchronized void getStrings(Collection<String> names) {
+      object.getStrings(names);
+    }
+  }
+
+  // Many small records with one schema, parsed with and without a shared
+  // key table, then looked up by key.
+  private static void addKeyTableBenchmarks(Benchmarker benchmarks) {
+    final String[] records = new String[1000];
+    int length = 0;
+    for (int i = 0; i < records.length; ++i) {
+      records[i] = "{ \"id\": \"" + i + "\", \"name\": { \"first\": \"sam\", \"last\": \"doe\" },"
+          + " \"city\": \"Mountain View\", \"zip\": \"94043\" }";
+      length += records[i].length();
+    }
+    final KeyTable keys = new KeyTable(1024);
+    final JSONParser[] parsers = { new MyJSONParser(), new MyJSONParser(keys) };
+    final String[] names = { "MyJSONParser", "MyJSONParser + KeyTable" };
+    for (int p = 0; p < parsers.length; ++p) {
+      final JSONParser parser = parsers[p];
+      benchmarks.add("keys: 1000 records + 3 lookups each, " + names[p], length, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          int found = 0;
+          for (final String record : records) {
+            final JSON object = parser.parse(record);
+            found += object.getString("id").length() + object.getString("zip").length()
+                + object.getObject("name").getString("last").length();
+          }
+          return found;
+        }
+      });
+    }
+  }
+
+  // Re-parsing a rotation of 8 flag payloads, directly and through caches
+  // that either hold them all or hold too few, so every parse misses.
+  private static void addCacheBenchmarks(Benchmarker benchmarks) {
+    final String[] payloads = new String[8];
+    int length = 0;
+    for (int i = 0; i < payloads.length; ++i) {
+      payloads[i] = "{ \"flag\": \"feature " + i + "\", \"enabled\": \"true\", \"rollout\": { "
+          + "\"percent\": \"" + (i * 10) + "\", \"regions\": \"us-east, eu-west\" }, "
+          + "\"owner\": \"team " + i + "\", \"note\": \"see the \\\"launch\\\" doc\" }";
+      length += payloads[i].length();
+    }
+    final MyJSONFactory plain = new MyJSONFactory();
+    final JSONParser[] parsers = {
+      plain.parser(),
+      new CachingJSONFactory(plain, 64, 1 << 20).parser(),
+      new CachingJSONFactory(plain, 4, 1 << 20).parser()
+    };
+    final String[] names = { "MyJSONParser", "CachingJSONParser, all hits", "CachingJSONParser, all misses" };
+    for (int p = 0; p < parsers.length; ++p) {
+      final JSONParser parser = parsers[p];
+      benchmarks.add("cache: 8 payloads + 1 lookup each, " + names[p], length, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          int found = 0;
+          for (final String payload : payloads) {
+            found += parser.parse(payload).getObject("rollout").getString("percent").length();
+          }
+          return found;
+        }
+      });
+    }
+  }
+
+  // Answering path queries: a full parse then navigation, against a parse
+  // that only builds what the paths select.
+  private static void addPathBenchmarks(Benchmarker benchmarks) {
+    addPath(benchmarks, "1000 users", Documents.users(1000), "user 500.city");
+    addPath(benchmarks, "1000 users", Documents.users(1000), "*.city");
+    addPath(benchmarks, "300-key record", Documents.flat(300), "nested.id", "field 7");
+  }
+
+  private static void addPath(Benchmarker benchmarks, String document, final String in, String... selectors) {
+    final JSONPath[] paths = new JSONPath[selectors.length];
+    for (int i = 0; i < paths.length; ++i) {
+      paths[i] = JSONPath.compile(selectors[i]);
+    }
+    final JSONParser[] parsers = { new MyJSONParser(), new LazyJSONParser(), new ProjectingJSONParser(paths) };
+    for (final JSONParser parser : parsers) {
+      final String name = String.format("path: %s %s, %s", document, Arrays.toString(selectors),
+          parser.getClass().getSimpleName());
+      benchmarks.add(name, in.length(), new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          final JSON root = parser.parse(in);
+          final ArrayList<String> found = new ArrayList<>();
+          for (final JSONPath path : paths) {
+            path.selectStrings(root, found);
+          }
+          return found;
+        }
+      });
+    }
+  }
+
+  // The binary form against text for the same trees: size, encoding and
+  // decoding, and reading a few values straight from a view.
+  private static void addBinaryBenchmarks(Benchmarker benchmarks) throws Exception {
+    addBinary(benchmarks, "1000 users", new MyJSONParser().parse(Documents.users(1000)), "user 500");
+    addBinary(benchmarks, "300-key record", new MyJSONParser().parse(Documents.flat(300)), "nested");
+  }
+
+  private static void addBinary(Benchmarker benchmarks, String document, final JSON tree, final String child)
+      throws Exception {
+    final String text = JSONWriter.toString(tree);
+    final int textSize = text.getBytes(StandardCharsets.UTF_8).length;
+    final ByteBuffer plain = BinaryJSONEncoder.encode(tree, false);
+    final ByteBuffer dictionary = BinaryJSONEncoder.encode(tree, true);
+    final String sizes = String.format("%s (text %d B, binary %d B, dictionary %d B)", document, textSize,
+        plain.remaining(), dictionary.remaining());
+
+    benchmarks.add("binary: encode " + sizes + ", text", new Benchmark() {
+      @Override
+      public Object run() {
+        return JSONWriter.toString(tree);
+      }
+    });
+    benchmarks.add("binary: encode " + sizes + ", binary", new Benchmark() {
+      @Override
+      public Object run() {
+        return BinaryJSONEncoder.encode(tree, false);
+      }
+    });
+    benchmarks.add("binary: encode " + sizes + ", dictionary", new Benchmark() {
+      @Override
+      public Object run() {
+        return BinaryJSONEncoder.encode(tree, true);
+      }
+    });
+    benchmarks.add("binary: decode " + document + ", MyJSONParser", new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return new MyJSONParser().parse(text);
+      }
+    });
+    benchmarks.add("binary: decode " + document + ", binary", new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return BinaryJSONDecoder.decode(plain);
+      }
+    });
+    benchmarks.add("binary: decode " + document + ", dictionary", new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return BinaryJSONDecoder.decode(dictionary);
+      }
+    });
+    final ByteBuffer[] views = { plain, dictionary };
+    final String[] names = { "binary", "dictionary" };
+    for (int v = 0; v < views.length; ++v) {
+      final ByteBuffer buffer = views[v];
+      benchmarks.add("binary: view + 1 nested lookup " + document + ", " + names[v], new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          return BinaryJSONDecoder.view(buffer).getObject(child);
+        }
+      });
+      final JSON view = BinaryJSONDecoder.view(buffer);
+      benchmarks.add("binary: 1 nested lookup on an open view " + document + ", " + names[v], new Benchmark() {
+        @Override
+        public Object run() {
+          return view.getObject(child);
+        }
+      });
+    }
+  }
+
+  // A stream of 100 messages arriving as 1460-byte segments (one TCP
+  // segment each), parsed as they come, against collecting the whole
+  // stream first and parsing each message from a String.
+  private static void addIncrementalBenchmarks(Benchmarker benchmarks) {
+    final StringBuilder stream = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      stream.append(Documents.users(10).replace('\n', ' ')).append('\n');
+    }
+    final byte[] bytes = stream.toString().getBytes(StandardCharsets.UTF_8);
+    final JSONFactory factory = new MyJSONFactory();
+
+    benchmarks.add("incremental: 100 messages in 1460 B segments, IncrementalJSONParser", bytes.length,
+        new Benchmark() {
+          @Override
+          public Object run() throws Exception {
+            final IncrementalJSONParser parser = new IncrementalJSONParser(factory);
+            int messages = 0;
+            for (int at = 0; at < bytes.length; at += 1460) {
+              parser.feed(ByteBuffer.wrap(bytes, at, Math.min(1460, bytes.length - at)));
+              while (parser.nextObject() != null) {
+                ++messages;
+              }
+            }
+            parser.finish();
+            return messages;
+          }
+        });
+    benchmarks.add("incremental: 100 messages in 1460 B segments, buffer + MyJSONParser", bytes.length,
+        new Benchmark() {
+          @Override
+          public Object run() throws Exception {
+            final ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+            for (int at = 0; at < bytes.length; at += 1460) {
+              buffered.write(bytes, at, Math.min(1460, bytes.length - at));
+            }
+            final String text = new String(buffered.toByteArray(), StandardCharsets.UTF_8);
+            final JSONParser parser = factory.parser();
+            int messages = 0;
+            for (int start = 0, end; (end = text.indexOf('\n', start)) >= 0; start = end + 1) {
+              parser.parse(text.substring(start, end));
+              ++messages;
+            }
+            return messages;
+          }
+        });
+  }
+
+  // What checking JSONLimits costs on ordinary documents, and how soon a
+  // hostile one is turned away.
+  private static void addLimitBenchmarks(Benchmarker benchmarks) {
+    final String[] names = { "users(1000)", "wide(10000)", "deep(200)" };
+    final String[] documents = { Documents.users(1000), Documents.wide(10000), Documents.deep(200) };
+    for (int i = 0; i < documents.length; ++i) {
+      final String document = documents[i];
+      addParse(benchmarks, "limits: " + names[i] + ", no limits", new MyJSONParser(), document);
+      addParse(benchmarks, "limits: " + names[i] + ", UNTRUSTED",
+          new MyJSONParser(null, JSONLimits.UNTRUSTED), document);
+    }
+
+    final String hostile = Documents.deep(1000000);
+    addParse(benchmarks, "limits: deep(1000000), no limits", new MyJSONParser(), hostile);
+    benchmarks.add("limits: deep(1000000), UNTRUSTED rejects", hostile.length(), new Benchmark() {
+      final JSONParser parser = new MyJSONParser(null, JSONLimits.UNTRUSTED);
+
+      @Override
+      public Object run() throws Exception {
+        try {
+          return parser.parse(hostile);
+        } catch (IOException ex) {
+          return ex;
+        }
+      }
+    });
+  }
+
+  // What InstrumentedJSONParser adds to a parse: enabled with the default
+  // sampling, enabled and sampling every parse, and disabled.
+  private static void addInstrumentationBenchmarks(Benchmarker benchmarks) {
+    final String[] names = { "small()", "users(100)" };
+    final String[] documents = { Documents.small(), Documents.users(100) };
+    for (int i = 0; i < documents.length; ++i) {
+      final String document = documents[i];
+      final ParseStats disabled = new ParseStats();
+      disabled.setEnabled(false);
+      addParse(benchmarks, "metrics: " + names[i] + ", MyJSONParser", new MyJSONParser(), document);
+      addParse(benchmarks, "metrics: " + names[i] + ", instrumented",
+          new InstrumentedJSONParser(new MyJSONParser(), new ParseStats()), document);
+      addParse(benchmarks, "metrics: " + names[i] + ", instrumented, every parse sampled",
+          new InstrumentedJSONParser(new MyJSONParser(), new ParseStats(), 1), document);
+      addParse(benchmarks, "metrics: " + names[i] + ", instrumented, disabled",
+          new InstrumentedJSONParser(new MyJSONParser(), disabled), document);
+    }
+  }
+
+  // Multi-megabyte documents: the whole parse against the scan alone, to
+  // show how much of the time goes into finding the structure and how much
+  // into building the tree.
+  private static void addLargeDocumentBenchmarks(Benchmarker benchmarks) {
+    final StringBuilder text = new StringBuilder("{");
+    for (int i = 0; i < 2000; ++i) {
+      text.append(i == 0 ? "" : ",").append("\"paragraph ").append(i).append("\": \"");
+      for (int w = 0; w < 150; ++w) {
+        text.append("lorem ipsum ");
+      }
+      text.append("\"");
+    }
+    final String[] names = { "users(20000)", "flat(100000)", "escapes(50000)", "2000 x 1800-char strings" };
+    final String[] documents = {
+      Documents.users(20000), Documents.flat(100000), Documents.escapes(50000), text.append('}').toString()
+    };
+    final JSONParser scanOnly = scanOnly();
+    for (int i = 0; i < documents.length; ++i) {
+      addParse(benchmarks, "large: " + names[i] + ", MyJSONParser", new MyJSONParser(), documents[i]);
+      addParse(benchmarks, "large: " + names[i] + ", JSONScanner only", scanOnly, documents[i]);
+    }
+  }
+
+  // Allocation per parse, which is what drives young collections, for a
+  // request handler that parses, reads a field and drops the tree.
+  private static void addContextBenchmarks(Benchmarker benchmarks) {
+    final String[] names = { "small()", "users(100)" };
+    final String[] documents = { Documents.small(), Documents.users(100) };
+    for (int i = 0; i < documents.length; ++i) {
+      final String document = documents[i];
+      final String key = i == 0 ? "city" : "user 0";
+      final JSONParser[] parsers = { new MyJSONParser(), new MyJSONParser(new KeyTable(1024)) };
+      final String[] parserNames = { "MyJSONParser", "MyJSONParser + KeyTable" };
+      for (int p = 0; p < parsers.length; ++p) {
+        final JSONParser parser = parsers[p];
+        benchmarks.add("gc: " + names[i] + ", " + parserNames[p], document.length(), new Benchmark() {
+          @Override
+          public Object run() throws Exception {
+            final JSON json = parser.parse(document);
+            return json.getString(key) == null ? json.getObject(key) : json.getString(key);
+          }
+        });
+      }
+      final ParseContext context = new ParseContext();
+      benchmarks.add("gc: " + names[i] + ", ParseContext", document.length(), new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          final JSON json = context.parse(document);
+          final Object field = json.getString(key) == null ? json.getObject(key) : json.getString(key);
+          context.release();
+          return field;
+        }
+      });
+    }
+  }
+
+  // Diffing two versions of users(n) that differ in a few cities, and
+  // applying the patch. PersistentJSON versions share everything that
+  // didn't change, so diffing them should cost the same at every n; hashed
+  // ImmutableJSON copies skip the unchanged users but still list the root;
+  // MyJSON trees are compared all the way down.
+  private static void addDiffBenchmarks(Benchmarker benchmarks) throws Exception {
+    for (final int n : new int[] { 1000, 100000 }) {
+      final JSON from = new MyJSONParser().parse(Documents.users(n));
+      final PersistentJSON persistentFrom = PersistentJSON.copyOf(from);
+      for (final int changes : new int[] { 1, 100 }) {
+        final JSON to = new MyJSONParser().parse(Documents.users(n));
+        PersistentJSON persistentTo = persistentFrom;
+        for (int i = 0; i < changes; ++i) {
+          final String name = "user " + (i * (n / changes));
+          to.getObject(name).setString("city", "Lisbon");
+          persistentTo = persistentTo.setObject(name, persistentTo.getObject(name).setString("city", "Lisbon"));
+        }
+        final String label = "users(" + n + "), " + changes + (changes == 1 ? " change" : " changes");
+        final JSON[][] pairs = {
+          { persistentFrom, persistentTo },
+          { ImmutableJSON.copyOf(from), ImmutableJSON.copyOf(to) },
+          { from, to },
+        };
+        final String[] kinds = { "PersistentJSON versions", "ImmutableJSON copies", "MyJSON" };
+        for (int k = 0; k < pairs.length; ++k) {
+          final JSON[] pair = pairs[k];
+          benchmarks.add("diff: " + label + ", " + kinds[k], new Benchmark() {
+            @Override
+            public Object run() {
+              return JSONDiff.diff(pair[0], pair[1]);
+            }
+          });
+        }
+        final JSONPatch patch = JSONDiff.diff(persistentFrom, persistentTo);
+        final MyJSON target = MyJSON.copyOf(from);
+        benchmarks.add("patch: " + label + ", apply to MyJSON", new Benchmark() {
+          @Override
+          public Object run() {
+            patch.apply(target);
+            return target;
+          }
+        });
+      }
+    }
+  }
+
+  // Scrubbing records: drop one field, rename one and redact one, by
+  // parsing into MyJSON, editing and writing the tree back out, against a
+  // JSONTransform in one pass, and against a JSONTransform without rules,
+  // which only copies.
+  private static void addTransformBenchmarks(Benchmarker benchmarks) {
+    final String small = Documents.small();
+    final String users = Documents.users(1000);
+    final JSONTransform scrubSmall = JSONTransform.NONE.drop("id").rename("city", "town").redact("name.last", "x");
+    final JSONTransform scrubUsers = JSONTransform.NONE.drop("*.note").rename("*.city", "town").redact("*.name", "x");
+    benchmarks.add("transform: small(), MyJSON tree", small.length(), new Benchmark() {
+      final JSONParser parser = new MyJSONParser();
+
+      @Override
+      public Object run() throws Exception {
+        final MyJSON root = (MyJSON) parser.parse(small);
+        root.remove("id");
+        root.setString("town", root.getString("city"));
+        root.remove("city");
+        root.getObject("name").setString("last", "x");
+        return JSONWriter.toString(root);
+      }
+    });
+    benchmarks.add("transform: users(1000), MyJSON tree", users.length(), new Benchmark() {
+      final JSONParser parser = new MyJSONParser();
+      final ArrayList<String> names = new ArrayList<>();
+
+      @Override
+      public Object run() throws Exception {
+        final JSON root = parser.parse(users);
+        names.clear();
+        root.getObjects(names);
+        for (final String name : names) {
+          final MyJSON user = (MyJSON) root.getObject(name);
+          user.remove("note");
+          user.setString("town", user.getString("city"));
+          user.remove("city");
+          user.setString("name", "x");
+        }
+        return JSONWriter.toString(root);
+      }
+    });
+    final String[] names = { "small()", "users(1000)" };
+    final String[] documents = { small, users };
+    final JSONTransform[] transforms = { scrubSmall, scrubUsers };
+    for (int i = 0; i < documents.length; ++i) {
+      final String document = documents[i];
+      final JSONTransform transform = transforms[i];
+      benchmarks.add("transform: " + names[i] + ", JSONTransform", document.length(), new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          return transform.transform(document);
+        }
+      });
+      benchmarks.add("transform: " + names[i] + ", JSONTransform without rules", document.length(),
+          new Benchmark() {
+            @Override
+            public Object run() throws Exception {
+              return JSONTransform.NONE.transform(document);
+            }
+          });
+    }
+  }
+
+  // Getting typed objects out of a document: JSONBinder straight from the
+  // text, against parsing into MyJSON and copying the fields out by hand.
+  // Making the binder is measured too, warm, and once cold when the first
+  // run of that benchmark reports how long the very first binder and
+  // parse in this JVM took.
+  private static void addBindingBenchmarks(Benchmarker benchmarks) throws Exception {
+    final String small = Documents.small();
+    final long start = System.nanoTime();
+    JSONBinder.of(Person.class).parse(small);
+    final long cold = System.nanoTime() - start;
+
+    final JSONParser parser = new MyJSONParser();
+    final JSONBinder<Person> people = JSONBinder.of(Person.class);
+    benchmarks.add("bind: small(), JSONBinder", small.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return people.parse(small);
+      }
+    });
+    benchmarks.add("bind: small(), MyJSON then copy", small.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return person(parser.parse(small));
+      }
+    });
+
+    final String directory = "{ \"users\": " + Documents.users(1000) + " }";
+    final JSONBinder<Directory> directories = JSONBinder.of(Directory.class);
+    benchmarks.add("bind: users(1000), JSONBinder", directory.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return directories.parse(directory);
+      }
+    });
+    benchmarks.add("bind: users(1000), MyJSON then copy", directory.length(), new Benchmark() {
+      final ArrayList<String> names = new ArrayList<>();
+
+      @Override
+      public Object run() throws Exception {
+        final JSON users = parser.parse(directory).getObject("users");
+        final Directory copy = new Directory();
+        copy.users = new LinkedHashMap<>();
+        names.clear();
+        users.getObjects(names);
+        for (final String name : names) {
+          final JSON from = users.getObject(name);
+          final User user = new User();
+          user.name = from.getString("name");
+          user.city = from.getString("city");
+          user.note = from.getString("note");
+          copy.users.put(name, user);
+        }
+        return copy;
+      }
+    });
+    benchmarks.add("bind: users(1000), MyJSON then JSONBinder.bind", directory.length(), new Benchmark() {
+      @Override
+      public Object run() throws Exception {
+        return directories.bind(parser.parse(directory));
+      }
+    });
+
+    benchmarks.add("bind: JSONBinder.of(Directory), warm", new Benchmark() {
+      private boolean reported;
+
+      @Override
+      public Object run() {
+        if (!reported) {
+          reported = true;
+          System.out.format("COLD  : %-55s %14.1f us\n", "bind: first JSONBinder.of + parse in this JVM", cold / 1e3);
+        }
+        return JSONBinder.of(Directory.class);
+      }
+    });
+  }
+
+  private static Person person(JSON from) {
+    final Person person = new Person();
+    person.id = Integer.parseInt(from.getString("id"));
+    person.city = from.getString("city");
+    final JSON name = from.getObject("name");
+    if (name != null) {
+      person.name = new Name();
+      person.name.first = name.getString("first");
+      person.name.last = name.getString("last");
+    }
+    return person;
+  }
+
+  // The classes bound by the binding benchmarks.
+  private static final class Person {
+    int id;
+    Name name;
+    String city;
+  }
+
+  private static final class Name {
+    String first;
+    String last;
+  }
+
+  private static final class Directory {
+    Map<String, User> users;
+  }
+
+  private static final class User {
+    String name;
+    String city;
+    String note;
+  }
+
+  // Queries on a JSONCollection with and without indexes. The documents
+  // for one size at a time are built when its first case runs, so that the
+  // million-document collections don't all have to fit at once.
+  private static void addCollectionBenchmarks(Benchmarker benchmarks) {
+    for (final int n : new int[] { 10000, 100000, 1000000 }) {
+      benchmarks.add("collection: find id, hash index n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          CollectionFixture.indexed(n).find("id", "user " + (i = (i + 7919) % n), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: find id, scan n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          CollectionFixture.plain(n).find("id", "user " + (i = (i + 7919) % n), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: findPrefix zip, sorted index n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          CollectionFixture.indexed(n).findPrefix("address.zip", String.format("%04d", i = (i + 7919) % 10000), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: findPrefix zip, scan n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          CollectionFixture.plain(n).findPrefix("address.zip", String.format("%04d", i = (i + 7919) % 10000), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: findRange zip, 100 values, sorted index n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          final int from = i = (i + 7919) % 99900;
+          CollectionFixture.indexed(n).findRange("address.zip", String.format("%05d", from), String.format("%05d", from + 100), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: findRange zip, 100 values, scan n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          final ArrayList<Integer> ids = new ArrayList<>();
+          final int from = i = (i + 7919) % 99900;
+          CollectionFixture.plain(n).findRange("address.zip", String.format("%05d", from), String.format("%05d", from + 100), ids);
+          return ids;
+        }
+      });
+      benchmarks.add("collection: setString city, both indexes n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          i = (i + 7919) % n;
+          return CollectionFixture.indexed(n).get(i).setString("city", CITIES[i % CITIES.length]);
+        }
+      });
+      benchmarks.add("collection: setString city, no indexes n=" + n, new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          i = (i + 7919) % n;
+          return CollectionFixture.plain(n).get(i).setString("city", CITIES[i % CITIES.length]);
+        }
+      });
+    }
+  }
+
+  private static final String[] CITIES = new String[50];
+
+  static {
+    for (int i = 0; i < CITIES.length; ++i) {
+      CITIES[i] = "city " + i;
+    }
+  }
+
+  // The collections of the current size, over the same documents: one
+  // with a hash index on "id", a hash index on "city" and a sorted index on
+  // "address.zip", and one without indexes.
+  private static final class CollectionFixture {
+
+    private static int size;
+    private static JSONCollection indexed;
+    private static JSONCollection plain;
+
+    static JSONCollection indexed(int n) {
+      build(n);
+      return indexed;
+    }
+
+    static JSONCollection plain(int n) {
+      build(n);
+      return plain;
+    }
+
+    private static void build(int n) {
+      if (size == n) {
+        return;
+      }
+      indexed = null;
+      plain = null;
+      final JSONCollection withIndexes = new JSONCollection();
+      withIndexes.addHashIndex("id");
+      withIndexes.addHashIndex("city");
+      withIndexes.addSortedIndex("address.zip");
+      final JSONCollection withoutIndexes = new JSONCollection();
+      for (int i = 0; i < n; ++i) {
+        final JSON document = document(i);
+        withIndexes.add(document);
+        withoutIndexes.add(document);
+      }
+      indexed = withIndexes;
+      plain = withoutIndexes;
+      size = n;
+    }
+
+    private static JSON document(int i) {
+      return new MyJSON()
+          .setString("id", "user " + i)
+          .setString("city", CITIES[i % CITIES.length])
+          .setObject("address", new MyJSON().setString("zip", String.format("%05d", i * 7919 % 100000)));
+    }
+  }
+
+  // Making a changed version of a document while keeping the original:
+  // a deep copy of MyJSON plus the change, against a PersistentJSON change.
+  private static void addPersistentBenchmarks(Benchmarker benchmarks) throws Exception {
+    final JSON flat = new MyJSONParser().parse(Documents.flat(1000));
+    final JSON users = new MyJSONParser().parse(Documents.users(1000));
+    final PersistentJSON persistentFlat = PersistentJSON.copyOf(flat);
+    final PersistentJSON persistentUsers = PersistentJSON.copyOf(users);
+
+    benchmarks.add("update: flat n=1000 one string, MyJSON deep copy", new Benchmark() {
+      private int i;
+
+      @Override
+      public Object run() {
+        return deepCopy(flat).setString("field " + (i++ % 1000), "changed");
+      }
+    });
+    benchmarks.add("update: flat n=1000 one string, PersistentJSON", new Benchmark() {
+      private int i;
+
+      @Override
+      public Object run() {
+        return persistentFlat.setString("field " + (i++ % 1000), "changed");
+      }
+    });
+    benchmarks.add("update: 1000 users one nested string, MyJSON deep copy", new Benchmark() {
+      private int i;
+
+      @Override
+      public Object run() {
+        final JSON copy = deepCopy(users);
+        copy.getObject("user " + (i++ % 1000)).setString("city", "Lisbon");
+        return copy;
+      }
+    });
+    benchmarks.add("update: 1000 users one nested string, PersistentJSON", new Benchmark() {
+      private int i;
+
+      @Override
+      public Object run() {
+        final String name = "user " + (i++ % 1000);
+        return persistentUsers.setObject(name, persistentUsers.getObject(name).setString("city", "Lisbon"));
+      }
+    });
+    final String[] keys = new String[1000];
+    for (int k = 0; k < keys.length; ++k) {
+      keys[k] = "field " + k;
+    }
+    final JSON[] readers = { flat, persistentFlat };
+    for (final JSON reader : readers) {
+      benchmarks.add("update: getString hit n=1000, " + reader.getClass().getSimpleName(), new Benchmark() {
+        private int i;
+
+        @Override
+        public Object run() {
+          return reader.getString(keys[i++ % 1000]);
+        }
+      });
+    }
+  }
+
+  private static JSON deepCopy(JSON source) {
+    final JSON copy = new MyJSON();
+    final ArrayList<String> names = new ArrayList<>();
+    source.getStrings(names);
+    for (final String name : names) {
+      copy.setString(name, source.getString(name));
+    }
+    names.clear();
+    source.getObjects(names);
+    for (final String name : names) {
+      copy.setObject(name, deepCopy(source.getObject(name)));
+    }
+    return copy;
+  }
+
+  // Heap kept alive per key-value pair by each object model.
+  private static void addFootprints(Benchmarker benchmarks) {
+    final JSONParser[] parsers = {
+      new MyJSONParser(), new MyJSONParser(new KeyTable(4096)), new LazyJSONParser(),
+      new TapeJSONParser(), new Utf8JSONParser()
+    };
+    final String[] names = {
+      "MyJSONParser", "MyJSONParser + KeyTable", "LazyJSONParser", "TapeJSONParser", "Utf8JSONParser"
+    };
+    for (int i = 0; i < parsers.length; ++i) {
+      final JSONParser parser = parsers[i];
+      final String name = names[i];
+      // The input is created inside the measurement so that parsers which
+      // keep it alive are charged for it.
+      benchmarks.addFootprint("footprint: 100000 users, " + name, 4 * 100000, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          return parser.parse(Documents.users(100000));
+        }
+      });
+      benchmarks.addFootprint("footprint: 1000 x 300-key records, " + name, 1000 * 302, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          final JSON[] records = new JSON[1000];
+          for (int r = 0; r < records.length; ++r) {
+            records[r] = parser.parse(Documents.flat(300));
+          }
+          return records;
+        }
+      });
+      benchmarks.addFootprint("footprint: 10 x 10000-key records, " + name, 10 * 10002, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          final JSON[] records = new JSON[10];
+          for (int r = 0; r < records.length; ++r) {
+            records[r] = parser.parse(Documents.flat(10000));
+          }
+          return records;
+        }
+      });
+      benchmarks.addFootprint("footprint: 200000 tiny objects, " + name, 2 * 200000, new Benchmark() {
+        @Override
+        public Object run() throws Exception {
+          return parser.parse(Documents.tinyObjects(200000));
+        }
+      });
+    }
+  }
+}
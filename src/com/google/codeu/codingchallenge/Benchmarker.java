@@ -0,0 +1,198 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs benchmarks the way Tester runs tests. Each benchmark is warmed up,
+// then measured over several fixed-length iterations; the report gives the
+// mean time per operation with its standard deviation across iterations,
+// the throughput, and the bytes allocated per operation (where the JVM can
+// tell, which HotSpot can).
+final class Benchmarker {
+
+  private static final long WARMUP_NANOS = 1000000000L;
+  private static final long ITERATION_NANOS = 1000000000L;
+  private static final int ITERATIONS = 5;
+
+  private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+  private final Map<String, Long> bytes = new LinkedHashMap<>();
+  private final Map<String, Benchmark> footprints = new LinkedHashMap<>();
+  private final Map<String, Long> entries = new LinkedHashMap<>();
+
+  private final com.sun.management.ThreadMXBean allocations;
+  private PrintWriter csv;
+  // Operations run by measure() so far.
+  private long measured;
+
+  // Keeps benchmark results reachable so the JIT can't drop the work.
+  private volatile int sink;
+
+  public Benchmarker() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    allocations = threads instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+        ? (com.sun.management.ThreadMXBean) threads
+        : null;
+  }
+
+  public void add(String name, Benchmark benchmark) {
+    add(name, 0, benchmark);
+  }
+
+  // Add a benchmark whose operation processes the given number of bytes of
+  // input, so its throughput can also be reported in MB/s.
+  public void add(String name, long bytesPerOp, Benchmark benchmark) {
+    benchmarks.put(name, benchmark);
+    bytes.put(name, bytesPerOp);
+  }
+
+  // Add a measurement of how much heap the result of one operation keeps
+  // alive, reported per key-value pair in the documents it holds.
+  public void addFootprint(String name, long entriesPerOp, Benchmark benchmark) {
+    footprints.put(name, benchmark);
+    entries.put(name, entriesPerOp);
+  }
+
+  // Also write every result as a line of CSV to the given writer, so runs
+  // can be compared across releases.
+  public void writeCsv(PrintWriter out) {
+    csv = out;
+    csv.println("benchmark,ns_per_op,ns_error,mb_per_s,bytes_allocated_per_op,bytes_retained_per_entry");
+  }
+
+  // Run every benchmark whose name contains the filter.
+  public void run(String filter) {
+    for (final Map.Entry<String, Benchmark> benchmark : benchmarks.entrySet()) {
+      if (!benchmark.getKey().contains(filter)) {
+        continue;
+      }
+      try {
+        report(benchmark.getKey(), benchmark.getValue());
+      } catch (Exception ex) {
+        System.out.format("ERROR : %s (%s)\n", benchmark.getKey(), ex.toString());
+      }
+    }
+    for (final Map.Entry<String, Benchmark> footprint : footprints.entrySet()) {
+      if (!footprint.getKey().contains(filter)) {
+        continue;
+      }
+      try {
+        final long retained = retained(footprint.getValue());
+        final double perEntry = (double) retained / entries.get(footprint.getKey());
+        System.out.format("HEAP  : %-55s %14d bytes %10.1f bytes/entry\n", footprint.getKey(),
+            retained, perEntry);
+        if (csv != null) {
+          csv.format("\"%s\",,,,,%.1f\n", footprint.getKey(), perEntry);
+        }
+      } catch (Exception ex) {
+        System.out.format("ERROR : %s (%s)\n", footprint.getKey(), ex.toString());
+      }
+    }
+    if (csv != null) {
+      csv.flush();
+    }
+  }
+
+  private void report(String name, Benchmark benchmark) throws Exception {
+    measure(benchmark, WARMUP_NANOS);
+
+    final double[] times = new double[ITERATIONS];
+    double mean = 0;
+    long allocated = 0;
+    long ops = 0;
+    for (int i = 0; i < ITERATIONS; ++i) {
+      final long allocatedBefore = allocatedBytes();
+      final long opsBefore = measured;
+      times[i] = measure(benchmark, ITERATION_NANOS);
+      allocated += allocatedBytes() - allocatedBefore;
+      ops += measured - opsBefore;
+      mean += times[i] / ITERATIONS;
+    }
+    double variance = 0;
+    for (final double time : times) {
+      variance += (time - mean) * (time - mean) / (ITERATIONS - 1);
+    }
+    final double error = Math.sqrt(variance);
+    final long bytesPerOp = bytes.get(name);
+    final double megabytes = bytesPerOp > 0 ? bytesPerOp * 1e3 / mean : 0;
+    final double allocatedPerOp = allocations == null ? -1 : (double) allocated / ops;
+
+    System.out.format("BENCH : %-55s %14.1f +- %-10.1f ns/op", name, mean, error);
+    if (bytesPerOp > 0) {
+      System.out.format(" %9.1f MB/s", megabytes);
+    } else {
+      System.out.format(" %9.1f op/ms", 1e6 / mean);
+    }
+    if (allocatedPerOp >= 0) {
+      System.out.format(" %12.0f B/op", allocatedPerOp);
+    }
+    System.out.println();
+    if (csv != null) {
+      csv.format("\"%s\",%.1f,%.1f,%.1f,%.0f,\n", name, mean, error, megabytes, allocatedPerOp);
+    }
+  }
+
+  // Run the benchmark for about the given time and return the mean time of
+  // one operation.
+  private double measure(Benchmark benchmark, long duration) throws Exception {
+    long ops = 0;
+    long batch = 1;
+    final long start = System.nanoTime();
+    long elapsed;
+    do {
+      final long batchStart = System.nanoTime();
+      for (long i = 0; i < batch; ++i) {
+        sink += System.identityHashCode(benchmark.run());
+      }
+      ops += batch;
+      final long now = System.nanoTime();
+      // Grow batches while they are short so that timing overhead stays
+      // small, without overshooting the duration by much for slow operations.
+      if (now - batchStart < duration / 20) {
+        batch *= 2;
+      }
+      elapsed = now - start;
+    } while (elapsed < duration);
+    measured += ops;
+    return (double) elapsed / ops;
+  }
+
+  private long allocatedBytes() {
+    return allocations == null ? 0 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // The growth of the used heap while the result of the benchmark is alive.
+  private long retained(Benchmark benchmark) throws Exception {
+    final long before = usedHeap();
+    final Object result = benchmark.run();
+    final long after = usedHeap();
+    sink += System.identityHashCode(result);
+    return after - before;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; ++i) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
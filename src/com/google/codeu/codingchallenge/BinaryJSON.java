@@ -0,0 +1,154 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// A JSON object read in place from the binary form (see BinaryJSONEncoder),
+// made by BinaryJSONDecoder.view. Nothing is decoded until it is asked
+// for: a lookup walks the entries of this object, stepping over nested
+// objects by their recorded size, and only the value it finds becomes a
+// String. With a key dictionary, keys are compared as integers.
+final class BinaryJSON extends CopyOnWriteJSON {
+
+  private final ByteBuffer source;
+  private final int body;
+  private final int count;
+  private final BinaryJSONDecoder.Dictionary dictionary;
+
+  // Children are cached by position so that changes made through one stick.
+  private Map<Integer, BinaryJSON> children;
+
+  BinaryJSON(ByteBuffer source, int body, int count, BinaryJSONDecoder.Dictionary dictionary) {
+    this.source = source;
+    this.body = body;
+    this.count = count;
+    this.dictionary = dictionary;
+  }
+
+  @Override
+  JSON readObject(String name) {
+    final int value = find(name);
+    return value < 0 || !isObject(value) ? null : child(value);
+  }
+
+  @Override
+  String readString(String name) {
+    final int value = find(name);
+    return value < 0 || isObject(value) ? null : string(value);
+  }
+
+  @Override
+  void readObjects(Collection<String> names) {
+    names(names, true);
+  }
+
+  @Override
+  void readStrings(Collection<String> names) {
+    names(names, false);
+  }
+
+  // The position of the value under the name, or -1 if there is none.
+  private int find(String name) {
+    final int id = dictionary == null ? -1 : dictionary.find(name);
+    if (dictionary != null && id < 0) {
+      return -1;
+    }
+    int at = body;
+    for (int entry = 0; entry < count; ++entry) {
+      final int key = BinaryJSONDecoder.varint(source, at);
+      at += BinaryJSONDecoder.varintSize(source, at);
+      final boolean match;
+      if (dictionary != null) {
+        match = key == id;
+      } else {
+        match = BinaryJSONDecoder.utf8Equals(source, at, key, name);
+        at += key;
+      }
+      if (match) {
+        return at;
+      }
+      at = skipValue(at);
+    }
+    return -1;
+  }
+
+  private void names(Collection<String> names, boolean objects) {
+    int at = body;
+    for (int entry = 0; entry < count; ++entry) {
+      final int key = BinaryJSONDecoder.varint(source, at);
+      at += BinaryJSONDecoder.varintSize(source, at);
+      final String name;
+      if (dictionary != null) {
+        name = dictionary.name(key);
+      } else {
+        name = BinaryJSONDecoder.utf8(source, at, key, null);
+        at += key;
+      }
+      if (isObject(at) == objects) {
+        names.add(name);
+      }
+      at = skipValue(at);
+    }
+  }
+
+  private boolean isObject(int value) {
+    return (source.get(value) & 1) != 0;
+  }
+
+  private String string(int value) {
+    final int length = BinaryJSONDecoder.varint(source, value) >>> 1;
+    final int start = value + BinaryJSONDecoder.varintSize(source, value);
+    return BinaryJSONDecoder.utf8(source, start, length, null);
+  }
+
+  private BinaryJSON child(int value) {
+    if (children == null) {
+      children = new HashMap<>();
+    }
+    BinaryJSON child = children.get(value);
+    if (child == null) {
+      final int header = BinaryJSONDecoder.varint(source, value);
+      final int body = value + BinaryJSONDecoder.varintSize(source, value) + 4;
+      child = new BinaryJSON(source, body, header >>> 1, dictionary);
+      children.put(value, child);
+    }
+    return child;
+  }
+
+  private int skipValue(int value) {
+    final int header = BinaryJSONDecoder.varint(source, value);
+    final int at = value + BinaryJSONDecoder.varintSize(source, value);
+    return (header & 1) == 0 ? at + (header >>> 1) : at + 4 + BinaryJSONDecoder.int32(source, at);
+  }
+
+  @Override
+  void copyTo(MyJSON copy) {
+    final ArrayList<String> names = new ArrayList<>();
+    names(names, false);
+    for (final String name : names) {
+      copy.setString(name, readString(name));
+    }
+    names.clear();
+    names(names, true);
+    for (final String name : names) {
+      copy.setObject(name, readObject(name));
+    }
+  }
+}
@@ -0,0 +1,433 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Reads the binary form written by BinaryJSONEncoder, either into a MyJSON
+// tree or as a BinaryJSON view that reads straight from the buffer. Both
+// read from the buffer's position without changing it.
+final class BinaryJSONDecoder {
+
+  private final ByteBuffer in;
+  private final String[] dictionary;
+  // Where each dictionary key starts, for views.
+  private final int[] dictionaryKeys;
+  private int pos;
+  private char[] chars = new char[64];
+
+  private BinaryJSONDecoder(ByteBuffer in) throws IOException {
+    this.in = in;
+    this.pos = in.position();
+    if (in.remaining() < 4 || in.get(pos) != BinaryJSONEncoder.MAGIC_0
+        || in.get(pos + 1) != BinaryJSONEncoder.MAGIC_1) {
+      throw error("Not binary JSON.", pos);
+    }
+    if (in.get(pos + 2) != BinaryJSONEncoder.VERSION) {
+      throw error("Unsupported binary JSON version " + in.get(pos + 2) + ".", pos + 2);
+    }
+    final boolean useDictionary = (in.get(pos + 3) & BinaryJSONEncoder.DICTIONARY) != 0;
+    pos += 4;
+    if (useDictionary) {
+      dictionary = new String[checkedLength(varint())];
+      dictionaryKeys = new int[dictionary.length];
+      for (int i = 0; i < dictionary.length; ++i) {
+        dictionaryKeys[i] = pos;
+        final int length = checkedLength(varint());
+        pos += length;
+      }
+    } else {
+      dictionary = null;
+      dictionaryKeys = null;
+    }
+  }
+
+  // DECODE
+  //
+  // Decode the whole document into MyJSON objects.
+  public static MyJSON decode(ByteBuffer in) throws IOException {
+    final BinaryJSONDecoder decoder = new BinaryJSONDecoder(in);
+    final MyJSON object;
+    try {
+      if (decoder.dictionary != null) {
+        final int end = decoder.pos;
+        for (int i = 0; i < decoder.dictionary.length; ++i) {
+          decoder.pos = decoder.dictionaryKeys[i];
+          decoder.dictionary[i] = decoder.string(decoder.varint());
+        }
+        decoder.pos = end;
+      }
+      object = decoder.object();
+    } catch (IndexOutOfBoundsException ex) {
+      throw error("Incomplete document.", in.limit());
+    }
+    if (decoder.pos != in.limit()) {
+      throw error("Data after the document.", decoder.pos);
+    }
+    return object;
+  }
+
+  // VIEW
+  //
+  // A JSON object that reads keys and values from the buffer as they are
+  // asked for. Only the header, the key dictionary and the overall size are
+  // checked up front; damage anywhere else shows up as a runtime exception
+  // on access. The buffer must not change while the view is in use.
+  public static JSON view(ByteBuffer in) throws IOException {
+    final BinaryJSONDecoder decoder = new BinaryJSONDecoder(in);
+    final Dictionary dictionary = decoder.dictionary == null
+        ? null
+        : new Dictionary(in, decoder.dictionaryKeys, decoder.dictionary);
+    final int header = decoder.varint();
+    if ((header & 1) == 0) {
+      throw error("The document is not an object.", decoder.pos);
+    }
+    final int body = decoder.pos + 4;
+    if (body + decoder.bodySize(decoder.pos) != in.limit()) {
+      throw error("The document size doesn't match the buffer.", decoder.pos);
+    }
+    return new BinaryJSON(in, body, header >>> 1, dictionary);
+  }
+
+  // Nested objects are filled in with an explicit stack, so a deep (or
+  // damaged) document can't overflow the call stack.
+  private MyJSON object() throws IOException {
+    final MyJSON root = new MyJSON();
+    final ArrayList<MyJSON> open = new ArrayList<>();
+    int[] remaining = new int[8];
+    open.add(root);
+    remaining[0] = objectHeader();
+    while (!open.isEmpty()) {
+      final int top = open.size() - 1;
+      if (remaining[top] == 0) {
+        open.remove(top);
+        continue;
+      }
+      --remaining[top];
+      final String key = key();
+      final int value = in.get(pos);
+      if ((value & 1) == 0) {
+        open.get(top).setString(key, string(checkedLength(varint() >>> 1)));
+      } else {
+        final MyJSON child = new MyJSON();
+        open.get(top).setObject(key, child);
+        if (open.size() == remaining.length) {
+          remaining = Arrays.copyOf(remaining, remaining.length * 2);
+        }
+        open.add(child);
+        remaining[top + 1] = objectHeader();
+      }
+    }
+    return root;
+  }
+
+  // Read an object's header and return its number of entries.
+  private int objectHeader() throws IOException {
+    final int header = varint();
+    if ((header & 1) == 0) {
+      throw error("Expected an object.", pos);
+    }
+    pos += 4;  // only views need the body size
+    return header >>> 1;
+  }
+
+  private String key() throws IOException {
+    final int at = pos;
+    if (dictionary == null) {
+      return string(checkedLength(varint()));
+    }
+    final int index = varint();
+    if (index < 0 || index >= dictionary.length) {
+      throw error("Unknown key " + index + ".", at);
+    }
+    return dictionary[index];
+  }
+
+  private String string(int length) {
+    if (chars.length < length) {
+      chars = new char[Math.max(length, chars.length * 2)];
+    }
+    final String s = utf8(in, pos, length, chars);
+    pos += length;
+    return s;
+  }
+
+  private int varint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      if (pos >= in.limit()) {
+        throw error("Incomplete document.", pos);
+      }
+      final byte b = in.get(pos++);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw error("Invalid length.", pos);
+  }
+
+  private int bodySize(int at) throws IOException {
+    if (at + 4 > in.limit()) {
+      throw error("Incomplete document.", at);
+    }
+    return int32(in, at);
+  }
+
+  private int checkedLength(int length) throws IOException {
+    if (length < 0 || length > in.limit() - pos) {
+      throw error("Incomplete document.", pos);
+    }
+    return length;
+  }
+
+  private static IOException error(String message, int position) {
+    return new IOException(message + " (at position " + position + ")");
+  }
+
+  // The keys of a document's dictionary, shared by all of its views. Keys
+  // are found through a hash table built on the first lookup: each key is
+  // hashed as String.hashCode would hash it, straight from its bytes, so a
+  // lookup costs the name's cached hash code and one comparison of bytes in
+  // place. Keys only become Strings when their names are listed.
+  static final class Dictionary {
+
+    private final ByteBuffer in;
+    private final int[] starts;
+    private final String[] names;
+    // Index + 1 of each key in an open-addressing table, 0 for empty.
+    private int[] table;
+
+    Dictionary(ByteBuffer in, int[] starts, String[] names) {
+      this.in = in;
+      this.starts = starts;
+      this.names = names;
+    }
+
+    // The index of the key, or -1 if the document never uses it.
+    int find(String name) {
+      if (table == null) {
+        table = buildTable();
+      }
+      final int mask = table.length - 1;
+      int slot = slot(name.hashCode(), table.length);
+      while (table[slot] != 0) {
+        final int start = starts[table[slot] - 1];
+        final int length = varint(in, start);
+        if (utf8Equals(in, start + varintSize(in, start), length, name)) {
+          return table[slot] - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    String name(int index) {
+      if (names[index] == null) {
+        final int start = starts[index];
+        final int length = varint(in, start);
+        names[index] = utf8(in, start + varintSize(in, start), length, null);
+      }
+      return names[index];
+    }
+
+    private int[] buildTable() {
+      int capacity = 2;
+      while (starts.length * 3 > capacity * 2) {
+        capacity <<= 1;
+      }
+      final int[] table = new int[capacity];
+      for (int i = 0; i < starts.length; ++i) {
+        final int start = starts[i];
+        final int length = varint(in, start);
+        int slot = slot(utf16Hash(in, start + varintSize(in, start), length), capacity);
+        while (table[slot] != 0) {
+          slot = (slot + 1) & (capacity - 1);
+        }
+        table[slot] = i + 1;
+      }
+      return table;
+    }
+
+    // As in MyJSON: the top bits of the hash times the golden ratio.
+    private static int slot(int hash, int capacity) {
+      return (hash * 0x9e3779b9) >>> (Integer.numberOfLeadingZeros(capacity) + 1);
+    }
+  }
+
+  // UTF-8
+  //
+  // Decode the bytes at the position, through the given buffer if it is
+  // long enough. Broken sequences become U+FFFD.
+  static String utf8(ByteBuffer in, int start, int length, char[] chars) {
+    if (chars == null || chars.length < length) {
+      chars = new char[length];
+    }
+    final int end = start + length;
+    int count = 0;
+    int at = start;
+    if (in.hasArray()) {
+      // Plain ASCII is by far the most common; copy it straight from the array.
+      final byte[] bytes = in.array();
+      final int offset = in.arrayOffset();
+      while (at < end && bytes[offset + at] >= 0) {
+        chars[count++] = (char) bytes[offset + at++];
+      }
+    }
+    while (at < end) {
+      final int b = in.get(at);
+      if (b >= 0) {
+        chars[count++] = (char) b;
+        ++at;
+        continue;
+      }
+      final int size = sequenceSize(b & 0xff);
+      if (size == 0 || at + size > end) {
+        chars[count++] = '\ufffd';
+        ++at;
+        continue;
+      }
+      final int code = codePoint(in, at, size);
+      if (code >= 0x10000) {
+        chars[count++] = Character.highSurrogate(code);
+        chars[count++] = Character.lowSurrogate(code);
+      } else {
+        chars[count++] = (char) code;
+      }
+      at += size;
+    }
+    return new String(chars, 0, count);
+  }
+
+  // UTF-16 HASH
+  //
+  // The hash code of the String that utf8 would decode from the bytes at
+  // the position, without making the String.
+  static int utf16Hash(ByteBuffer in, int start, int length) {
+    final int end = start + length;
+    int hash = 0;
+    int at = start;
+    while (at < end) {
+      final int b = in.get(at);
+      if (b >= 0) {
+        hash = 31 * hash + b;
+        ++at;
+        continue;
+      }
+      final int size = sequenceSize(b & 0xff);
+      if (size == 0 || at + size > end) {
+        hash = 31 * hash + '\ufffd';
+        ++at;
+        continue;
+      }
+      final int code = codePoint(in, at, size);
+      if (code >= 0x10000) {
+        hash = 31 * hash + Character.highSurrogate(code);
+        hash = 31 * hash + Character.lowSurrogate(code);
+      } else {
+        hash = 31 * hash + code;
+      }
+      at += size;
+    }
+    return hash;
+  }
+
+  // UTF-8 EQUALS
+  //
+  // Whether the bytes at the position are the UTF-8 encoding of the string.
+  static boolean utf8Equals(ByteBuffer in, int start, int length, String s) {
+    final int end = start + length;
+    int i = 0;
+    int at = start;
+    while (at < end) {
+      final int b = in.get(at);
+      if (b >= 0) {
+        if (i == s.length() || s.charAt(i++) != b) {
+          return false;
+        }
+        ++at;
+        continue;
+      }
+      final int size = sequenceSize(b & 0xff);
+      if (size == 0 || at + size > end) {
+        return false;
+      }
+      final int code = codePoint(in, at, size);
+      at += size;
+      if (code < 0x10000) {
+        if (i == s.length() || s.charAt(i++) != code) {
+          return false;
+        }
+      } else {
+        if (i + 1 >= s.length() || s.charAt(i) != Character.highSurrogate(code)
+            || s.charAt(i + 1) != Character.lowSurrogate(code)) {
+          return false;
+        }
+        i += 2;
+      }
+    }
+    return i == s.length();
+  }
+
+  // The length of the UTF-8 sequence a lead byte starts, or 0 if it can't
+  // start one.
+  private static int sequenceSize(int lead) {
+    return lead < 0xc0 ? 0 : lead < 0xe0 ? 2 : lead < 0xf0 ? 3 : lead < 0xf8 ? 4 : 0;
+  }
+
+  private static int codePoint(ByteBuffer in, int at, int size) {
+    int code = in.get(at) & (0xff >> (size + 1));
+    for (int k = 1; k < size; ++k) {
+      code = code << 6 | (in.get(at + k) & 0x3f);
+    }
+    return code;
+  }
+
+  // VARINT
+  //
+  // Read the varint at the position, without the checks of the decoder: a
+  // damaged buffer shows up as an IndexOutOfBoundsException.
+  static int varint(ByteBuffer in, int at) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      final byte b = in.get(at++);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  // INT32
+  //
+  // Read the big-endian int at the position, whatever the buffer's own
+  // byte order is.
+  static int int32(ByteBuffer in, int at) {
+    return (in.get(at) & 0xff) << 24 | (in.get(at + 1) & 0xff) << 16
+        | (in.get(at + 2) & 0xff) << 8 | (in.get(at + 3) & 0xff);
+  }
+
+  // The number of bytes the varint at the position takes.
+  static int varintSize(ByteBuffer in, int at) {
+    int size = 1;
+    while (in.get(at++) < 0) {
+      ++size;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,226 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Encodes JSON trees into a compact binary form that BinaryJSONDecoder can
+// read back without any text parsing. Every string is length-prefixed
+// UTF-8, so nothing needs escaping, and every object records the size of
+// its body so a reader can step over it without looking inside.
+//
+//   document   := 'J' 'B' version flags [dictionary] object
+//   dictionary := varint n, n * (varint length, UTF-8 bytes)
+//   object     := varint (count << 1 | 1), int32 body size, count * entry
+//   entry      := key value
+//   key        := varint dictionary index | varint length, UTF-8 bytes
+//   value      := varint (length << 1), UTF-8 bytes | object
+//
+// Varints are unsigned LEB128 and the int32 is big-endian. With the
+// dictionary flag (bit 0) every distinct key is stored once up front and
+// entries refer to it by index, which pays off when many objects share
+// their keys.
+final class BinaryJSONEncoder {
+
+  static final byte MAGIC_0 = 'J';
+  static final byte MAGIC_1 = 'B';
+  static final byte VERSION = 1;
+  static final byte DICTIONARY = 1;
+
+  private byte[] out = new byte[256];
+  private int size;
+  private Map<String, Integer> dictionary;
+
+  private BinaryJSONEncoder() {}
+
+  // ENCODE
+  //
+  // Encode the tree, with or without a key dictionary. The result is a
+  // buffer positioned at the start of the encoding.
+  public static ByteBuffer encode(JSON object, boolean useDictionary) {
+    final BinaryJSONEncoder encoder = new BinaryJSONEncoder();
+    encoder.put(MAGIC_0);
+    encoder.put(MAGIC_1);
+    encoder.put(VERSION);
+    encoder.put(useDictionary ? DICTIONARY : 0);
+    if (useDictionary) {
+      encoder.dictionary = new LinkedHashMap<>();
+      collectKeys(object, encoder.dictionary);
+      encoder.putVarint(encoder.dictionary.size());
+      for (final String key : encoder.dictionary.keySet()) {
+        encoder.putString(key);
+      }
+    }
+    encoder.putObject(object);
+    return ByteBuffer.wrap(encoder.out, 0, encoder.size).slice();
+  }
+
+  // Number the keys in the order a depth-first walk meets them, with an
+  // explicit stack as in putObject.
+  private static void collectKeys(JSON root, Map<String, Integer> keys) {
+    final ArrayDeque<JSON> pending = new ArrayDeque<>();
+    final ArrayList<String> names = new ArrayList<>();
+    pending.push(root);
+    while (!pending.isEmpty()) {
+      final JSON object = pending.pop();
+      names.clear();
+      object.getStrings(names);
+      final int strings = names.size();
+      object.getObjects(names);
+      for (final String name : names) {
+        if (!keys.containsKey(name)) {
+          keys.put(name, keys.size());
+        }
+      }
+      // Push the children last to first so that the first is walked next.
+      for (int i = names.size() - 1; i >= strings; --i) {
+        pending.push(object.getObject(names.get(i)));
+      }
+    }
+  }
+
+  // Nested objects are written with an explicit stack, so deep trees can't
+  // overflow the call stack. The strings of an object are written as soon
+  // as it is opened; its children follow one at a time.
+  private void putObject(JSON root) {
+    final ArrayList<JSON> objects = new ArrayList<>();
+    final ArrayList<Iterator<String>> children = new ArrayList<>();
+    final ArrayList<Integer> bodySizes = new ArrayList<>();
+    openObject(root, objects, children, bodySizes);
+    while (!objects.isEmpty()) {
+      final int top = objects.size() - 1;
+      if (children.get(top).hasNext()) {
+        final String name = children.get(top).next();
+        putKey(name);
+        openObject(objects.get(top).getObject(name), objects, children, bodySizes);
+      } else {
+        final int bodySize = bodySizes.remove(top);
+        final int body = size - bodySize - 4;
+        out[bodySize] = (byte) (body >>> 24);
+        out[bodySize + 1] = (byte) (body >>> 16);
+        out[bodySize + 2] = (byte) (body >>> 8);
+        out[bodySize + 3] = (byte) body;
+        objects.remove(top);
+        children.remove(top);
+      }
+    }
+  }
+
+  private void openObject(JSON object, ArrayList<JSON> objects,
+                          ArrayList<Iterator<String>> children,
+                          ArrayList<Integer> bodySizes) {
+    final ArrayList<String> strings = new ArrayList<>();
+    final ArrayList<String> names = new ArrayList<>();
+    object.getStrings(strings);
+    object.getObjects(names);
+    putVarint((strings.size() + names.size()) << 1 | 1);
+    bodySizes.add(size);
+    for (int i = 0; i < 4; ++i) {
+      put((byte) 0);
+    }
+    for (final String name : strings) {
+      putKey(name);
+      final String value = object.getString(name);
+      putVarint(utf8Length(value) << 1);
+      putUtf8(value);
+    }
+    objects.add(object);
+    children.add(names.iterator());
+  }
+
+  private void putKey(String name) {
+    if (dictionary != null) {
+      putVarint(dictionary.get(name));
+    } else {
+      putString(name);
+    }
+  }
+
+  private void putString(String s) {
+    putVarint(utf8Length(s));
+    putUtf8(s);
+  }
+
+  private void putVarint(int value) {
+    while ((value & ~0x7f) != 0) {
+      put((byte) (value | 0x80));
+      value >>>= 7;
+    }
+    put((byte) value);
+  }
+
+  private void put(byte b) {
+    if (size == out.length) {
+      out = Arrays.copyOf(out, out.length * 2);
+    }
+    out[size++] = b;
+  }
+
+  // Unpaired surrogates become '?', as they do with String.getBytes.
+  private void putUtf8(String s) {
+    final int length = s.length();
+    if (out.length - size < 3 * length) {
+      out = Arrays.copyOf(out, Math.max(out.length * 2, size + 3 * length));
+    }
+    for (int i = 0; i < length; ++i) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        out[size++] = (byte) c;
+      } else if (c < 0x800) {
+        out[size++] = (byte) (0xc0 | (c >> 6));
+        out[size++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int code = Character.toCodePoint(c, s.charAt(++i));
+        out[size++] = (byte) (0xf0 | (code >> 18));
+        out[size++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+        out[size++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+        out[size++] = (byte) (0x80 | (code & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        out[size++] = '?';
+      } else {
+        out[size++] = (byte) (0xe0 | (c >> 12));
+        out[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        out[size++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  private static int utf8Length(String s) {
+    final int length = s.length();
+    int bytes = length;
+    for (int i = 0; i < length; ++i) {
+      final char c = s.charAt(i);
+      if (c >= 0x800) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(s.charAt(i + 1))) {
+          bytes += 2;  // four bytes for the two chars
+          ++i;
+        } else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      } else if (c >= 0x80) {
+        bytes += 1;
+      }
+    }
+    return bytes;
+  }
+}
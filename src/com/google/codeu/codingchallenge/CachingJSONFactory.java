@@ -0,0 +1,44 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// Wraps another factory so that its parsers remember their results. Every
+// parser from one caching factory shares the same cache, so a payload
+// parsed through any of them is a hit for all the others. Parsed objects
+// are immutable; object() still makes mutable ones.
+final class CachingJSONFactory implements JSONFactory {
+
+  private final JSONFactory factory;
+  private final CachingJSONParser.Cache cache;
+
+  public CachingJSONFactory(JSONFactory factory, int maxEntries, long maxBytes) {
+    this.factory = factory;
+    this.cache = new CachingJSONParser.Cache(maxEntries, maxBytes);
+  }
+
+  public CachingJSONParser.Cache cache() {
+    return cache;
+  }
+
+  @Override
+  public JSON object() {
+    return factory.object();
+  }
+
+  @Override
+  public JSONParser parser() {
+    return new CachingJSONParser(factory.parser(), cache);
+  }
+}
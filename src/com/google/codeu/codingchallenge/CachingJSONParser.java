@@ -0,0 +1,143 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers the results of another parser by input text, for services that
+// parse the same few payloads over and over. Results are ImmutableJSON
+// trees, so one result can be returned to every caller that asks for the
+// same input. Inputs that fail to parse are not remembered.
+final class CachingJSONParser implements JSONParser {
+
+  // A bounded map from input to result, evicting the least recently used
+  // entry once there are too many entries or they hold too many bytes. One
+  // cache can serve any number of parsers and threads; lookups take a lock,
+  // parsing doesn't.
+  static final class Cache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, ImmutableJSON> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public Cache(int maxEntries, long maxBytes) {
+      if (maxEntries < 1 || maxBytes < 1) {
+        throw new IllegalArgumentException("A cache needs room for at least one entry.");
+      }
+      this.maxEntries = maxEntries;
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized ImmutableJSON get(String in) {
+      final ImmutableJSON result = entries.get(in);
+      if (result == null) {
+        ++misses;
+      } else {
+        ++hits;
+      }
+      return result;
+    }
+
+    synchronized void put(String in, ImmutableJSON result) {
+      final long cost = cost(in, result);
+      if (cost > maxBytes) {
+        return;  // it would evict everything else and still not fit
+      }
+      final ImmutableJSON old = entries.put(in, result);
+      if (old != null) {
+        bytes -= cost(in, old);  // another thread parsed it at the same time
+      }
+      bytes += cost;
+      final Iterator<Map.Entry<String, ImmutableJSON>> eldest = entries.entrySet().iterator();
+      while (entries.size() > maxEntries || bytes > maxBytes) {
+        final Map.Entry<String, ImmutableJSON> entry = eldest.next();
+        bytes -= cost(entry.getKey(), entry.getValue());
+        eldest.remove();
+        ++evictions;
+      }
+    }
+
+    public synchronized void clear() {
+      entries.clear();
+      bytes = 0;
+    }
+
+    public synchronized int size() {
+      return entries.size();
+    }
+
+    // ESTIMATED BYTES
+    //
+    // About how much heap the cached inputs and results hold.
+    public synchronized long estimatedBytes() {
+      return bytes;
+    }
+
+    public synchronized long hits() {
+      return hits;
+    }
+
+    public synchronized long misses() {
+      return misses;
+    }
+
+    public synchronized long evictions() {
+      return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("Cache(%d entries, %d bytes, %d hits, %d misses, %d evictions)",
+          entries.size(), bytes, hits, misses, evictions);
+    }
+
+    // The input is kept as the key, so it counts too.
+    private static long cost(String in, ImmutableJSON result) {
+      return 40 + 2L * in.length() + result.estimatedBytes();
+    }
+  }
+
+  private final JSONParser parser;
+  private final Cache cache;
+
+  // Parse with the given parser and remember the results in the cache. The
+  // parser is only used by one thread at a time if this one is.
+  public CachingJSONParser(JSONParser parser, Cache cache) {
+    this.parser = parser;
+    this.cache = cache;
+  }
+
+  public Cache cache() {
+    return cache;
+  }
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    ImmutableJSON result = cache.get(in);
+    if (result == null) {
+      result = ImmutableJSON.copyOf(parser.parse(in));
+      cache.put(in, result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// A JSON object that can be shared between threads. Its entries live in an
+// immutable snapshot map that is replaced as a whole on every change:
+// readers never lock and always see one complete snapshot (so getObjects
+// and getStrings never mix two versions), while writers take turns copying
+// the current snapshot.
+//
+// This suits documents that are read far more often than written. Nested
+// objects are only as thread-safe as their own implementation; copyOf
+// converts a whole tree.
+final class ConcurrentJSON implements JSON {
+
+  private volatile Map<String, Object> snapshot = new HashMap<>();
+
+  // COPY OF
+  //
+  // Deep copy any JSON tree into ConcurrentJSON objects. Nested objects are
+  // walked with an explicit stack, as MyJSON.copyOf does; each object gets
+  // its snapshot once the map is full.
+  public static ConcurrentJSON copyOf(JSON source) {
+    final ConcurrentJSON root = new ConcurrentJSON();
+    final ArrayDeque<JSON> sources = new ArrayDeque<>();
+    final ArrayDeque<ConcurrentJSON> copies = new ArrayDeque<>();
+    final ArrayList<String> names = new ArrayList<>();
+    sources.push(source);
+    copies.push(root);
+    while (!sources.isEmpty()) {
+      final JSON from = sources.pop();
+      final ConcurrentJSON copy = copies.pop();
+      final HashMap<String, Object> entries = new HashMap<>();
+      names.clear();
+      from.getStrings(names);
+      for (final String name : names) {
+        entries.put(name, from.getString(name));
+      }
+      names.clear();
+      from.getObjects(names);
+      for (final String name : names) {
+        final ConcurrentJSON child = new ConcurrentJSON();
+        entries.put(name, child);
+        sources.push(from.getObject(name));
+        copies.push(child);
+      }
+      copy.snapshot = entries;
+    }
+    return root;
+  }
+
+  @Override
+  public JSON getObject(String name) {
+    final Object value = snapshot.get(name);
+    return value instanceof JSON ? (JSON) value : null;
+  }
+
+  @Override
+  public JSON setObject(String name, JSON value) {
+    put(name, value);
+    return this;
+  }
+
+  @Override
+  public String getString(String name) {
+    final Object value = snapshot.get(name);
+    return value instanceof String ? (String) value : null;
+  }
+
+  @Override
+  public JSON setString(String name, String value) {
+    put(name, value);
+    return this;
+  }
+
+  @Override
+  public void getObjects(Collection<String> names) {
+    for (final Map.Entry<String, Object> it : snapshot.entrySet()) {
+      if (it.getValue() instanceof JSON) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  @Override
+  public void getStrings(Collection<String> names) {
+    for (final Map.Entry<String, Object> it : snapshot.entrySet()) {
+      if (it.getValue() instanceof String) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  // The writer lock only orders writers; the volatile write publishes the
+  // finished map to readers.
+  private synchronized void put(String name, Object value) {
+    final HashMap<String, Object> next = new HashMap<>(snapshot);
+    next.put(name, value);
+    snapshot = next;
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.Collection;
+
+// The base of the parsed views: JSON objects that read their entries from
+// a source they can't change. The first call to a setter has the view copy its entries
+// into a MyJSON, and from then on every call, read or write, goes to that
+// copy. Nested objects are copied as they are, so the copy still shares
+// the child views, and changes made through a child stick if the view
+// hands out the same child each time.
+abstract class CopyOnWriteJSON implements JSON {
+
+  private MyJSON edited;
+
+  // Read from the source; only called before the first change.
+  abstract JSON readObject(String name);
+
+  abstract String readString(String name);
+
+  abstract void readObjects(Collection<String> names);
+
+  abstract void readStrings(Collection<String> names);
+
+  // Put every entry into the copy, each key once with its last value.
+  abstract void copyTo(MyJSON copy);
+
+  @Override
+  public final JSON getObject(String name) {
+    return edited != null ? edited.getObject(name) : readObject(name);
+  }
+
+  @Override
+  public final JSON setObject(String name, JSON value) {
+    edit().setObject(name, value);
+    return this;
+  }
+
+  @Override
+  public final String getString(String name) {
+    return edited != null ? edited.getString(name) : readString(name);
+  }
+
+  @Override
+  public final JSON setString(String name, String value) {
+    edit().setString(name, value);
+    return this;
+  }
+
+  @Override
+  public final void getObjects(Collection<String> names) {
+    if (edited != null) {
+      edited.getObjects(names);
+    } else {
+      readObjects(names);
+    }
+  }
+
+  @Override
+  public final void getStrings(Collection<String> names) {
+    if (edited != null) {
+      edited.getStrings(names);
+    } else {
+      readStrings(names);
+    }
+  }
+
+  private MyJSON edit() {
+    if (edited == null) {
+      final MyJSON copy = new MyJSON();
+      copyTo(copy);
+      edited = copy;
+    }
+    return edited;
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// Synthetic JSON-lite documents of a given shape and size, shared by the
+// tests and the benchmarks. The same arguments always give the same text.
+final class Documents {
+
+  private Documents() {}
+
+  // SMALL
+  //
+  // A typical small message: a few strings and one nested object.
+  public static String small() {
+    return "{ \"id\": \"18\", \"name\": { \"first\": \"sam\", \"last\": \"doe\" }, \"city\": \"Mountain View\" }";
+  }
+
+  // FLAT
+  //
+  // One object with n string fields named "field 0" to "field n-1" and a
+  // nested object "nested" holding "id".
+  public static String flat(int n) {
+    final StringBuilder out = new StringBuilder("{ \"nested\": { \"id\": \"42\" }");
+    for (int i = 0; i < n; ++i) {
+      out.append(", \"field ").append(i).append("\": \"some value number ").append(i).append('"');
+    }
+    return out.append(" }").toString();
+  }
+
+  // WIDE
+  //
+  // An object with n nested objects "key 0" to "key n-1" side by side, each
+  // holding "inner": "value i" (roughly 40 bytes per object).
+  public static String wide(int n) {
+    final StringBuilder out = new StringBuilder("{");
+    for (int i = 0; i < n; ++i) {
+      out.append(i == 0 ? "" : ",")
+         .append(" \"key ").append(i).append("\": { \"inner\": \"value ").append(i).append("\" }");
+    }
+    return out.append("}").toString();
+  }
+
+  // DEEP
+  //
+  // Objects nested n levels deep under the key "k", with the string
+  // "bottom" under "k" at the bottom.
+  public static String deep(int n) {
+    final StringBuilder out = new StringBuilder();
+    for (int i = 0; i < n; ++i) {
+      out.append("{\"k\":");
+    }
+    out.append("{\"k\":\"bottom\"}");
+    for (int i = 0; i < n; ++i) {
+      out.append('}');
+    }
+    return out.toString();
+  }
+
+  // ESCAPES
+  //
+  // An object with n strings that are dense with escape sequences.
+  public static String escapes(int n) {
+    final StringBuilder out = new StringBuilder("{");
+    for (int i = 0; i < n; ++i) {
+      out.append(i == 0 ? "" : ",")
+         .append(" \"e\\t").append(i).append("\": \"\\\"q\\\"\\tcol\\\\path\\n").append(i).append("\\n\"");
+    }
+    return out.append("}").toString();
+  }
+
+  // USERS
+  //
+  // An object holding n user records ("user 0" to "user n-1"), each with a
+  // name, a city and a note, including non-ASCII text and escapes.
+  public static String users(int n) {
+    final StringBuilder out = new StringBuilder("{");
+    for (int i = 0; i < n; ++i) {
+      out.append(i == 0 ? "\n" : ",\n")
+         .append("  \"user ").append(i).append("\": { \"name\": \"J\u00fcrgen M\u00fcller ").append(i)
+         .append("\", \"city\": \"S\u00e3o Paulo\", \"note\": \"said \\\"hi\\\"\\tand left\" }");
+    }
+    return out.append("\n}").toString();
+  }
+
+  // TINY OBJECTS
+  //
+  // An object holding n objects that each hold a single short string.
+  public static String tinyObjects(int n) {
+    final StringBuilder out = new StringBuilder("{");
+    for (int i = 0; i < n; ++i) {
+      out.append(i == 0 ? "" : ",").append('"').append(i).append("\":{\"v\":\"").append(i % 10).append("\"}");
+    }
+    return out.append('}').toString();
+  }
+}
@@ -0,0 +1,35 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// A JSON object that can never change, and so can keep a hash of
+// everything under it. JSONDiff skips a pair of subtrees whose hashes are
+// equal without looking inside. All implementations must compute the hash
+// the same way, through JSONDiff.entryHash, so that trees of different
+// kinds can be compared.
+interface HashedJSON extends JSON {
+
+  // HASHED
+  //
+  // Whether subtreeHash is there to use. Implementations may leave it out
+  // where keeping it would cost too much, as PersistentJSON does for the
+  // versions its changes make.
+  boolean hashed();
+
+  // SUBTREE HASH
+  //
+  // The sum of JSONDiff.entryHash over the entries of this object.
+  long subtreeHash();
+}
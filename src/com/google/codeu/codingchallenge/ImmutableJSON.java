@@ -0,0 +1,164 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// A JSON object that can't change once built, so one instance can be handed
+// to any number of callers and threads. The setters throw
+// UnsupportedOperationException; copy the tree into a mutable object first
+// to change it. Every object keeps the hash of its subtree for JSONDiff.
+final class ImmutableJSON implements HashedJSON {
+
+  // Rough heap cost of one entry: the map node, the table slot and the
+  // headers of the key and value.
+  static final long ENTRY_BYTES = 80;
+
+  private final Map<String, Object> entries;
+  private final long estimatedBytes;
+  private final long hash;
+
+  private ImmutableJSON(Map<String, Object> entries, long estimatedBytes, long hash) {
+    this.entries = entries;
+    this.estimatedBytes = estimatedBytes;
+    this.hash = hash;
+  }
+
+  // COPY OF
+  //
+  // Deep copy any JSON tree into ImmutableJSON objects. Nested objects are
+  // walked with an explicit stack, so deep trees can't overflow the call
+  // stack; each object is built once all of its children are, so that its
+  // size estimate and hash can include theirs.
+  public static ImmutableJSON copyOf(JSON source) {
+    if (source instanceof ImmutableJSON) {
+      return (ImmutableJSON) source;
+    }
+    final ArrayList<Copy> open = new ArrayList<>();
+    open.add(new Copy(source));
+    while (true) {
+      final Copy top = open.get(open.size() - 1);
+      if (top.next < top.children.size()) {
+        final JSON child = top.source.getObject(top.children.get(top.next));
+        if (child instanceof ImmutableJSON) {
+          top.addChild((ImmutableJSON) child);
+        } else {
+          open.add(new Copy(child));
+        }
+        continue;
+      }
+      final ImmutableJSON done = new ImmutableJSON(top.entries, top.bytes, top.hash);
+      open.remove(open.size() - 1);
+      if (open.isEmpty()) {
+        return done;
+      }
+      open.get(open.size() - 1).addChild(done);
+    }
+  }
+
+  // One object being copied: its strings are in, its children are added in
+  // order as they are finished.
+  private static final class Copy {
+
+    final JSON source;
+    final HashMap<String, Object> entries = new HashMap<>();
+    final ArrayList<String> children = new ArrayList<>();
+    int next;
+    long bytes = ENTRY_BYTES;
+    long hash;
+
+    Copy(JSON source) {
+      this.source = source;
+      final ArrayList<String> names = new ArrayList<>();
+      source.getStrings(names);
+      for (final String name : names) {
+        final String value = source.getString(name);
+        entries.put(name, value);
+        bytes += ENTRY_BYTES + 2L * (name.length() + value.length());
+        hash += JSONDiff.entryHash(name, value);
+      }
+      source.getObjects(children);
+    }
+
+    // Add the finished copy of the next child.
+    void addChild(ImmutableJSON value) {
+      final String name = children.get(next++);
+      entries.put(name, value);
+      bytes += ENTRY_BYTES + 2L * name.length() + value.estimatedBytes;
+      hash += JSONDiff.entryHash(name, value);
+    }
+  }
+
+  // ESTIMATED BYTES
+  //
+  // About how much heap this object and everything under it holds.
+  public long estimatedBytes() {
+    return estimatedBytes;
+  }
+
+  // Every child is an ImmutableJSON too.
+  @Override
+  public boolean hashed() {
+    return true;
+  }
+
+  @Override
+  public long subtreeHash() {
+    return hash;
+  }
+
+  @Override
+  public JSON getObject(String name) {
+    final Object value = entries.get(name);
+    return value instanceof JSON ? (JSON) value : null;
+  }
+
+  @Override
+  public JSON setObject(String name, JSON value) {
+    throw new UnsupportedOperationException("This JSON object is immutable.");
+  }
+
+  @Override
+  public String getString(String name) {
+    final Object value = entries.get(name);
+    return value instanceof String ? (String) value : null;
+  }
+
+  @Override
+  public JSON setString(String name, String value) {
+    throw new UnsupportedOperationException("This JSON object is immutable.");
+  }
+
+  @Override
+  public void getObjects(Collection<String> names) {
+    for (final Map.Entry<String, Object> it : entries.entrySet()) {
+      if (it.getValue() instanceof JSON) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  @Override
+  public void getStrings(Collection<String> names) {
+    for (final Map.Entry<String, Object> it : entries.entrySet()) {
+      if (it.getValue() instanceof String) {
+        names.add(it.getKey());
+      }
+    }
+  }
+}
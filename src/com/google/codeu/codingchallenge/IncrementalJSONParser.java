@@ -0,0 +1,322 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Push parser for JSON-lite: feed it input in chunks of any size as they
+// arrive, and take out each top-level object once its closing brace has
+// been fed. Everything in progress (the open objects, the current key and
+// a partly read string) is kept between calls, so every character is
+// looked at exactly once no matter where the chunks are cut.
+//
+// The input may hold several top-level objects one after another,
+// separated by whitespace, as with JSONReader. JSONLimits apply to each of
+// them separately, with the size counted from its opening brace. After an
+// error the parser can't be used any more.
+final class IncrementalJSONParser {
+
+  // What the parser expects to find next.
+  private static final int BEFORE_OBJECT = 0;
+  private static final int FIRST_KEY = 1;
+  private static final int NEXT_KEY = 2;
+  private static final int KEY = 3;
+  private static final int KEY_ESCAPE = 4;
+  private static final int COLON = 5;
+  private static final int VALUE = 6;
+  private static final int STRING = 7;
+  private static final int STRING_ESCAPE = 8;
+  private static final int AFTER_VALUE = 9;
+  private static final int FAILED = 10;
+
+  private final JSONFactory factory;
+  private final JSONLimits limits;
+  private final ArrayDeque<JSON> ready = new ArrayDeque<>();
+
+  private final ArrayList<JSON> open = new ArrayList<>();
+  private final ArrayList<String> keys = new ArrayList<>();
+  // Keys seen so far in each open object.
+  private int[] keyCounts = new int[16];
+  private final StringBuilder text = new StringBuilder();
+  private String key;
+  private int state = BEFORE_OBJECT;
+  private boolean started;
+  private long position;
+  // Where the current top-level object would cross the size limit, and
+  // where the current key or string began.
+  private long sizeLimit;
+  private long stringStart;
+
+  // Only used by feed(ByteBuffer).
+  private CharsetDecoder utf8;
+  private CharBuffer chars;
+  private ByteBuffer carry;
+
+  public IncrementalJSONParser(JSONFactory factory) {
+    this(factory, JSONLimits.NONE);
+  }
+
+  public IncrementalJSONParser(JSONFactory factory, JSONLimits limits) {
+    this.factory = factory;
+    this.limits = limits;
+  }
+
+  // FEED
+  //
+  // Parse the next chunk of characters.
+  public void feed(char[] in, int offset, int length) throws IOException {
+    if (state == FAILED) {
+      throw new IllegalStateException("The parser failed earlier.");
+    }
+    try {
+      parse(in, offset, offset + length);
+    } catch (IOException ex) {
+      state = FAILED;
+      throw ex;
+    }
+  }
+
+  public void feed(char[] in) throws IOException {
+    feed(in, 0, in.length);
+  }
+
+  // FEED BYTES
+  //
+  // Parse the remaining bytes of the buffer as UTF-8. The whole buffer is
+  // consumed: a character cut at the end of the chunk is kept and finished
+  // by the next one.
+  public void feed(ByteBuffer in) throws IOException {
+    if (state == FAILED) {
+      throw new IllegalStateException("The parser failed earlier.");
+    }
+    if (utf8 == null) {
+      utf8 = StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+      chars = CharBuffer.allocate(4096);
+      carry = ByteBuffer.allocate(8);
+    }
+    // Finish a character left over from the last chunk, one byte at a time.
+    while (carry.position() > 0 && in.hasRemaining()) {
+      carry.put(in.get()).flip();
+      decode(carry);
+      carry.compact();
+    }
+    if (carry.position() == 0) {
+      decode(in);
+      carry.put(in);
+    }
+  }
+
+  // HAS OBJECT
+  //
+  // Whether a complete top-level object is waiting to be taken.
+  public boolean hasObject() {
+    return !ready.isEmpty();
+  }
+
+  // NEXT OBJECT
+  //
+  // Take the oldest complete top-level object, or null if there is none.
+  public JSON nextObject() {
+    return ready.poll();
+  }
+
+  // FINISH
+  //
+  // Declare the end of the input. Throws if it ends inside an object or in
+  // the middle of a character; an input without any objects is fine.
+  public void finish() throws IOException {
+    if (state != BEFORE_OBJECT || (carry != null && carry.position() > 0)) {
+      state = FAILED;
+      throw error("Incomplete schema.", position);
+    }
+  }
+
+  private void decode(ByteBuffer in) throws IOException {
+    while (true) {
+      final CoderResult result = utf8.decode(in, chars, false);
+      chars.flip();
+      feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+      chars.clear();
+      if (result.isError()) {
+        state = FAILED;
+        throw error("Invalid UTF-8.", position);
+      }
+      if (result.isUnderflow()) {
+        return;
+      }
+    }
+  }
+
+  private void parse(char[] in, int pos, int end) throws IOException {
+    final long base = position - pos;
+    while (pos < end) {
+      if (base + pos >= sizeLimit && state != BEFORE_OBJECT) {
+        throw error("Document longer than the limit of " + limits.maxSize + ".", sizeLimit);
+      }
+      char c = in[pos];
+      switch (state) {
+        case BEFORE_OBJECT:
+          if (!isWhitespace(c)) {
+            if (c != '{') {
+              throw error(started ? "Invalid character after given object." : "Illegal beginning of schema.",
+                  base + pos);
+            }
+            started = true;
+            sizeLimit = limits.maxSize == Long.MAX_VALUE ? Long.MAX_VALUE : base + pos + limits.maxSize;
+            openObject();
+          }
+          ++pos;
+          break;
+
+        case FIRST_KEY:
+        case NEXT_KEY:
+          if (c == '}' && state == FIRST_KEY) {
+            closeObject();
+          } else if (c == '"') {
+            if (++keyCounts[open.size() - 1] > limits.maxKeys) {
+              throw error("More keys than the limit of " + limits.maxKeys + ".", base + pos);
+            }
+            text.setLength(0);
+            stringStart = base + pos + 1;
+            state = KEY;
+          } else if (!isWhitespace(c)) {
+            throw error("Missing key.", base + pos);
+          }
+          ++pos;
+          break;
+
+        case KEY:
+        case STRING: {
+          // Copy runs of plain characters at once.
+          final int run = pos;
+          while (pos < end && (c = in[pos]) != '"' && c != '\\') {
+            ++pos;
+          }
+          if (base + pos - stringStart > limits.maxStringLength) {
+            throw error("String longer than the limit of " + limits.maxStringLength + ".",
+                stringStart + limits.maxStringLength);
+          }
+          text.append(in, run, pos - run);
+          if (pos < end) {
+            if (c == '"') {
+              if (state == KEY) {
+                key = text.toString();
+                state = COLON;
+              } else {
+                open.get(open.size() - 1).setString(key, text.toString());
+                state = AFTER_VALUE;
+              }
+            } else {
+              state = state == KEY ? KEY_ESCAPE : STRING_ESCAPE;
+            }
+            ++pos;
+          }
+          break;
+        }
+
+        case KEY_ESCAPE:
+        case STRING_ESCAPE:
+          if (c != '"' && c != '\\' && c != 't' && c != 'n') {
+            throw error(state == KEY_ESCAPE ? "Illegal escape character in key."
+                : "Illegal escape character in value.", base + pos - 1);
+          }
+          text.append(c == 't' ? '\t' : c == 'n' ? '\n' : c);
+          state = state == KEY_ESCAPE ? KEY : STRING;
+          ++pos;
+          break;
+
+        case COLON:
+          if (c == ':') {
+            state = VALUE;
+          } else if (!isWhitespace(c)) {
+            throw error("Missing colon after key.", base + pos);
+          }
+          ++pos;
+          break;
+
+        case VALUE:
+          if (c == '"') {
+            text.setLength(0);
+            stringStart = base + pos + 1;
+            state = STRING;
+          } else if (c == '{') {
+            if (open.size() == limits.maxDepth) {
+              throw error("Nested deeper than the limit of " + limits.maxDepth + ".", base + pos);
+            }
+            keys.add(key);
+            openObject();
+          } else if (!isWhitespace(c)) {
+            throw error("Invalid character after given key.", base + pos);
+          }
+          ++pos;
+          break;
+
+        case AFTER_VALUE:
+          if (c == ',') {
+            state = NEXT_KEY;
+          } else if (c == '}') {
+            closeObject();
+          } else if (!isWhitespace(c)) {
+            throw error("Illegal character after object value.", base + pos);
+          }
+          ++pos;
+          break;
+
+        default:
+          throw new AssertionError(state);
+      }
+    }
+    position = base + end;
+  }
+
+  private void openObject() {
+    if (open.size() == keyCounts.length) {
+      keyCounts = Arrays.copyOf(keyCounts, open.size() * 2);
+    }
+    keyCounts[open.size()] = 0;
+    open.add(factory.object());
+    state = FIRST_KEY;
+  }
+
+  private void closeObject() {
+    final JSON done = open.remove(open.size() - 1);
+    if (open.isEmpty()) {
+      ready.add(done);
+      state = BEFORE_OBJECT;
+    } else {
+      open.get(open.size() - 1).setObject(keys.remove(keys.size() - 1), done);
+      state = AFTER_VALUE;
+    }
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+  }
+
+  private static IOException error(String message, long position) {
+    return new IOException(message + " (at position " + position + ")");
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+// Wraps another parser and reports to a ParseMetrics how much each parse
+// read and why it failed. Every sampleEvery-th parse is also timed and its
+// result walked to measure its shape: reading the clock twice costs about
+// as much as parsing a few dozen characters, and walking a lazy tree
+// parses all of it, so neither is done for every parse by default. While
+// the metrics are disabled a parse costs one extra call and nothing else.
+//
+// The wrapper is as thread-safe as the parser it wraps. The sample counter
+// is a plain int: threads sharing the wrapper may lose some of its
+// updates, which only makes sampling less regular, and any count at or
+// below zero takes a sample and starts over, so it can't get stuck.
+final class InstrumentedJSONParser implements JSONParser {
+
+  private final JSONParser parser;
+  private final ParseMetrics metrics;
+  private final int sampleEvery;
+  private int untilSample;
+
+  public InstrumentedJSONParser(JSONParser parser, ParseMetrics metrics) {
+    this(parser, metrics, 64);
+  }
+
+  public InstrumentedJSONParser(JSONParser parser, ParseMetrics metrics, int sampleEvery) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException("sampleEvery must be at least 1.");
+    }
+    this.parser = parser;
+    this.metrics = metrics;
+    this.sampleEvery = sampleEvery;
+    this.untilSample = sampleEvery;
+  }
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    if (!metrics.enabled()) {
+      return parser.parse(in);
+    }
+    final boolean sample = --untilSample <= 0;
+    if (sample) {
+      untilSample = sampleEvery;
+    }
+    final long start = sample ? System.nanoTime() : 0;
+    final JSON result;
+    try {
+      result = parser.parse(in);
+    } catch (IOException ex) {
+      if (sample) {
+        metrics.timed(System.nanoTime() - start);
+      }
+      metrics.failed(in.length(), reason(ex));
+      throw ex;
+    }
+    if (sample) {
+      metrics.timed(System.nanoTime() - start);
+      measure(result, metrics);
+    }
+    metrics.parsed(in.length());
+    return result;
+  }
+
+  // REASON
+  //
+  // The message of a parse error without its position.
+  static String reason(IOException ex) {
+    final String message = ex.getMessage();
+    return message == null ? ex.getClass().getSimpleName() : withoutPosition(message);
+  }
+
+  static String withoutPosition(String message) {
+    final int at = message.lastIndexOf(" (at position ");
+    return at < 0 ? message : message.substring(0, at);
+  }
+
+  // MEASURE
+  //
+  // Walk the tree without recursion and report its shape. The byte estimate
+  // is the one ImmutableJSON uses for its copies.
+  static void measure(JSON root, ParseMetrics metrics) {
+    int objects = 0;
+    int keys = 0;
+    int maxDepth = 0;
+    long bytes = 0;
+    final ArrayDeque<JSON> pending = new ArrayDeque<>();
+    final ArrayDeque<Integer> depths = new ArrayDeque<>();
+    final ArrayList<String> names = new ArrayList<>();
+    pending.push(root);
+    depths.push(1);
+    while (!pending.isEmpty()) {
+      final JSON object = pending.pop();
+      final int depth = depths.pop();
+      ++objects;
+      maxDepth = Math.max(maxDepth, depth);
+      bytes += ImmutableJSON.ENTRY_BYTES;
+
+      names.clear();
+      object.getStrings(names);
+      keys += names.size();
+      for (final String name : names) {
+        bytes += ImmutableJSON.ENTRY_BYTES + 2L * (name.length() + object.getString(name).length());
+      }
+      names.clear();
+      object.getObjects(names);
+      keys += names.size();
+      for (final String name : names) {
+        bytes += ImmutableJSON.ENTRY_BYTES + 2L * name.length();
+        pending.push(object.getObject(name));
+        depths.push(depth + 1);
+      }
+    }
+    metrics.measured(objects, keys, maxDepth, bytes);
+  }
+}
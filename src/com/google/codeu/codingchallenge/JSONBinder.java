@@ -0,0 +1,488 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Fills plain Java objects straight from JSON-lite text, without building
+// a JSON tree on the way. Each field of the class, and of its superclasses,
+// is bound to the key with its name:
+//
+//   String                     a string value
+//   int, long, double, boolean a string value, parsed (booleans must be
+//                              "true" or "false")
+//   Map<String, V>             an object, each of its entries a V
+//   any other class            an object, bound the same way
+//
+// where V is String or a class bound the same way. Static, transient and
+// final fields are left alone, and so are keys that match no field. Every
+// class needs a constructor without arguments; fields without a key keep
+// what it gives them.
+//
+// Everything reflective happens once, in of: each field gets a setter
+// MethodHandle, with the parsing of numbers folded in, and each class a
+// table that finds the field for a key by comparing it in place in the
+// input. A parse then only scans, looks keys up and calls setters.
+final class JSONBinder<T> {
+
+  private static final int STRING = 0;
+  private static final int OBJECT = 1;
+  private static final int MAP = 2;
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Class<T> type;
+  private MethodHandle constructor;
+
+  // By field: its key, what kind of value it takes, a setter taking the
+  // object and the value, and the binder for objects under it (null for
+  // strings, and for maps of strings).
+  private String[] names;
+  private int[] kinds;
+  private MethodHandle[] setters;
+  private JSONBinder<?>[] binders;
+  // Whether the field is a boolean, for error messages.
+  private boolean[] booleans;
+
+  // Open addressing on the hash code of the key: field index + 1, or 0.
+  private int[] table;
+
+  private JSONBinder(Class<T> type) {
+    this.type = type;
+  }
+
+  // OF
+  //
+  // Make the binder for a class, and for every class its fields lead to.
+  // Throws IllegalArgumentException if some class can't be bound. Keep the
+  // binder: making it is much slower than using it.
+  public static <T> JSONBinder<T> of(Class<T> type) {
+    return of(type, new HashMap<Class<?>, JSONBinder<?>>());
+  }
+
+  // PARSE
+  //
+  // Parse the document into a new object. Errors in the document, and
+  // values that don't fit their field, throw IOException.
+  public T parse(String in) throws IOException {
+    final Binding binding = new Binding(in, this);
+    new JSONScanner(in, binding).scan();
+    return type.cast(binding.root);
+  }
+
+  // BIND
+  //
+  // Copy a JSON tree into a new object.
+  public T bind(JSON object) throws IOException {
+    return type.cast(fill(object));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> JSONBinder<T> of(Class<T> type, Map<Class<?>, JSONBinder<?>> done) {
+    JSONBinder<T> binder = (JSONBinder<T>) done.get(type);
+    if (binder != null) {
+      return binder;  // a class that nests itself
+    }
+    binder = new JSONBinder<>(type);
+    done.put(type, binder);
+    final ArrayList<Field> fields = new ArrayList<>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (final Field field : c.getDeclaredFields()) {
+        if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT | Modifier.FINAL)) == 0) {
+          fields.add(field);
+        }
+      }
+    }
+    final int count = fields.size();
+    binder.names = new String[count];
+    binder.kinds = new int[count];
+    binder.setters = new MethodHandle[count];
+    binder.binders = new JSONBinder<?>[count];
+    binder.booleans = new boolean[count];
+    try {
+      binder.constructor = constructor(type);
+      for (int i = 0; i < count; ++i) {
+        final Field field = fields.get(i);
+        field.setAccessible(true);
+        binder.names[i] = field.getName();
+        final MethodHandle setter = LOOKUP.unreflectSetter(field);
+        final Class<?> fieldType = field.getType();
+        if (fieldType == String.class) {
+          binder.kinds[i] = STRING;
+          binder.setters[i] = setter;
+        } else if (fieldType.isPrimitive()) {
+          binder.kinds[i] = STRING;
+          binder.booleans[i] = fieldType == boolean.class;
+          binder.setters[i] = MethodHandles.filterArguments(setter, 1, parser(fieldType, field));
+        } else if (fieldType == Map.class) {
+          binder.kinds[i] = MAP;
+          binder.setters[i] = setter;
+          final Class<?> values = mapValues(field);
+          binder.binders[i] = values == String.class ? null : of(values, done);
+        } else {
+          binder.kinds[i] = OBJECT;
+          binder.setters[i] = setter;
+          binder.binders[i] = of(fieldType, done);
+        }
+        binder.setters[i] = binder.setters[i].asType(SETTER);
+      }
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalArgumentException("Can't bind " + type.getName() + ": " + ex, ex);
+    }
+    binder.table = new int[Integer.highestOneBit(Math.max(1, count) * 2) * 2];
+    final int mask = binder.table.length - 1;
+    for (int i = 0; i < count; ++i) {
+      int slot = binder.names[i].hashCode() & mask;
+      while (binder.table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      binder.table[slot] = i + 1;
+    }
+    return binder;
+  }
+
+  private static MethodHandle constructor(Class<?> type) throws ReflectiveOperationException {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      throw new IllegalArgumentException("Can't bind to " + type.getName() + ": it can't be created.");
+    }
+    final java.lang.reflect.Constructor<?> constructor = type.getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+  }
+
+  // A handle turning a string into a value of the primitive type.
+  private static MethodHandle parser(Class<?> primitive, Field field) throws ReflectiveOperationException {
+    final Class<?> owner;
+    final String name;
+    if (primitive == int.class) {
+      owner = Integer.class;
+      name = "parseInt";
+    } else if (primitive == long.class) {
+      owner = Long.class;
+      name = "parseLong";
+    } else if (primitive == double.class) {
+      owner = Double.class;
+      name = "parseDouble";
+    } else if (primitive == boolean.class) {
+      // Boolean.parseBoolean would take anything but "true" for false.
+      owner = JSONBinder.class;
+      name = "parseBoolean";
+    } else {
+      throw new IllegalArgumentException("Can't bind field " + field.getName() + " of type " + primitive + ".");
+    }
+    return LOOKUP.findStatic(owner, name, MethodType.methodType(primitive, String.class));
+  }
+
+  // Only "true" and "false"; anything else throws as the number parsers do.
+  private static boolean parseBoolean(String value) {
+    if (value.equals("true")) {
+      return true;
+    }
+    if (value.equals("false")) {
+      return false;
+    }
+    throw new NumberFormatException(value);
+  }
+
+  private static Class<?> mapValues(Field field) {
+    final Type generic = field.getGenericType();
+    if (generic instanceof ParameterizedType) {
+      final Type[] arguments = ((ParameterizedType) generic).getActualTypeArguments();
+      if (arguments[0] == String.class && arguments[1] instanceof Class) {
+        return (Class<?>) arguments[1];
+      }
+    }
+    throw new IllegalArgumentException("Can't bind field " + field.getName()
+        + ": maps need to be Map<String, V> for a class V.");
+  }
+
+  // The index of the field bound to the key in[start, end), or -1.
+  private int find(String in, int start, int end, boolean escaped) {
+    if (escaped) {
+      return find(JSONScanner.decode(in, start, end, true));
+    }
+    int hash = 0;
+    for (int i = start; i < end; ++i) {
+      hash = 31 * hash + in.charAt(i);
+    }
+    final int mask = table.length - 1;
+    for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      final String name = names[table[slot] - 1];
+      if (name.length() == end - start && in.regionMatches(start, name, 0, end - start)) {
+        return table[slot] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private int find(String key) {
+    final int mask = table.length - 1;
+    for (int slot = key.hashCode() & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      if (names[table[slot] - 1].equals(key)) {
+        return table[slot] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private Object create() {
+    try {
+      return (Object) constructor.invokeExact();
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException("The constructor of " + type.getName() + " failed.", ex);
+    }
+  }
+
+  // Set the field, turning a value that doesn't parse into an IOException
+  // with the given message.
+  private void set(int field, Object target, Object value, int position) throws IOException {
+    try {
+      setters[field].invokeExact(target, value);
+    } catch (NumberFormatException ex) {
+      throw error("Field " + names[field] + " of " + type.getSimpleName()
+          + (booleans[field] ? " needs true or false" : " needs a number") + ", not \""
+          + value + "\".", position);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  // Copy the tree with an explicit stack, so deep trees can't overflow the
+  // call stack. Each pending object is { source, target, binder, map
+  // values }: a target that is a map has no binder, as in Binding.
+  private Object fill(JSON root) throws IOException {
+    final Object result = create();
+    final ArrayDeque<Object[]> pending = new ArrayDeque<>();
+    pending.push(new Object[] { root, result, this, null });
+    while (!pending.isEmpty()) {
+      final Object[] next = pending.pop();
+      final JSON object = (JSON) next[0];
+      if (next[2] != null) {
+        ((JSONBinder<?>) next[2]).fillFields(object, next[1], pending);
+      } else {
+        fillMap(object, next[1], (JSONBinder<?>) next[3], pending);
+      }
+    }
+    return result;
+  }
+
+  private void fillFields(JSON object, Object target, ArrayDeque<Object[]> pending)
+      throws IOException {
+    final ArrayList<String> keys = new ArrayList<>();
+    object.getStrings(keys);
+    for (final String key : keys) {
+      final int field = find(key);
+      if (field >= 0) {
+        if (kinds[field] != STRING) {
+          throw error(mismatch(field, true), -1);
+        }
+        set(field, target, object.getString(key), -1);
+      }
+    }
+    keys.clear();
+    object.getObjects(keys);
+    for (final String key : keys) {
+      final int field = find(key);
+      if (field < 0) {
+        continue;
+      }
+      final JSON child = object.getObject(key);
+      if (kinds[field] == OBJECT) {
+        final Object value = binders[field].create();
+        set(field, target, value, -1);
+        pending.push(new Object[] { child, value, binders[field], null });
+      } else if (kinds[field] == MAP) {
+        final LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        set(field, target, map, -1);
+        pending.push(new Object[] { child, map, null, binders[field] });
+      } else {
+        throw error(mismatch(field, false), -1);
+      }
+    }
+  }
+
+  // Fill a map with the entries of the object, which are all strings if
+  // values is null and all objects bound by it otherwise.
+  @SuppressWarnings("unchecked")
+  private static void fillMap(JSON object, Object target, JSONBinder<?> values,
+      ArrayDeque<Object[]> pending) throws IOException {
+    final Map<String, Object> map = (Map<String, Object>) target;
+    final ArrayList<String> keys = new ArrayList<>();
+    object.getStrings(keys);
+    if (!keys.isEmpty() && values != null) {
+      throw error("The values of this map are objects, not strings.", -1);
+    }
+    for (final String key : keys) {
+      map.put(key, object.getString(key));
+    }
+    keys.clear();
+    object.getObjects(keys);
+    if (!keys.isEmpty() && values == null) {
+      throw error("The values of this map are strings, not objects.", -1);
+    }
+    for (final String key : keys) {
+      final Object value = values.create();
+      map.put(key, value);
+      pending.push(new Object[] { object.getObject(key), value, values, null });
+    }
+  }
+
+  private String mismatch(int field, boolean gotString) {
+    return "Field " + names[field] + " of " + type.getSimpleName()
+        + (gotString ? " needs an object, not a string." : " needs a string, not an object.");
+  }
+
+  private static IOException error(String message, int position) {
+    return new IOException(position < 0 ? message : message + " (at position " + position + ")");
+  }
+
+  // Fills objects as the scanner reports the document. Each open object
+  // is either bound by a binder or a map, whose values are bound by
+  // mapValues (strings if that is null).
+  private static final class Binding implements JSONHandler {
+
+    private final String in;
+    private final JSONScanner.Decoder decoder = new JSONScanner.Decoder();
+    private final JSONBinder<?> rootBinder;
+    private Object root;
+
+    private int depth;
+    private Object[] targets = new Object[16];
+    private JSONBinder<?>[] binders = new JSONBinder<?>[16];
+    private JSONBinder<?>[] mapValues = new JSONBinder<?>[16];
+    // How many objects are open that no field takes.
+    private int skipped;
+
+    // The field of the current key, or the key itself in a map.
+    private int field;
+    private String key;
+
+    Binding(String in, JSONBinder<?> rootBinder) {
+      this.in = in;
+      this.rootBinder = rootBinder;
+    }
+
+    @Override
+    public void startObject(int position) throws IOException {
+      if (skipped > 0) {
+        ++skipped;
+        return;
+      }
+      if (depth == 0) {
+        root = rootBinder.create();
+        push(root, rootBinder, null);
+        return;
+      }
+      final JSONBinder<?> binder = binders[depth];
+      if (binder == null) {
+        final JSONBinder<?> values = mapValues[depth];
+        if (values == null) {
+          throw error("The values of this map are strings, not objects.", position);
+        }
+        final Object child = values.create();
+        map().put(key, child);
+        push(child, values, null);
+      } else if (field < 0) {
+        skipped = 1;
+      } else if (binder.kinds[field] == OBJECT) {
+        final JSONBinder<?> childBinder = binder.binders[field];
+        final Object child = childBinder.create();
+        binder.set(field, targets[depth], child, position);
+        push(child, childBinder, null);
+      } else if (binder.kinds[field] == MAP) {
+        final LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        binder.set(field, targets[depth], map, position);
+        push(map, null, binder.binders[field]);
+      } else {
+        throw error(binder.mismatch(field, false), position);
+      }
+    }
+
+    @Override
+    public void key(int start, int end, boolean escaped) {
+      if (skipped > 0) {
+        return;
+      }
+      final JSONBinder<?> binder = binders[depth];
+      if (binder == null) {
+        key = decoder.decode(in, start, end, escaped);
+      } else {
+        field = binder.find(in, start, end, escaped);
+      }
+    }
+
+    @Override
+    public void string(int start, int end, boolean escaped) throws IOException {
+      if (skipped > 0) {
+        return;
+      }
+      final JSONBinder<?> binder = binders[depth];
+      if (binder == null) {
+        if (mapValues[depth] != null) {
+          throw error("The values of this map are objects, not strings.", start - 1);
+        }
+        map().put(key, decoder.decode(in, start, end, escaped));
+      } else if (field >= 0) {
+        if (binder.kinds[field] != STRING) {
+          throw error(binder.mismatch(field, true), start - 1);
+        }
+        binder.set(field, targets[depth], decoder.decode(in, start, end, escaped), start - 1);
+      }
+    }
+
+    @Override
+    public void endObject(int position) {
+      if (skipped > 0) {
+        --skipped;
+        return;
+      }
+      targets[depth--] = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> map() {
+      return (Map<String, Object>) targets[depth];
+    }
+
+    private void push(Object target, JSONBinder<?> binder, JSONBinder<?> values) {
+      if (++depth == targets.length) {
+        targets = Arrays.copyOf(targets, depth * 2);
+        binders = Arrays.copyOf(binders, depth * 2);
+        mapValues = Arrays.copyOf(mapValues, depth * 2);
+      }
+      targets[depth] = target;
+      binders[depth] = binder;
+      mapValues[depth] = values;
+    }
+  }
+}
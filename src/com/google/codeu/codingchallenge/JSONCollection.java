@@ -0,0 +1,508 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Many JSON documents in memory, with secondary indexes on the string
+// values at chosen paths, so that finding the documents whose value at a
+// path is equal to something, starts with something or falls in a range
+// doesn't have to look at every document. A hash index answers equality;
+// a sorted index answers all three. A path can have one of each, and
+// equality then goes to the hash index.
+//
+// Each document gets an id when it is added. get returns a view of it
+// whose setters, and those of every object reached through it, keep the
+// indexes up to date as they go: a change re-reads only the indexed paths
+// that run through the changed key. Documents must be objects that change
+// in place, like MyJSON. A change made any other way (through another
+// reference, or MyJSON.remove) needs a reindex of the document.
+//
+// Paths are written as for JSONPath, without wildcards. Queries on a path
+// without a suitable index still work, by looking at every document. Not
+// thread-safe.
+final class JSONCollection {
+
+  // Where the two kinds of index on a path go in byPath.
+  private static final int HASH = 0;
+  private static final int SORTED = 1;
+
+  private final ArrayList<JSON> documents = new ArrayList<>();
+  private int size;
+  private final ArrayList<Index> indexes = new ArrayList<>();
+  // The hash and sorted index (either may be null) of each path as written
+  // in calls, so that a query doesn't compile its path or look through the
+  // indexes. Paths without an index aren't kept: a query on one reads every
+  // document anyway.
+  private final HashMap<String, Index[]> byPath = new HashMap<>();
+
+  // ADD HASH INDEX
+  //
+  // Index the string values at the path for equality lookups, including
+  // those of the documents already here.
+  public void addHashIndex(String path) {
+    addIndex(path, new HashMap<String, Object>());
+  }
+
+  // ADD SORTED INDEX
+  //
+  // Index the string values at the path in order, for equality, prefix and
+  // range lookups.
+  public void addSortedIndex(String path) {
+    addIndex(path, new TreeMap<String, Object>());
+  }
+
+  // ADD
+  //
+  // Add a document and return its id.
+  public int add(JSON document) {
+    if (document instanceof View) {
+      document = ((View) document).object;
+    }
+    final int id = documents.size();
+    documents.add(document);
+    ++size;
+    for (final Index index : indexes) {
+      index.put(id, index.read(document));
+    }
+    return id;
+  }
+
+  // GET
+  //
+  // The document with the id, as a view that keeps the indexes up to date,
+  // or null if there is none.
+  public JSON get(int id) {
+    final JSON document = document(id);
+    return document == null ? null : new View(id, new String[0], document);
+  }
+
+  // REMOVE
+  //
+  // Remove the document with the id. Returns whether there was one.
+  public boolean remove(int id) {
+    final JSON document = document(id);
+    if (document == null) {
+      return false;
+    }
+    for (final Index index : indexes) {
+      index.put(id, null);
+    }
+    documents.set(id, null);
+    --size;
+    return true;
+  }
+
+  // REINDEX
+  //
+  // Read the indexed values of the document again, after it was changed
+  // other than through get.
+  public void reindex(int id) {
+    final JSON document = document(id);
+    if (document == null) {
+      throw new IllegalArgumentException("There is no document " + id + ".");
+    }
+    for (final Index index : indexes) {
+      index.put(id, index.read(document));
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // FIND
+  //
+  // Add the ids of the documents whose string at the path equals the value.
+  public void find(String path, String value, Collection<Integer> ids) {
+    final Index index = index(path, false);
+    if (index != null) {
+      index.collect(index.postings.get(value), ids);
+      return;
+    }
+    final String[] keys = keys(path);
+    for (int id = 0; id < documents.size(); ++id) {
+      if (documents.get(id) != null && value.equals(read(documents.get(id), keys))) {
+        ids.add(id);
+      }
+    }
+  }
+
+  // FIND PREFIX
+  //
+  // Add the ids of the documents whose string at the path starts with the
+  // prefix.
+  public void findPrefix(String path, String prefix, Collection<Integer> ids) {
+    final Index index = index(path, true);
+    if (index != null) {
+      final NavigableMap<String, Object> sorted = (NavigableMap<String, Object>) index.postings;
+      final String end = successor(prefix);
+      index.collectAll(end == null
+          ? sorted.tailMap(prefix, true)
+          : sorted.subMap(prefix, true, end, false), ids);
+      return;
+    }
+    final String[] keys = keys(path);
+    for (int id = 0; id < documents.size(); ++id) {
+      final String value = documents.get(id) == null ? null : read(documents.get(id), keys);
+      if (value != null && value.startsWith(prefix)) {
+        ids.add(id);
+      }
+    }
+  }
+
+  // FIND RANGE
+  //
+  // Add the ids of the documents whose string at the path is at least from
+  // and less than to, comparing as String.compareTo does.
+  public void findRange(String path, String from, String to, Collection<Integer> ids) {
+    if (from.compareTo(to) >= 0) {
+      return;
+    }
+    final Index index = index(path, true);
+    if (index != null) {
+      final NavigableMap<String, Object> sorted = (NavigableMap<String, Object>) index.postings;
+      index.collectAll(sorted.subMap(from, true, to, false), ids);
+      return;
+    }
+    final String[] keys = keys(path);
+    for (int id = 0; id < documents.size(); ++id) {
+      final String value = documents.get(id) == null ? null : read(documents.get(id), keys);
+      if (value != null && value.compareTo(from) >= 0 && value.compareTo(to) < 0) {
+        ids.add(id);
+      }
+    }
+  }
+
+  private void addIndex(String path, Map<String, Object> postings) {
+    final int kind = postings instanceof TreeMap ? SORTED : HASH;
+    final Index[] existing = indexesOn(path);
+    if (existing != null && existing[kind] != null) {
+      throw new IllegalArgumentException("There is already "
+          + (kind == SORTED ? "a sorted" : "a hash") + " index on " + path + ".");
+    }
+    final Index index = new Index(keys(path), postings);
+    for (int id = 0; id < documents.size(); ++id) {
+      if (documents.get(id) != null) {
+        index.put(id, index.read(documents.get(id)));
+      }
+    }
+    indexes.add(index);
+    byPath.clear();
+  }
+
+  // The index to answer a query on the path with: for equality the hash
+  // index if there is one, else the sorted one; for anything else only the
+  // sorted one. Null if there is no such index.
+  private Index index(String path, boolean sorted) {
+    final Index[] found = indexesOn(path);
+    if (found == null) {
+      return null;
+    }
+    return sorted || found[HASH] == null ? found[SORTED] : found[HASH];
+  }
+
+  // The hash and sorted index on the path, or null if it has neither.
+  private Index[] indexesOn(String path) {
+    Index[] found = byPath.get(path);
+    if (found == null && !indexes.isEmpty()) {
+      final String[] keys = keys(path);
+      for (final Index index : indexes) {
+        if (Arrays.equals(index.keys, keys)) {
+          if (found == null) {
+            found = new Index[2];
+          }
+          found[index.postings instanceof TreeMap ? SORTED : HASH] = index;
+        }
+      }
+      if (found != null) {
+        byPath.put(path, found);
+      }
+    }
+    return found;
+  }
+
+  private JSON document(int id) {
+    return id >= 0 && id < documents.size() ? documents.get(id) : null;
+  }
+
+  // Some change happened at the key in the object at the path of the
+  // document: read again every indexed path that runs through it.
+  private void changed(int id, String[] path, String name) {
+    final JSON document = document(id);
+    if (document == null) {
+      return;  // removed since the view was made
+    }
+    for (final Index index : indexes) {
+      if (index.keys.length > path.length && index.keys[path.length].equals(name)
+          && startsWith(index.keys, path)) {
+        index.put(id, index.read(document));
+      }
+    }
+  }
+
+  private static String[] keys(String path) {
+    final JSONPath compiled = JSONPath.compile(path);
+    final String[] keys = new String[compiled.length()];
+    for (int level = 0; level < keys.length; ++level) {
+      keys[level] = compiled.key(level);
+      if (keys[level] == null) {
+        throw new IllegalArgumentException("Indexed paths can't have wildcards: " + path);
+      }
+    }
+    return keys;
+  }
+
+  private static String read(JSON document, String[] keys) {
+    JSON object = document;
+    for (int level = 0; level < keys.length - 1 && object != null; ++level) {
+      object = object.getObject(keys[level]);
+    }
+    return object == null ? null : object.getString(keys[keys.length - 1]);
+  }
+
+  private static boolean startsWith(String[] keys, String[] prefix) {
+    for (int level = 0; level < prefix.length; ++level) {
+      if (!keys[level].equals(prefix[level])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The smallest string greater than every string with the prefix, or null
+  // if there is none.
+  private static String successor(String prefix) {
+    int end = prefix.length();
+    while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+      --end;
+    }
+    if (end == 0) {
+      return null;
+    }
+    return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+  }
+
+  // The ids of the documents for each value at one path. A value with one
+  // document maps to its Integer id, one with more to an IdSet.
+  private static final class Index {
+
+    final String[] keys;
+    final Map<String, Object> postings;
+    // The value each document is indexed under, by id.
+    private String[] values = new String[16];
+
+    Index(String[] keys, Map<String, Object> postings) {
+      this.keys = keys;
+      this.postings = postings;
+    }
+
+    String read(JSON document) {
+      return JSONCollection.read(document, keys);
+    }
+
+    // Index the document under the value (null for none) instead of
+    // whatever it was under before.
+    void put(int id, String value) {
+      if (id >= values.length) {
+        values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+      }
+      final String old = values[id];
+      if (old == null ? value == null : old.equals(value)) {
+        return;
+      }
+      if (old != null) {
+        final Object ids = postings.get(old);
+        if (ids instanceof Integer) {
+          postings.remove(old);
+        } else {
+          final IdSet set = (IdSet) ids;
+          set.remove(id);
+          if (set.size() == 1) {
+            postings.put(old, set.first());
+          }
+        }
+      }
+      values[id] = value;
+      if (value != null) {
+        final Object ids = postings.get(value);
+        if (ids == null) {
+          postings.put(value, id);
+        } else if (ids instanceof Integer) {
+          final IdSet set = new IdSet();
+          set.add((Integer) ids);
+          set.add(id);
+          postings.put(value, set);
+        } else {
+          ((IdSet) ids).add(id);
+        }
+      }
+    }
+
+    void collect(Object ids, Collection<Integer> out) {
+      if (ids instanceof Integer) {
+        out.add((Integer) ids);
+      } else if (ids != null) {
+        ((IdSet) ids).addTo(out);
+      }
+    }
+
+    void collectAll(Map<String, Object> range, Collection<Integer> out) {
+      for (final Object ids : range.values()) {
+        collect(ids, out);
+      }
+    }
+  }
+
+  // A set of ids in an open-addressing table, holding id + 1 so that 0
+  // means empty. Removal shifts the rest of the probe run back, so there
+  // are no tombstones.
+  private static final class IdSet {
+
+    private int[] table = new int[4];
+    private int size;
+
+    int size() {
+      return size;
+    }
+
+    void add(int id) {
+      if ((size + 1) * 3 > table.length * 2) {
+        final int[] old = table;
+        table = new int[old.length * 2];
+        size = 0;
+        for (final int entry : old) {
+          if (entry != 0) {
+            add(entry - 1);
+          }
+        }
+      }
+      final int mask = table.length - 1;
+      int slot = slot(id, mask);
+      while (table[slot] != 0) {
+        if (table[slot] == id + 1) {
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = id + 1;
+      ++size;
+    }
+
+    void remove(int id) {
+      final int mask = table.length - 1;
+      int slot = slot(id, mask);
+      while (table[slot] != id + 1) {
+        if (table[slot] == 0) {
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      // Move later entries of the run into the gap if their probe started
+      // at or before it.
+      for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+        final int home = slot(table[next] - 1, mask);
+        if (((next - home) & mask) >= ((next - slot) & mask)) {
+          table[slot] = table[next];
+          slot = next;
+        }
+      }
+      table[slot] = 0;
+      --size;
+    }
+
+    int first() {
+      for (final int entry : table) {
+        if (entry != 0) {
+          return entry - 1;
+        }
+      }
+      throw new IllegalStateException("The set is empty.");
+    }
+
+    void addTo(Collection<Integer> out) {
+      for (final int entry : table) {
+        if (entry != 0) {
+          out.add(entry - 1);
+        }
+      }
+    }
+
+    // The top bits of the id times the golden ratio, as in MyJSON.
+    private static int slot(int id, int mask) {
+      return (id * 0x9e3779b9) >>> Integer.numberOfLeadingZeros(mask);
+    }
+  }
+
+  // A document, or an object in one, whose setters tell the collection.
+  private final class View implements JSON {
+
+    private final int id;
+    private final String[] path;
+    final JSON object;
+
+    View(int id, String[] path, JSON object) {
+      this.id = id;
+      this.path = path;
+      this.object = object;
+    }
+
+    @Override
+    public JSON getObject(String name) {
+      final JSON child = object.getObject(name);
+      if (child == null) {
+        return null;
+      }
+      final String[] childPath = Arrays.copyOf(path, path.length + 1);
+      childPath[path.length] = name;
+      return new View(id, childPath, child);
+    }
+
+    @Override
+    public JSON setObject(String name, JSON value) {
+      object.setObject(name, value instanceof View ? ((View) value).object : value);
+      changed(id, path, name);
+      return this;
+    }
+
+    @Override
+    public String getString(String name) {
+      return object.getString(name);
+    }
+
+    @Override
+    public JSON setString(String name, String value) {
+      object.setString(name, value);
+      changed(id, path, name);
+      return this;
+    }
+
+    @Override
+    public void getObjects(Collection<String> names) {
+      object.getObjects(names);
+    }
+
+    @Override
+    public void getStrings(Collection<String> names) {
+      object.getStrings(names);
+    }
+  }
+}
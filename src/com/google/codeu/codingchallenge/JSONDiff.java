@@ -0,0 +1,201 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Finds what changed between two JSON trees, as a JSONPatch that turns a
+// copy of the first into the second. The walk only goes down into nested
+// objects that differ:
+//
+//   - the same instance on both sides is skipped, which is what makes the
+//     versions of a PersistentJSON cheap to compare, as they share
+//     everything a change didn't touch;
+//   - so are two HashedJSON trees with equal subtree hashes, which covers
+//     ImmutableJSON or PersistentJSON copies made independently;
+//   - two PersistentJSON objects are compared trie node by trie node, so
+//     only the entries that changed are looked at.
+//
+// Other objects (MyJSON, say) are compared entry by entry. The hashes are
+// 64 bits, so two different subtrees are taken for equal with a chance of
+// about 1 in 2^64 per comparison; they are not meant to stand up to
+// someone building collisions on purpose.
+final class JSONDiff {
+
+  private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+  private static final long OBJECT_SEED = 0x2545f4914f6cdd1dL;
+
+  private JSONDiff() {}
+
+  // DIFF
+  //
+  // The changes that turn "from" into "to". Values set by the patch are
+  // shared with "to", not copied, so "to" must not change while the patch
+  // is in use.
+  public static JSONPatch diff(JSON from, JSON to) {
+    final JSONPatch patch = new JSONPatch();
+    // Entries that differ, as { path, name, was, now }, with the next one on
+    // top. An object on both sides is replaced by its own differing entries,
+    // so the changes come out in the order of a depth-first walk without
+    // using the call stack.
+    final ArrayDeque<Object[]> pending = new ArrayDeque<>();
+    final ArrayList<Object[]> level = new ArrayList<>();
+    compare(Path.ROOT, from, to, level);
+    push(level, pending);
+    while (!pending.isEmpty()) {
+      final Object[] entry = pending.pop();
+      final Path at = (Path) entry[0];
+      final String name = (String) entry[1];
+      final Object was = entry[2];
+      final Object now = entry[3];
+      if (now == null) {
+        patch.remove(at.keys(), name);
+      } else if (now instanceof String) {
+        patch.setString(at.keys(), name, (String) now);
+      } else if (was instanceof JSON) {
+        compare(new Path(at, name), (JSON) was, (JSON) now, level);
+        push(level, pending);
+      } else {
+        patch.setObject(at.keys(), name, (JSON) now);
+      }
+    }
+    return patch;
+  }
+
+  // ENTRY HASH
+  //
+  // The part of its object's subtree hash that one entry adds, or 0 for an
+  // object without a hash. See HashedJSON.
+  static long entryHash(String name, Object value) {
+    final long valueHash;
+    if (value instanceof String) {
+      valueHash = stringHash((String) value);
+    } else if (value instanceof HashedJSON && ((HashedJSON) value).hashed()) {
+      valueHash = mix(((HashedJSON) value).subtreeHash() ^ OBJECT_SEED);
+    } else {
+      return 0;
+    }
+    return mix(stringHash(name) * GOLDEN + valueHash);
+  }
+
+  // Add the entries of the two objects at the path that differ.
+  private static void compare(Path at, JSON from, JSON to, List<Object[]> out) {
+    if (from == to || sameHash(from, to)) {
+      return;
+    }
+    if (from instanceof PersistentJSON && to instanceof PersistentJSON) {
+      final ArrayList<Object> changes = new ArrayList<>();
+      ((PersistentJSON) from).changes((PersistentJSON) to, changes);
+      for (int i = 0; i < changes.size(); i += 3) {
+        out.add(new Object[] { at, changes.get(i), changes.get(i + 1), changes.get(i + 2) });
+      }
+      return;
+    }
+    final ArrayList<String> names = new ArrayList<>();
+    from.getStrings(names);
+    for (final String name : names) {
+      final String value = from.getString(name);
+      final Object now = value(to, name);
+      if (!value.equals(now)) {
+        out.add(new Object[] { at, name, value, now });
+      }
+    }
+    names.clear();
+    from.getObjects(names);
+    for (final String name : names) {
+      out.add(new Object[] { at, name, from.getObject(name), value(to, name) });
+    }
+    names.clear();
+    to.getStrings(names);
+    to.getObjects(names);
+    for (final String name : names) {
+      if (value(from, name) == null) {
+        out.add(new Object[] { at, name, null, value(to, name) });
+      }
+    }
+  }
+
+  // Move the entries onto the stack so that the first one ends up on top.
+  private static void push(List<Object[]> entries, ArrayDeque<Object[]> pending) {
+    for (int i = entries.size() - 1; i >= 0; --i) {
+      pending.push(entries.get(i));
+    }
+    entries.clear();
+  }
+
+  // The keys from the root to an object, as a link to the path of its
+  // parent, so going one level down costs the same at any depth. The keys
+  // only become an array when a change in the object needs them, and then
+  // once: changes in one object share it, as JSONPatch expects.
+  private static final class Path {
+
+    static final Path ROOT = new Path(null, null);
+
+    private final Path parent;
+    private final String name;
+    private final int length;
+    private String[] keys;
+
+    Path(Path parent, String name) {
+      this.parent = parent;
+      this.name = name;
+      this.length = parent == null ? 0 : parent.length + 1;
+    }
+
+    String[] keys() {
+      if (keys == null) {
+        final String[] keys = new String[length];
+        Path path = this;
+        for (int i = length - 1; i >= 0; --i) {
+          keys[i] = path.name;
+          path = path.parent;
+        }
+        this.keys = keys;
+      }
+      return keys;
+    }
+  }
+
+  private static Object value(JSON object, String name) {
+    final String value = object.getString(name);
+    return value != null ? value : object.getObject(name);
+  }
+
+  private static boolean sameHash(JSON a, JSON b) {
+    return a instanceof HashedJSON && b instanceof HashedJSON
+        && ((HashedJSON) a).hashed() && ((HashedJSON) b).hashed()
+        && ((HashedJSON) a).subtreeHash() == ((HashedJSON) b).subtreeHash();
+  }
+
+  private static long stringHash(String s) {
+    long h = s.length();
+    for (int i = 0; i < s.length(); ++i) {
+      h = (h + s.charAt(i)) * GOLDEN;
+    }
+    return mix(h);
+  }
+
+  // The finalizer of MurmurHash3: every input bit affects every output bit.
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
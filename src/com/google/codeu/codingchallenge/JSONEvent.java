@@ -0,0 +1,34 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// The events a JSONReader reports while pulling through a document.
+enum JSONEvent {
+
+  // An object was opened with "{".
+  START_OBJECT,
+
+  // A key was read. Its text is available from JSONReader.getText().
+  KEY,
+
+  // A string value was read. Its text is available from JSONReader.getText().
+  STRING,
+
+  // The current object was closed with "}".
+  END_OBJECT,
+
+  // The input ended after a complete top-level object.
+  END_DOCUMENT
+}
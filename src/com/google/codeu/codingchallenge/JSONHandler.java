@@ -0,0 +1,44 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+
+interface JSONHandler {
+
+  // START OBJECT
+  //
+  // Called when the scanner finds the "{" that opens an object. The position
+  // is the index of the brace in the scanned input.
+  void startObject(int position) throws IOException;
+
+  // KEY
+  //
+  // Called with the bounds of a key, excluding its quotes. If escaped is
+  // true the key contains escape sequences that still need to be decoded.
+  void key(int start, int end, boolean escaped) throws IOException;
+
+  // STRING
+  //
+  // Called with the bounds of a string value, excluding its quotes. If
+  // escaped is true the value contains escape sequences that still need to
+  // be decoded.
+  void string(int start, int end, boolean escaped) throws IOException;
+
+  // END OBJECT
+  //
+  // Called when the scanner finds the "}" that closes the current object.
+  void endObject(int position) throws IOException;
+}
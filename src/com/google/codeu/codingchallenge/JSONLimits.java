@@ -0,0 +1,75 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// Bounds on what a parser accepts, for input that can't be trusted. A
+// document that crosses any of them is rejected with an IOException as
+// soon as the scan reaches the point where it does, with that position.
+// Sizes and lengths count characters of the input (so an escape counts as
+// two).
+//
+// Limits are immutable; start from NONE or UNTRUSTED and change what you
+// need, e.g. JSONLimits.UNTRUSTED.withMaxDepth(16).
+final class JSONLimits {
+
+  // No limits at all.
+  public static final JSONLimits NONE =
+      new JSONLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+
+  // Generous for real messages, small enough that no single document can
+  // take a server down.
+  public static final JSONLimits UNTRUSTED = new JSONLimits(256, 10000, 16L << 20, 1 << 20);
+
+  final int maxDepth;
+  final int maxKeys;
+  final long maxSize;
+  final int maxStringLength;
+
+  private JSONLimits(int maxDepth, int maxKeys, long maxSize, int maxStringLength) {
+    if (maxDepth < 1 || maxKeys < 0 || maxSize < 2 || maxStringLength < 0) {
+      throw new IllegalArgumentException("Limits must allow at least an empty object.");
+    }
+    this.maxDepth = maxDepth;
+    this.maxKeys = maxKeys;
+    this.maxSize = maxSize;
+    this.maxStringLength = maxStringLength;
+  }
+
+  // How many objects may be open at once, counting the top-level object.
+  public JSONLimits withMaxDepth(int maxDepth) {
+    return new JSONLimits(maxDepth, maxKeys, maxSize, maxStringLength);
+  }
+
+  // How many keys one object may have, counting repeated keys each time.
+  public JSONLimits withMaxKeys(int maxKeys) {
+    return new JSONLimits(maxDepth, maxKeys, maxSize, maxStringLength);
+  }
+
+  // How long one top-level document may be.
+  public JSONLimits withMaxSize(long maxSize) {
+    return new JSONLimits(maxDepth, maxKeys, maxSize, maxStringLength);
+  }
+
+  // How long one key or string value may be, between its quotes.
+  public JSONLimits withMaxStringLength(int maxStringLength) {
+    return new JSONLimits(maxDepth, maxKeys, maxSize, maxStringLength);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("JSONLimits(depth %d, keys %d, size %d, string length %d)",
+        maxDepth, maxKeys, maxSize, maxStringLength);
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayList;
+
+// A list of changes to a JSON tree, as made by JSONDiff: set a string, set
+// an object or remove a key, each in the object at the end of a path of
+// keys from the root, written "a.b.name" in messages. Changes never reach
+// inside an object another change sets, so they can be applied in any
+// order.
+final class JSONPatch {
+
+  private static final int SET_STRING = 0;
+  private static final int SET_OBJECT = 1;
+  private static final int REMOVE = 2;
+
+  // Parallel lists, one item per change. Changes in one object share their
+  // path array.
+  private final ArrayList<String[]> paths = new ArrayList<>();
+  private final ArrayList<String> names = new ArrayList<>();
+  private final ArrayList<Object> values = new ArrayList<>();
+  private final ArrayList<Integer> kinds = new ArrayList<>();
+
+  JSONPatch() {}
+
+  // SIZE
+  //
+  // The number of changes.
+  public int size() {
+    return names.size();
+  }
+
+  public boolean isEmpty() {
+    return names.isEmpty();
+  }
+
+  // APPLY
+  //
+  // Make the changes to the tree, in place. Set objects are copied into
+  // new MyJSON objects. Every path is looked up before anything changes, so
+  // a patch that doesn't fit the tree throws IllegalArgumentException and
+  // leaves it as it was. Every object a change is made in must be a MyJSON:
+  // others may not change in place (PersistentJSON returns a new version,
+  // ImmutableJSON throws) and would leave the patch half done.
+  public void apply(MyJSON target) {
+    final MyJSON[] parents = new MyJSON[size()];
+    for (int i = 0; i < parents.length; ++i) {
+      final JSON parent = i > 0 && paths.get(i) == paths.get(i - 1)
+          ? parents[i - 1]
+          : resolve(target, paths.get(i));
+      if (!(parent instanceof MyJSON)) {
+        throw new IllegalArgumentException("Can't change " + describe(i) + " in a "
+            + parent.getClass().getSimpleName() + ".");
+      }
+      parents[i] = (MyJSON) parent;
+    }
+    for (int i = 0; i < parents.length; ++i) {
+      switch (kinds.get(i)) {
+        case SET_STRING:
+          parents[i].setString(names.get(i), (String) values.get(i));
+          break;
+        case SET_OBJECT:
+          parents[i].setObject(names.get(i), MyJSON.copyOf((JSON) values.get(i)));
+          break;
+        default:
+          parents[i].remove(names.get(i));
+          break;
+      }
+    }
+  }
+
+  void setString(String[] path, String name, String value) {
+    add(path, name, value, SET_STRING);
+  }
+
+  void setObject(String[] path, String name, JSON value) {
+    add(path, name, value, SET_OBJECT);
+  }
+
+  void remove(String[] path, String name) {
+    add(path, name, null, REMOVE);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder out = new StringBuilder();
+    for (int i = 0; i < size(); ++i) {
+      out.append(kinds.get(i) == SET_STRING ? "set string "
+          : kinds.get(i) == SET_OBJECT ? "set object " : "remove ");
+      out.append(describe(i));
+      if (kinds.get(i) == SET_STRING) {
+        out.append(" = \"").append(values.get(i)).append('"');
+      }
+      out.append('\n');
+    }
+    return out.toString();
+  }
+
+  private void add(String[] path, String name, Object value, int kind) {
+    paths.add(path);
+    names.add(name);
+    values.add(value);
+    kinds.add(kind);
+  }
+
+  private JSON resolve(JSON root, String[] path) {
+    JSON object = root;
+    for (int i = 0; i < path.length; ++i) {
+      object = object.getObject(path[i]);
+      if (object == null) {
+        final StringBuilder missing = new StringBuilder(path[0]);
+        for (int k = 1; k <= i; ++k) {
+          missing.append('.').append(path[k]);
+        }
+        throw new IllegalArgumentException(
+            "The patch doesn't fit: there is no object at " + missing + ".");
+      }
+    }
+    return object;
+  }
+
+  private String describe(int change) {
+    final StringBuilder out = new StringBuilder();
+    for (final String key : paths.get(change)) {
+      out.append(key).append('.');
+    }
+    return out.append(names.get(change)).toString();
+  }
+}
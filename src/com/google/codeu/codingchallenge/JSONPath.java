@@ -0,0 +1,182 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+// A compiled selector such as "name.first" or "users.*.city": keys
+// separated by dots, where "*" matches every key at its level. Compile a
+// path once and evaluate it against any number of objects; a missing key
+// anywhere along the way just means no match, never an exception. A dot,
+// star or backslash that is part of a key is written with a backslash in
+// front of it.
+//
+// Paths can also be pushed down into parsing with ProjectingJSONParser, so
+// that only the parts of a document they select are built.
+final class JSONPath {
+
+  private final String text;
+  // The key at each level, or null for a wildcard.
+  private final String[] keys;
+
+  private JSONPath(String text, String[] keys) {
+    this.text = text;
+    this.keys = keys;
+  }
+
+  // COMPILE
+  //
+  // Parse the path text. Throws IllegalArgumentException for an empty path
+  // or an empty key.
+  public static JSONPath compile(String path) {
+    final ArrayList<String> keys = new ArrayList<>();
+    final StringBuilder key = new StringBuilder();
+    boolean wildcard = false;
+    for (int i = 0; i <= path.length(); ++i) {
+      final char c = i < path.length() ? path.charAt(i) : '.';
+      if (c == '.') {
+        if (key.length() == 0 && !wildcard) {
+          throw new IllegalArgumentException("Empty key in path \"" + path + "\" (at position " + i + ")");
+        }
+        keys.add(wildcard ? null : key.toString());
+        key.setLength(0);
+        wildcard = false;
+      } else if (wildcard) {
+        throw new IllegalArgumentException("A wildcard must be a whole key in \"" + path + "\" (at position " + i + ")");
+      } else if (c == '*' && key.length() == 0) {
+        wildcard = true;
+      } else if (c == '\\' && i + 1 < path.length()) {
+        key.append(path.charAt(++i));
+      } else {
+        key.append(c);
+      }
+    }
+    return new JSONPath(path, keys.toArray(new String[keys.size()]));
+  }
+
+  // GET STRING
+  //
+  // The first string the path selects in the object, or null if none.
+  public String getString(JSON root) {
+    final ArrayList<String> found = new ArrayList<>(1);
+    selectStrings(root, found);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  // GET OBJECT
+  //
+  // The first object the path selects in the object, or null if none.
+  public JSON getObject(JSON root) {
+    final ArrayList<JSON> found = new ArrayList<>(1);
+    selectObjects(root, found);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  // SELECT STRINGS
+  //
+  // Add every string the path selects in the object to the collection.
+  public void selectStrings(JSON root, Collection<String> values) {
+    final String last = keys[keys.length - 1];
+    for (final JSON parent : parents(root)) {
+      if (last != null) {
+        final String value = parent.getString(last);
+        if (value != null) {
+          values.add(value);
+        }
+      } else {
+        final ArrayList<String> names = new ArrayList<>();
+        parent.getStrings(names);
+        for (final String name : names) {
+          values.add(parent.getString(name));
+        }
+      }
+    }
+  }
+
+  // SELECT OBJECTS
+  //
+  // Add every object the path selects in the object to the collection.
+  public void selectObjects(JSON root, Collection<JSON> values) {
+    final String last = keys[keys.length - 1];
+    for (final JSON parent : parents(root)) {
+      if (last != null) {
+        final JSON value = parent.getObject(last);
+        if (value != null) {
+          values.add(value);
+        }
+      } else {
+        final ArrayList<String> names = new ArrayList<>();
+        parent.getObjects(names);
+        for (final String name : names) {
+          values.add(parent.getObject(name));
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  // The number of keys in the path.
+  int length() {
+    return keys.length;
+  }
+
+  // The key at the given level, or null for a wildcard.
+  String key(int level) {
+    return keys[level];
+  }
+
+  // Whether the key at the given level of the path matches the string
+  // content in[start, end) of a document.
+  boolean matches(int level, String in, int start, int end, boolean escaped) {
+    final String key = keys[level];
+    if (key == null) {
+      return true;
+    }
+    if (escaped) {
+      return JSONScanner.decodedEquals(in, start, end, key);
+    }
+    return key.length() == end - start && in.regionMatches(start, key, 0, end - start);
+  }
+
+  // The objects reached by every key of the path but the last.
+  private ArrayList<JSON> parents(JSON root) {
+    ArrayList<JSON> current = new ArrayList<>(1);
+    current.add(root);
+    for (int level = 0; level < keys.length - 1 && !current.isEmpty(); ++level) {
+      final ArrayList<JSON> next = new ArrayList<>(keys[level] == null ? 16 : current.size());
+      for (final JSON object : current) {
+        if (keys[level] != null) {
+          final JSON child = object.getObject(keys[level]);
+          if (child != null) {
+            next.add(child);
+          }
+        } else {
+          final ArrayList<String> names = new ArrayList<>();
+          object.getObjects(names);
+          for (final String name : names) {
+            next.add(object.getObject(name));
+          }
+        }
+      }
+      current = next;
+    }
+    return current;
+  }
+}
@@ -0,0 +1,320 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// Pull parser for JSON-lite. The input is consumed through a fixed-size
+// buffer one event at a time, so memory use does not depend on the size of
+// the document (only on the longest single key or value).
+//
+// The input may hold several top-level objects one after another, separated
+// by whitespace; END_DOCUMENT is reported once the input runs out between
+// them.
+final class JSONReader implements Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  // What the reader expects to find next.
+  private static final int BEFORE_OBJECT = 0;
+  private static final int FIRST_KEY = 1;
+  private static final int NEXT_KEY = 2;
+  private static final int VALUE = 3;
+  private static final int AFTER_VALUE = 4;
+  private static final int DONE = 5;
+
+  private final Reader in;
+  private final char[] buffer;
+  private int pos;
+  private int limit;
+  private long consumed;
+  private boolean eof;
+
+  private final StringBuilder text = new StringBuilder();
+  private int state = BEFORE_OBJECT;
+  private int depth;
+  private boolean started;
+  private boolean keepText = true;
+  private JSONEvent current;
+
+  public JSONReader(Reader in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  public JSONReader(Reader in, int bufferSize) {
+    this.in = in;
+    this.buffer = new char[bufferSize];
+  }
+
+  public JSONReader(InputStream in) {
+    this(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  // NEXT
+  //
+  // Advance to the next event and return it. Once END_DOCUMENT has been
+  // returned every further call returns it again.
+  public JSONEvent next() throws IOException {
+    current = advance();
+    return current;
+  }
+
+  // CURRENT
+  //
+  // The event most recently returned by next(), or null before the first.
+  public JSONEvent current() {
+    return current;
+  }
+
+  // GET TEXT
+  //
+  // The decoded text of the current KEY or STRING event.
+  public String getText() {
+    if (current != JSONEvent.KEY && current != JSONEvent.STRING) {
+      throw new IllegalStateException("No text for " + current);
+    }
+    return text.toString();
+  }
+
+  // DEPTH
+  //
+  // How many objects are currently open.
+  public int depth() {
+    return depth;
+  }
+
+  // SKIP OBJECT
+  //
+  // When positioned on START_OBJECT, consume everything up to and including
+  // the matching END_OBJECT without decoding any of it.
+  public void skipObject() throws IOException {
+    if (current != JSONEvent.START_OBJECT) {
+      throw new IllegalStateException("Not at the start of an object: " + current);
+    }
+    final int target = depth - 1;
+    keepText = false;
+    try {
+      while (depth > target) {
+        next();
+      }
+    } finally {
+      keepText = true;
+    }
+  }
+
+  // READ OBJECT
+  //
+  // Build the next object in the stream (or the one that was just started)
+  // using objects created by the given factory. Afterwards the reader is
+  // positioned on that object's END_OBJECT.
+  public JSON readObject(JSONFactory factory) throws IOException {
+    if (current != JSONEvent.START_OBJECT && next() != JSONEvent.START_OBJECT) {
+      throw new IOException("Expected an object but found " + current + ".");
+    }
+    final ArrayList<JSON> open = new ArrayList<>();
+    final ArrayList<String> keys = new ArrayList<>();
+    open.add(factory.object());
+    String key = null;
+    while (true) {
+      switch (next()) {
+        case KEY:
+          key = getText();
+          break;
+        case STRING:
+          open.get(open.size() - 1).setString(key, getText());
+          break;
+        case START_OBJECT:
+          keys.add(key);
+          open.add(factory.object());
+          break;
+        case END_OBJECT:
+          final JSON done = open.remove(open.size() - 1);
+          if (open.isEmpty()) {
+            return done;
+          }
+          open.get(open.size() - 1).setObject(keys.remove(keys.size() - 1), done);
+          break;
+        default:
+          throw error("Incomplete schema.");
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private JSONEvent advance() throws IOException {
+    while (true) {
+      switch (state) {
+        case BEFORE_OBJECT: {
+          final int c = skipWhitespace();
+          if (c < 0 && started) {
+            state = DONE;
+            return JSONEvent.END_DOCUMENT;
+          }
+          if (c != '{') {
+            throw error(started ? "Invalid character after given object." : "Illegal beginning of schema.");
+          }
+          ++pos;
+          return openObject();
+        }
+        case FIRST_KEY:
+        case NEXT_KEY: {
+          final int c = skipWhitespace();
+          if (c == '}' && state == FIRST_KEY) {
+            ++pos;
+            return closeObject();
+          }
+          if (c != '"') {
+            throw c < 0 ? error("Incomplete schema.") : error("Missing key.");
+          }
+          ++pos;
+          readString("Illegal escape character in key.");
+          state = VALUE;
+          return JSONEvent.KEY;
+        }
+        case VALUE: {
+          final int colon = skipWhitespace();
+          if (colon != ':') {
+            throw error(colon < 0 ? "Incomplete schema." : "Missing colon after key.");
+          }
+          ++pos;
+          final int c = skipWhitespace();
+          if (c == '"') {
+            ++pos;
+            readString("Illegal escape character in value.");
+            state = AFTER_VALUE;
+            return JSONEvent.STRING;
+          }
+          if (c == '{') {
+            ++pos;
+            return openObject();
+          }
+          throw error(c < 0 ? "Incomplete schema." : "Invalid character after given key.");
+        }
+        case AFTER_VALUE: {
+          final int c = skipWhitespace();
+          if (c == ',') {
+            ++pos;
+            state = NEXT_KEY;
+            continue;
+          }
+          if (c == '}') {
+            ++pos;
+            return closeObject();
+          }
+          throw error(c < 0 ? "Incomplete schema." : "Illegal character after object value.");
+        }
+        default:
+          return JSONEvent.END_DOCUMENT;
+      }
+    }
+  }
+
+  private JSONEvent openObject() {
+    ++depth;
+    started = true;
+    state = FIRST_KEY;
+    return JSONEvent.START_OBJECT;
+  }
+
+  private JSONEvent closeObject() {
+    --depth;
+    state = depth == 0 ? BEFORE_OBJECT : AFTER_VALUE;
+    return JSONEvent.END_OBJECT;
+  }
+
+  // Read the rest of a string whose opening quote was just consumed,
+  // decoding it into text unless the caller is skipping.
+  private void readString(String escapeMessage) throws IOException {
+    text.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw error("Incomplete schema.");
+      }
+      // Copy runs of plain characters straight out of the buffer.
+      int run = pos;
+      char c = 0;
+      while (run < limit && (c = buffer[run]) != '"' && c != '\\') {
+        ++run;
+      }
+      if (keepText) {
+        text.append(buffer, pos, run - pos);
+      }
+      pos = run;
+      if (pos == limit) {
+        continue;
+      }
+      ++pos;
+      if (c == '"') {
+        return;
+      }
+      if (pos == limit && !fill()) {
+        throw error("Incomplete schema.");
+      }
+      final char e = buffer[pos];
+      if (e != '"' && e != '\\' && e != 't' && e != 'n') {
+        throw error(escapeMessage);
+      }
+      ++pos;
+      if (keepText) {
+        text.append(e == 't' ? '\t' : e == 'n' ? '\n' : e);
+      }
+    }
+  }
+
+  // Skip whitespace and return the next character without consuming it, or
+  // -1 at the end of the input.
+  private int skipWhitespace() throws IOException {
+    while (true) {
+      if (pos == limit && !fill()) {
+        return -1;
+      }
+      final char c = buffer[pos];
+      if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+        return c;
+      }
+      ++pos;
+    }
+  }
+
+  private boolean fill() throws IOException {
+    while (!eof) {
+      consumed += limit;
+      pos = 0;
+      limit = 0;
+      final int read = in.read(buffer, 0, buffer.length);
+      if (read < 0) {
+        eof = true;
+      } else if (read > 0) {
+        limit = read;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private IOException error(String message) {
+    return new IOException(message + " (at position " + (consumed + pos) + ")");
+  }
+}
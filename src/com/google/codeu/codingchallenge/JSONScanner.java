@@ -0,0 +1,294 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Walks a JSON-lite document once, left to right, and reports its structure
+// to a JSONHandler as positions into the original string. Nothing is copied
+// out of the input here; handlers decide what (if anything) to materialize.
+//
+// Objects are the only thing that can nest in JSON-lite, so the scanner only
+// needs to track the current depth rather than recurse: any depth takes the
+// same stack space. JSONLimits can bound the depth and everything else an
+// untrusted document could blow up.
+final class JSONScanner {
+
+  private final String in;
+  private final JSONHandler handler;
+  private final int length;
+  private final JSONLimits limits;
+  // Keys seen so far in each open object, by depth; only kept when the
+  // number of keys is limited.
+  private int[] keys;
+
+  private int pos;
+  private boolean escaped;
+  // The first backslash at or after the current string, or the length if
+  // there is none. Most strings end before it and need no escape checks.
+  private int nextBackslash = -1;
+
+  public JSONScanner(String in, JSONHandler handler) {
+    this(in, handler, JSONLimits.NONE);
+  }
+
+  public JSONScanner(String in, JSONHandler handler, JSONLimits limits) {
+    this.in = in;
+    this.handler = handler;
+    this.length = in.length();
+    this.limits = limits;
+    if (limits.maxKeys != Integer.MAX_VALUE) {
+      keys = new int[16];
+    }
+  }
+
+  public void scan() throws IOException {
+    if (length > limits.maxSize) {
+      throw error("Document longer than the limit of " + limits.maxSize + ".", (int) limits.maxSize);
+    }
+    pos = skipWhitespace(0);
+    if (pos >= length || in.charAt(pos) != '{') {
+      throw error("Illegal beginning of schema.", pos);
+    }
+    handler.startObject(pos++);
+
+    int depth = 1;
+    boolean empty = true;
+    while (depth > 0) {
+      // Expecting a key, or the end of the object if it has no members yet.
+      pos = skipWhitespace(pos);
+      char token = charAt(pos);
+      if (token == '}' && empty) {
+        handler.endObject(pos++);
+        --depth;
+      } else {
+        if (token != '"') {
+          throw error("Missing key.", pos);
+        }
+        if (keys != null && ++keys[depth] > limits.maxKeys) {
+          throw error("More keys than the limit of " + limits.maxKeys + ".", pos);
+        }
+        final int keyStart = pos + 1;
+        final int keyEnd = scanString(keyStart, "Illegal escape character in key.");
+        handler.key(keyStart, keyEnd, escaped);
+
+        pos = skipWhitespace(keyEnd + 1);
+        if (charAt(pos) != ':') {
+          throw error("Missing colon after key.", pos);
+        }
+
+        pos = skipWhitespace(pos + 1);
+        token = charAt(pos);
+        if (token == '"') {
+          final int valueStart = pos + 1;
+          final int valueEnd = scanString(valueStart, "Illegal escape character in value.");
+          handler.string(valueStart, valueEnd, escaped);
+          pos = valueEnd + 1;
+        } else if (token == '{') {
+          if (depth == limits.maxDepth) {
+            throw error("Nested deeper than the limit of " + limits.maxDepth + ".", pos);
+          }
+          handler.startObject(pos++);
+          ++depth;
+          if (keys != null) {
+            if (depth == keys.length) {
+              keys = Arrays.copyOf(keys, depth * 2);
+            }
+            keys[depth] = 0;
+          }
+          empty = true;
+          continue;
+        } else {
+          throw error("Invalid character after given key.", pos);
+        }
+      }
+
+      // A value just finished; close as many objects as the input closes.
+      empty = false;
+      while (depth > 0) {
+        pos = skipWhitespace(pos);
+        token = charAt(pos);
+        if (token == ',') {
+          ++pos;
+          break;
+        } else if (token == '}') {
+          handler.endObject(pos++);
+          --depth;
+        } else {
+          throw error("Illegal character after object value.", pos);
+        }
+      }
+    }
+
+    final int tail = skipWhitespace(pos);
+    if (tail != length) {
+      throw error("Invalid character after given object.", tail);
+    }
+  }
+
+  // DECODE
+  //
+  // Turn the content of a string (the characters between its quotes) into
+  // the value it represents by resolving its escape sequences.
+  public static String decode(String in, int start, int end, boolean escaped) {
+    if (!escaped) {
+      return in.substring(start, end);
+    }
+    final char[] out = new char[end - start];
+    int length = 0;
+    for (int i = start; i < end; ++i) {
+      final char c = in.charAt(i);
+      if (c != '\\') {
+        out[length++] = c;
+      } else {
+        final char e = in.charAt(++i);
+        out[length++] = e == 't' ? '\t' : e == 'n' ? '\n' : e;
+      }
+    }
+    return new String(out, 0, length);
+  }
+
+  // DECODED EQUALS
+  //
+  // Whether the string content in[start, end) decodes to the given value,
+  // checked without decoding it into a new string.
+  public static boolean decodedEquals(String in, int start, int end, String value) {
+    int at = 0;
+    final int length = value.length();
+    for (int i = start; i < end; ++i, ++at) {
+      char c = in.charAt(i);
+      if (c == '\\') {
+        final char e = in.charAt(++i);
+        c = e == 't' ? '\t' : e == 'n' ? '\n' : e;
+      }
+      if (at == length || value.charAt(at) != c) {
+        return false;
+      }
+    }
+    return at == length;
+  }
+
+  // Decodes strings through one reusable buffer, so that resolving escapes
+  // costs no allocation beyond the resulting string. Strings without
+  // escapes are copied straight out of the input. Not thread-safe: each
+  // parse should use its own.
+  static final class Decoder {
+
+    private char[] buffer = new char[64];
+
+    public String decode(String in, int start, int end, boolean escaped) {
+      if (!escaped) {
+        return in.substring(start, end);
+      }
+      if (buffer.length < end - start) {
+        buffer = new char[Math.max(end - start, buffer.length * 2)];
+      }
+      int length = 0;
+      for (int i = start; i < end; ++i) {
+        final char c = in.charAt(i);
+        if (c != '\\') {
+          buffer[length++] = c;
+        } else {
+          final char e = in.charAt(++i);
+          buffer[length++] = e == 't' ? '\t' : e == 'n' ? '\n' : e;
+        }
+      }
+      return new String(buffer, 0, length);
+    }
+  }
+
+  // Find the closing quote of the string whose content begins at start,
+  // validating escapes along the way. Sets escaped if any were found.
+  private int scanString(int start, String escapeMessage) throws IOException {
+    escaped = false;
+    if (limits.maxStringLength < length - start) {
+      return findQuoteWithin(start, start + limits.maxStringLength, escapeMessage);
+    }
+    return findQuote(start, escapeMessage);
+  }
+
+  // As findQuote, but gives up as soon as the string runs past limit
+  // instead of first looking for its end.
+  private int findQuoteWithin(int start, int limit, String escapeMessage) throws IOException {
+    for (int i = start; i <= limit; ++i) {
+      final char c = in.charAt(i);
+      if (c == '"') {
+        return i;
+      }
+      if (c == '\\') {
+        final char e = charAt(++i);
+        if (e != '"' && e != '\\' && e != 't' && e != 'n') {
+          throw error(escapeMessage, i - 1);
+        }
+        escaped = true;
+      }
+      if (i >= limit) {
+        throw error("String longer than the limit of " + limits.maxStringLength + ".", limit);
+      }
+    }
+    throw new AssertionError();  // the loop returns or throws by limit
+  }
+
+  private int findQuote(int start, String escapeMessage) throws IOException {
+    if (nextBackslash < start) {
+      nextBackslash = in.indexOf('\\', start);
+      if (nextBackslash < 0) {
+        nextBackslash = length;
+      }
+    }
+    // String.indexOf is an intrinsic that checks many characters at a time.
+    final int quote = in.indexOf('"', start);
+    if (quote >= 0 && quote < nextBackslash) {
+      return quote;
+    }
+    for (int i = start; i < length; ++i) {
+      final char c = in.charAt(i);
+      if (c == '"') {
+        return i;
+      }
+      if (c == '\\') {
+        final char e = charAt(++i);
+        if (e != '"' && e != '\\' && e != 't' && e != 'n') {
+          throw error(escapeMessage, i - 1);
+        }
+        escaped = true;
+      }
+    }
+    throw error("Incomplete schema.", length);
+  }
+
+  private char charAt(int i) throws IOException {
+    if (i >= length) {
+      throw error("Incomplete schema.", length);
+    }
+    return in.charAt(i);
+  }
+
+  private int skipWhitespace(int i) {
+    while (i < length && isWhitespace(in.charAt(i))) {
+      ++i;
+    }
+    return i;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+  }
+
+  private static IOException error(String message, int position) {
+    return new IOException(message + " (at position " + position + ")");
+  }
+}
@@ -0,0 +1,297 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Rewrites JSON-lite text into JSON-lite text in one pass without building
+// a tree, following rules that each pick entries by a JSONPath:
+//
+//   drop    the entry goes, whether a string or a whole object;
+//   rename  the entry's key is written with a new name;
+//   redact  the string, or every string under the object, is replaced;
+//   keep    once there is any keep rule, only the entries the keep rules
+//           select survive, with the objects leading to them, as with
+//           ProjectingJSONParser.
+//
+// For example, to scrub a log record:
+//
+//   JSONTransform.NONE.drop("user.password").rename("user.mail", "email")
+//       .redact("*.token", "xxx").transform(record, out);
+//
+// Paths match the keys as they are in the input, before any renaming, and
+// a drop wins over every other rule. Everything the rules don't touch is
+// copied from the input in runs as long as possible, without decoding, so
+// the output keeps the input's spacing and escapes.
+//
+// Transforms are immutable; each rule method returns a new one. There can
+// be at most 64 rules. The input is checked as fully as by a parser; after
+// an IOException part of the output may already have been written.
+final class JSONTransform {
+
+  // No rules: the output is the input.
+  public static final JSONTransform NONE = new JSONTransform(new JSONPath[0], new int[0], new String[0]);
+
+  private static final int DROP = 0;
+  private static final int RENAME = 1;
+  private static final int REDACT = 2;
+  private static final int KEEP = 3;
+
+  private final JSONPath[] paths;
+  private final int[] kinds;
+  // The quoted new name or replacement for each rule.
+  private final String[] texts;
+
+  // Bit p is set in ends[level] if path p ends at that level, and in
+  // continues[level] if it goes deeper; the others have bit p set for each
+  // rule of their kind.
+  private final long[] ends;
+  private final long[] continues;
+  private final long drops;
+  private final long renames;
+  private final long redacts;
+  private final long keeps;
+
+  private JSONTransform(JSONPath[] paths, int[] kinds, String[] texts) {
+    this.paths = paths;
+    this.kinds = kinds;
+    this.texts = texts;
+    int longest = 0;
+    for (final JSONPath path : paths) {
+      longest = Math.max(longest, path.length());
+    }
+    ends = new long[longest + 2];
+    continues = new long[longest + 2];
+    final long[] byKind = new long[4];
+    for (int p = 0; p < paths.length; ++p) {
+      ends[paths[p].length()] |= 1L << p;
+      for (int level = 0; level < paths[p].length(); ++level) {
+        continues[level] |= 1L << p;
+      }
+      byKind[kinds[p]] |= 1L << p;
+    }
+    drops = byKind[DROP];
+    renames = byKind[RENAME];
+    redacts = byKind[REDACT];
+    keeps = byKind[KEEP];
+  }
+
+  public JSONTransform drop(String path) {
+    return with(path, DROP, null);
+  }
+
+  public JSONTransform rename(String path, String name) {
+    return with(path, RENAME, JSONWriter.quote(name));
+  }
+
+  public JSONTransform redact(String path, String replacement) {
+    return with(path, REDACT, JSONWriter.quote(replacement));
+  }
+
+  public JSONTransform keep(String path) {
+    return with(path, KEEP, null);
+  }
+
+  // TRANSFORM
+  //
+  // Write the transformed document to the output.
+  public void transform(String in, Appendable out) throws IOException {
+    final Pass pass = new Pass(in, out);
+    new JSONScanner(in, pass).scan();
+    pass.copy(in.length());
+  }
+
+  public String transform(String in) throws IOException {
+    final StringBuilder out = new StringBuilder(in.length());
+    transform(in, out);
+    return out.toString();
+  }
+
+  private JSONTransform with(String path, int kind, String text) {
+    if (paths.length == 64) {
+      throw new IllegalArgumentException("A transform takes at most 64 rules.");
+    }
+    final JSONPath[] morePaths = Arrays.copyOf(paths, paths.length + 1);
+    final int[] moreKinds = Arrays.copyOf(kinds, kinds.length + 1);
+    final String[] moreTexts = Arrays.copyOf(texts, texts.length + 1);
+    morePaths[paths.length] = JSONPath.compile(path);
+    moreKinds[paths.length] = kind;
+    moreTexts[paths.length] = text;
+    return new JSONTransform(morePaths, moreKinds, moreTexts);
+  }
+
+  // One run over a document. The output lags behind the scan: "done" is
+  // how far the input has been copied, and copying only happens when an
+  // entry has to be cut out or something written in place of part of it.
+  private final class Pass implements JSONHandler {
+
+    private final String in;
+    private final Appendable out;
+    private final Writer writer;
+    private int done;
+    // Just after the "{" or the value before the current entry.
+    private int lastEnd;
+
+    // Open objects, with the paths still alive in each and whether any of
+    // its entries has been written.
+    private int depth;
+    private long[] alive = new long[16];
+    private boolean[] wrote = new boolean[16];
+    // How many dropped objects are open.
+    private int skipped;
+    // The depth of the entry whose object is kept whole, or redacted with
+    // redaction, if any.
+    private int keptFrom = Integer.MAX_VALUE;
+    private int redactedFrom = Integer.MAX_VALUE;
+    private String redaction;
+
+    // The current key, the paths it continues and those that end at it.
+    // Only a key that continues some path can be deeper than the arrays
+    // by level go.
+    private int keyStart;
+    private int keyEnd;
+    private long keyPaths;
+    private long rules;
+
+    Pass(String in, Appendable out) {
+      this.in = in;
+      this.out = out;
+      this.writer = out instanceof Writer ? (Writer) out : null;
+    }
+
+    @Override
+    public void startObject(int position) throws IOException {
+      if (skipped > 0) {
+        ++skipped;
+        return;
+      }
+      if (depth > 0) {
+        if (!enter(true)) {
+          skipped = 1;
+          return;
+        }
+        if ((rules & keeps) != 0 && keptFrom == Integer.MAX_VALUE) {
+          keptFrom = depth;
+        }
+        if ((rules & redacts) != 0 && redactedFrom == Integer.MAX_VALUE) {
+          redactedFrom = depth;
+          redaction = texts[Long.numberOfTrailingZeros(rules & redacts)];
+        }
+      }
+      if (++depth == alive.length) {
+        alive = Arrays.copyOf(alive, depth * 2);
+        wrote = Arrays.copyOf(wrote, depth * 2);
+      }
+      alive[depth] = depth == 1 ? continues[0] : keyPaths == 0 ? 0 : keyPaths & continues[depth - 1];
+      wrote[depth] = false;
+      lastEnd = position + 1;
+    }
+
+    @Override
+    public void key(int start, int end, boolean escaped) {
+      if (skipped > 0) {
+        return;
+      }
+      keyStart = start;
+      keyEnd = end;
+      keyPaths = 0;
+      for (long candidates = alive[depth]; candidates != 0; candidates &= candidates - 1) {
+        final int p = Long.numberOfTrailingZeros(candidates);
+        if (paths[p].matches(depth - 1, in, start, end, escaped)) {
+          keyPaths |= 1L << p;
+        }
+      }
+      rules = keyPaths == 0 ? 0 : keyPaths & ends[depth];
+    }
+
+    @Override
+    public void string(int start, int end, boolean escaped) throws IOException {
+      if (skipped > 0) {
+        return;
+      }
+      if (!enter(false)) {
+        done = end + 1;
+      } else if (depth > redactedFrom || (rules & redacts) != 0) {
+        copy(start - 1);
+        out.append(depth > redactedFrom ? redaction : texts[Long.numberOfTrailingZeros(rules & redacts)]);
+        done = end + 1;
+      }
+      lastEnd = end + 1;
+    }
+
+    @Override
+    public void endObject(int position) {
+      if (skipped > 0) {
+        if (--skipped == 0) {
+          done = position + 1;
+          lastEnd = position + 1;
+        }
+        return;
+      }
+      if (--depth <= keptFrom) {
+        keptFrom = Integer.MAX_VALUE;
+      }
+      if (depth <= redactedFrom) {
+        redactedFrom = Integer.MAX_VALUE;
+      }
+      lastEnd = position + 1;
+    }
+
+    // Copy the input up to the given position, if it hasn't been already.
+    void copy(int end) throws IOException {
+      if (end <= done) {
+        return;
+      }
+      if (writer != null) {
+        // Writer.append(CharSequence, int, int) would create a substring.
+        writer.write(in, done, end - done);
+      } else {
+        out.append(in, done, end);
+      }
+      done = end;
+    }
+
+    // Start the output of the entry whose value begins now, or cut it out
+    // and return false if it is dropped. A dropped entry takes the comma
+    // before it along, so the first entry written in an object loses the
+    // comma left before it by any dropped ones.
+    private boolean enter(boolean object) throws IOException {
+      final boolean selected = depth > keptFrom || (rules & keeps) != 0
+          || (object && (keyPaths & keeps) != 0 && (keyPaths & keeps & continues[depth]) != 0);
+      if ((rules & drops) != 0 || (keeps != 0 && !selected)) {
+        copy(lastEnd);
+        return false;
+      }
+      if (!wrote[depth]) {
+        wrote[depth] = true;
+        for (int i = lastEnd; i < keyStart - 1; ++i) {
+          if (in.charAt(i) == ',') {
+            copy(i);
+            done = i + 1;
+            break;
+          }
+        }
+      }
+      if ((rules & renames) != 0) {
+        copy(keyStart - 1);
+        out.append(texts[Long.numberOfTrailingZeros(rules & renames)]);
+        done = keyEnd + 1;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+// Writes compact JSON-lite text, either event by event (beginObject, key,
+// value, endObject) or a whole JSON tree at once. Quotes, backslashes, tabs
+// and newlines are escaped; runs of other characters are copied to the
+// output directly without creating intermediate strings.
+//
+// Several top-level objects can be written in a row; they are separated by
+// a newline, which JSONReader reads back as separate objects.
+final class JSONWriter implements Flushable {
+
+  private final Appendable out;
+  private final Writer writer;
+
+  private int depth;
+  private boolean started;
+  private boolean first;
+  private boolean afterKey;
+
+  public JSONWriter(Appendable out) {
+    this.out = out;
+    this.writer = out instanceof Writer ? (Writer) out : null;
+  }
+
+  // Encode the output as UTF-8 into the buffer, starting at its position.
+  // A BufferOverflowException is thrown if it runs out of room.
+  public JSONWriter(ByteBuffer out) {
+    this(new Utf8Output(out));
+  }
+
+  // WRITE
+  //
+  // Write the JSON tree to the output.
+  public static void write(JSON object, Appendable out) throws IOException {
+    new JSONWriter(out).object(object).flush();
+  }
+
+  // TO STRING
+  //
+  // Serialize the JSON tree into a string.
+  public static String toString(JSON object) {
+    final StringBuilder out = new StringBuilder();
+    try {
+      new JSONWriter(out).object(object);
+    } catch (IOException ex) {
+      throw new AssertionError(ex);  // StringBuilder never throws
+    }
+    return out.toString();
+  }
+
+  // QUOTE
+  //
+  // The string as it would be written: in quotes, with escapes.
+  static String quote(String s) {
+    final StringBuilder out = new StringBuilder(s.length() + 2);
+    try {
+      new JSONWriter(out).quoted(s);
+    } catch (IOException ex) {
+      throw new AssertionError(ex);  // StringBuilder never throws
+    }
+    return out.toString();
+  }
+
+  public JSONWriter beginObject() throws IOException {
+    if (afterKey) {
+      afterKey = false;
+    } else if (depth == 0) {
+      if (started) {
+        out.append('\n');
+      }
+      started = true;
+    } else {
+      throw new IllegalStateException("An object inside an object needs a key.");
+    }
+    out.append('{');
+    ++depth;
+    first = true;
+    return this;
+  }
+
+  public JSONWriter key(String name) throws IOException {
+    if (depth == 0 || afterKey) {
+      throw new IllegalStateException("A key can't be written here.");
+    }
+    if (!first) {
+      out.append(',');
+    }
+    first = false;
+    quoted(name);
+    out.append(':');
+    afterKey = true;
+    return this;
+  }
+
+  public JSONWriter value(String value) throws IOException {
+    if (!afterKey) {
+      throw new IllegalStateException("A value needs a key.");
+    }
+    quoted(value);
+    afterKey = false;
+    return this;
+  }
+
+  public JSONWriter endObject() throws IOException {
+    if (depth == 0 || afterKey) {
+      throw new IllegalStateException("There is no object to end here.");
+    }
+    out.append('}');
+    --depth;
+    first = false;
+    return this;
+  }
+
+  // OBJECT
+  //
+  // Write a whole JSON tree, either as a top-level object or as the value
+  // of the key that was just written. Nested objects are walked with an
+  // explicit stack so deep trees can't overflow the call stack.
+  public JSONWriter object(JSON object) throws IOException {
+    final ArrayList<JSON> objects = new ArrayList<>();
+    final ArrayList<Iterator<String>> strings = new ArrayList<>();
+    final ArrayList<Iterator<String>> children = new ArrayList<>();
+    push(object, objects, strings, children);
+    while (!objects.isEmpty()) {
+      final int top = objects.size() - 1;
+      final JSON current = objects.get(top);
+      if (strings.get(top).hasNext()) {
+        final String name = strings.get(top).next();
+        key(name).value(current.getString(name));
+      } else if (children.get(top).hasNext()) {
+        final String name = children.get(top).next();
+        key(name);
+        push(current.getObject(name), objects, strings, children);
+      } else {
+        endObject();
+        objects.remove(top);
+        strings.remove(top);
+        children.remove(top);
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (out instanceof Flushable) {
+      ((Flushable) out).flush();
+    }
+  }
+
+  private void push(JSON object, ArrayList<JSON> objects,
+                    ArrayList<Iterator<String>> strings,
+                    ArrayList<Iterator<String>> children) throws IOException {
+    final ArrayList<String> stringNames = new ArrayList<>();
+    final ArrayList<String> objectNames = new ArrayList<>();
+    object.getStrings(stringNames);
+    object.getObjects(objectNames);
+    beginObject();
+    objects.add(object);
+    strings.add(stringNames.iterator());
+    children.add(objectNames.iterator());
+  }
+
+  private void quoted(String s) throws IOException {
+    out.append('"');
+    int run = 0;
+    final int length = s.length();
+    for (int i = 0; i < length; ++i) {
+      final char c = s.charAt(i);
+      final char escape = c == '"' ? '"' : c == '\\' ? '\\' : c == '\t' ? 't' : c == '\n' ? 'n' : 0;
+      if (escape != 0) {
+        copy(s, run, i);
+        out.append('\\').append(escape);
+        run = i + 1;
+      }
+    }
+    copy(s, run, length);
+    out.append('"');
+  }
+
+  private void copy(String s, int start, int end) throws IOException {
+    if (start == end) {
+      return;
+    }
+    if (writer != null) {
+      // Writer.append(CharSequence, int, int) would create a substring.
+      writer.write(s, start, end - start);
+    } else {
+      out.append(s, start, end);
+    }
+  }
+
+  // Encodes characters as UTF-8 straight into a ByteBuffer.
+  private static final class Utf8Output implements Appendable {
+
+    private final ByteBuffer out;
+    private char highSurrogate;
+
+    Utf8Output(ByteBuffer out) {
+      this.out = out;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      for (int i = start; i < end; ++i) {
+        append(csq.charAt(i));
+      }
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+      if (highSurrogate != 0) {
+        final char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          final int code = Character.toCodePoint(high, c);
+          out.put((byte) (0xf0 | (code >> 18)));
+          out.put((byte) (0x80 | ((code >> 12) & 0x3f)));
+          out.put((byte) (0x80 | ((code >> 6) & 0x3f)));
+          out.put((byte) (0x80 | (code & 0x3f)));
+          return this;
+        }
+        out.put((byte) '?');  // unpaired, as String.getBytes would do
+      }
+      if (c < 0x80) {
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        out.put((byte) (0xc0 | (c >> 6)));
+        out.put((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        out.put((byte) '?');
+      } else {
+        out.put((byte) (0xe0 | (c >> 12)));
+        out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        out.put((byte) (0x80 | (c & 0x3f)));
+      }
+      return this;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A bounded symbol table for object keys. Parsing many documents with the
+// same schema produces the same few keys over and over; looking them up
+// here makes every occurrence share one String, so the heap holds each key
+// once and its hash code is computed once.
+//
+// The table is a fixed array of slots indexed by the key's hash, and a new
+// key simply replaces whatever was in its slot, so its size never grows and
+// a rarely seen key can't push out a common one for long. Long keys aren't
+// kept at all. Any number of threads can share a table: the slots hold
+// immutable Strings, so a racing reader sees either the old key or the new
+// one, and both are correct answers.
+final class KeyTable {
+
+  // Keys longer than this are unlikely to repeat and not worth the slot.
+  private static final int MAX_KEY_LENGTH = 64;
+
+  private final String[] slots;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  // Create a table with room for about the given number of keys.
+  public KeyTable(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("A key table needs room for at least one key.");
+    }
+    slots = new String[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+  }
+
+  // INTERN
+  //
+  // The shared String equal to in[start, end), creating it if the table
+  // doesn't hold one yet.
+  public String intern(String in, int start, int end) {
+    final int length = end - start;
+    if (length > MAX_KEY_LENGTH) {
+      return in.substring(start, end);
+    }
+    int hash = 0;
+    for (int i = start; i < end; ++i) {
+      hash = 31 * hash + in.charAt(i);
+    }
+    final int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+    final String cached = slots[slot];
+    if (cached != null && cached.length() == length && cached.regionMatches(0, in, start, length)) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    misses.incrementAndGet();
+    final String key = in.substring(start, end);
+    key.hashCode();  // cache it before the key is shared
+    slots[slot] = key;
+    return key;
+  }
+
+  // INTERN STRING
+  //
+  // The shared String equal to the given one.
+  public String intern(String key) {
+    return intern(key, 0, key.length());
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  // HIT RATE
+  //
+  // The share of lookups that found their key already in the table, or 0
+  // before the first lookup.
+  public double hitRate() {
+    final long found = hits.get();
+    final long total = found + misses.get();
+    return total == 0 ? 0 : (double) found / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("KeyTable(%d slots, %d hits, %d misses, %.1f%% hit rate)",
+        slots.length, hits(), misses(), 100 * hitRate());
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A view of one object in a document indexed by LazyJSONParser. Lookups
+// compare the requested name against the key text in the source, so no key
+// is created to find a value, and a value is only decoded the first time it
+// is read.
+final class LazyJSON extends CopyOnWriteJSON {
+
+  // Ints per entry in the index: key hash, key start, key end, value start,
+  // value end. Ends of slices containing escapes are stored complemented.
+  // For object values the value start is the complement of the child's
+  // record and the value end is unused.
+  static final int ENTRY = RecordBuilder.ENTRY;
+
+  private final String source;
+  private final int[] index;
+  private final int record;
+  private final int count;
+
+  private String[] values;
+  private LazyJSON[] children;
+
+  LazyJSON(String source, int[] index, int record) {
+    this.source = source;
+    this.index = index;
+    this.record = record;
+    this.count = index[record];
+  }
+
+  @Override
+  JSON readObject(String name) {
+    final int entry = find(name);
+    return entry < 0 || !isObject(entry) ? null : child(entry);
+  }
+
+  @Override
+  String readString(String name) {
+    final int entry = find(name);
+    return entry < 0 || isObject(entry) ? null : value(entry);
+  }
+
+  @Override
+  void readObjects(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      if (isObject(it.getValue())) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  @Override
+  void readStrings(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      if (!isObject(it.getValue())) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  // Find the last entry with the given key, since later duplicates win.
+  private int find(String name) {
+    final int hash = name.hashCode();
+    for (int entry = count - 1; entry >= 0; --entry) {
+      final int at = base(entry);
+      if (index[at] == hash && keyEquals(name, index[at + 1], index[at + 2])) {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  private boolean keyEquals(String name, int start, int end) {
+    if (end >= 0) {
+      return end - start == name.length() && source.regionMatches(start, name, 0, end - start);
+    }
+    return JSONScanner.decodedEquals(source, start, ~end, name);
+  }
+
+  // Every distinct key mapped to its last entry, in document order.
+  private Map<String, Integer> entries() {
+    final Map<String, Integer> entries = new LinkedHashMap<>();
+    for (int entry = 0; entry < count; ++entry) {
+      final int at = base(entry);
+      entries.put(slice(index[at + 1], index[at + 2]), entry);
+    }
+    return entries;
+  }
+
+  private boolean isObject(int entry) {
+    return index[base(entry) + 3] < 0;
+  }
+
+  private String value(int entry) {
+    if (values == null) {
+      values = new String[count];
+    }
+    if (values[entry] == null) {
+      final int at = base(entry);
+      values[entry] = slice(index[at + 3], index[at + 4]);
+    }
+    return values[entry];
+  }
+
+  // Children are cached so that changes made through one stick.
+  private LazyJSON child(int entry) {
+    if (children == null) {
+      children = new LazyJSON[count];
+    }
+    if (children[entry] == null) {
+      children[entry] = new LazyJSON(source, index, ~index[base(entry) + 3]);
+    }
+    return children[entry];
+  }
+
+  private String slice(int start, int end) {
+    return end < 0
+        ? JSONScanner.decode(source, start, ~end, true)
+        : JSONScanner.decode(source, start, end, false);
+  }
+
+  private int base(int entry) {
+    return record + 1 + entry * ENTRY;
+  }
+
+  @Override
+  void copyTo(MyJSON copy) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      final int entry = it.getValue();
+      if (isObject(entry)) {
+        copy.setObject(it.getKey(), child(entry));
+      } else {
+        copy.setString(it.getKey(), value(entry));
+      }
+    }
+  }
+}
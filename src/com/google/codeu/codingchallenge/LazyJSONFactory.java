@@ -0,0 +1,31 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// Hands out parsers that index documents instead of building them, for
+// callers that only read a few values out of large objects. New objects are
+// ordinary MyJSON objects.
+final class LazyJSONFactory implements JSONFactory {
+
+  @Override
+  public JSON object() {
+    return new MyJSON();
+  }
+
+  @Override
+  public JSONParser parser() {
+    return new LazyJSONParser();
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Validates a document and records where its keys, values and objects are,
+// without creating any of them. The result is a LazyJSON view over the
+// original string.
+//
+// The index is the records of a RecordBuilder, with each key and string
+// value stored as its bounds in the source.
+final class LazyJSONParser implements JSONParser {
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    final IndexBuilder builder = new IndexBuilder(in);
+    new JSONScanner(in, builder).scan();
+    return new LazyJSON(in, Arrays.copyOf(builder.records, builder.size), builder.root);
+  }
+
+  private static final class IndexBuilder extends RecordBuilder {
+
+    private final String in;
+
+    IndexBuilder(String in) {
+      this.in = in;
+    }
+
+    @Override
+    void writeKey(int[] entries, int at, int start, int end, boolean escaped) {
+      entries[at] = hash(start, end, escaped);
+      entries[at + 1] = start;
+      entries[at + 2] = escaped ? ~end : end;
+    }
+
+    @Override
+    void writeString(int[] entries, int at, int start, int end, boolean escaped) {
+      entries[at + 3] = start;
+      entries[at + 4] = escaped ? ~end : end;
+    }
+
+    // The hash String.hashCode() would give the decoded key, computed
+    // without creating the key.
+    private int hash(int start, int end, boolean escaped) {
+      int h = 0;
+      for (int i = start; i < end; ++i) {
+        char c = in.charAt(i);
+        if (escaped && c == '\\') {
+          c = in.charAt(++i);
+          c = c == 't' ? '\t' : c == 'n' ? '\n' : c;
+        }
+        h = 31 * h + c;
+      }
+      return h;
+    }
+  }
+}
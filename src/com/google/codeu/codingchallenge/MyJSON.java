@@ -14,85 +14,343 @@
 
 package com.google.codeu.codingchallenge;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 
+// The default JSON object. Entries live in an open-addressing table of
+// parallel arrays (keys, values and a tag saying which kind each value is)
+// with linear probing, so a lookup is one probe sequence and no entry
+// needs an object of its own. Each kind also keeps the table slots of its
+// keys in the order they were added, so listing the strings never looks
+// at the objects and the other way round.
+//
+// A removed key leaves a marker in its slot, so that probes for other keys
+// still walk past it, and stays in its list until the table is next
+// rebuilt; listing skips it. Removal is O(1) that way, and the markers are
+// cleared out whenever they fill the table.
+//
+// Objects parsed through a ParseContext go back to its pool when it is
+// released; from then until the pool hands them out again every call
+// throws IllegalStateException.
 final class MyJSON implements JSON {
 
-  // variable that will hold the key-value pairs in the memory.
-  // the reason its generic is because the
-  // the value might either be a String or a JSON object.
-  private HashMap<String, Object> mem;
-  private int objectLen;
-  private int objCtr;
-  public MyJSON(){
-    mem = new HashMap<String, Object>();
-    objectLen = -1;
-    objCtr = 0;
+  private static final byte STRING = 1;
+  private static final byte OBJECT = 2;
+
+  // Larger tables are dropped rather than kept for the next use.
+  private static final int MAX_RECYCLED_CAPACITY = 256;
+
+  // The key of a removed slot. No name is ever this same instance.
+  private static final String REMOVED = new String("");
+
+  // All null until the first entry is added.
+  private String[] keys;
+  private Object[] values;
+  private byte[] tags;
+  private int size;
+  // Slots holding a key or REMOVED.
+  private int used;
+
+  private int[] stringSlots;
+  private int strings;
+  private int[] objectSlots;
+  private int objects;
+
+  private boolean released;
+
+  public MyJSON() {}
+
+  // COPY OF
+  //
+  // Deep copy any JSON tree into new MyJSON objects. Nested objects are
+  // walked with an explicit stack, so deep trees can't overflow the call
+  // stack.
+  public static MyJSON copyOf(JSON source) {
+    final MyJSON root = new MyJSON();
+    final ArrayDeque<JSON> sources = new ArrayDeque<>();
+    final ArrayDeque<MyJSON> copies = new ArrayDeque<>();
+    final ArrayList<String> strings = new ArrayList<>();
+    final ArrayList<String> objects = new ArrayList<>();
+    sources.push(source);
+    copies.push(root);
+    while (!sources.isEmpty()) {
+      final JSON from = sources.pop();
+      final MyJSON copy = copies.pop();
+      strings.clear();
+      objects.clear();
+      from.getStrings(strings);
+      from.getObjects(objects);
+      copy.prepare(strings.size(), objects.size());
+      for (final String name : strings) {
+        copy.put(name, from.getString(name), STRING);
+      }
+      // Children go in now, in order, and are filled in when popped.
+      for (final String name : objects) {
+        final MyJSON child = new MyJSON();
+        copy.put(name, child, OBJECT);
+        sources.push(from.getObject(name));
+        copies.push(child);
+      }
+    }
+    return root;
+  }
+
+  // Sized for the given number of entries of each kind, as when a parser
+  // has already seen the whole object.
+  MyJSON(int strings, int objects) {
+    prepare(strings, objects);
+  }
+
+  // PREPARE
+  //
+  // Make room for the given number of entries of each kind, keeping the
+  // arrays this object already has if they are big enough. A released
+  // object is usable again afterwards.
+  void prepare(int strings, int objects) {
+    released = false;
+    final int capacity = tableSize(strings + objects);
+    if (strings + objects > 0 && (keys == null || keys.length < capacity)) {
+      allocate(capacity);
+    }
+    if (strings > 0 && (stringSlots == null || stringSlots.length < strings)) {
+      stringSlots = new int[strings];
+    }
+    if (objects > 0 && (objectSlots == null || objectSlots.length < objects)) {
+      objectSlots = new int[objects];
+    }
+  }
+
+  // RELEASE
+  //
+  // Forget every entry and refuse to be used until prepared again.
+  void release() {
+    released = true;
+    if (keys != null) {
+      if (keys.length > MAX_RECYCLED_CAPACITY) {
+        keys = null;
+        values = null;
+        tags = null;
+        stringSlots = null;
+        objectSlots = null;
+      } else {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+      }
+    }
+    size = 0;
+    used = 0;
+    strings = 0;
+    objects = 0;
   }
 
   @Override
   public JSON getObject(String name) {
-    if(mem.get(name) instanceof JSON){
-      return (JSON)mem.get(name);
-    }
-    return null;
+    final int slot = find(name);
+    return slot >= 0 && tags[slot] == OBJECT ? (JSON) values[slot] : null;
   }
 
   @Override
   public JSON setObject(String name, JSON value) {
-    mem.put(name, value);
-    ++objCtr;
+    put(name, value, OBJECT);
     return this;
   }
 
   @Override
   public String getString(String name) {
-    if(mem.get(name) instanceof String){
-      return (String)mem.get(name);
-    }
-    return null;
+    final int slot = find(name);
+    return slot >= 0 && tags[slot] == STRING ? (String) values[slot] : null;
   }
 
   @Override
   public JSON setString(String name, String value) {
-    mem.put(name, value);
+    put(name, value, STRING);
+    return this;
+  }
+
+  // REMOVE
+  //
+  // Remove the value with the given name, of either kind, if there is one.
+  // This method will always return a reference to "this".
+  public MyJSON remove(String name) {
+    final int slot = find(name);
+    if (slot >= 0) {
+      keys[slot] = REMOVED;
+      values[slot] = null;
+      --size;
+    }
     return this;
   }
 
   @Override
   public void getObjects(Collection<String> names) {
-    for (HashMap.Entry<String, Object> it : mem.entrySet())
-    {
-      if(it.getValue() instanceof JSON){
-        names.add(it.getKey());
+    checkLive();
+    for (int i = 0; i < objects; ++i) {
+      final String key = keys[objectSlots[i]];
+      if (key != REMOVED) {
+        names.add(key);
       }
     }
   }
 
   @Override
   public void getStrings(Collection<String> names) {
-    for (HashMap.Entry<String, Object> it : mem.entrySet())
-    {
-      if(it.getValue() instanceof String){
-        names.add(it.getKey());
+    checkLive();
+    for (int i = 0; i < strings; ++i) {
+      final String key = keys[stringSlots[i]];
+      if (key != REMOVED) {
+        names.add(key);
+      }
+    }
+  }
+
+  // SIZE
+  //
+  // The number of entries, strings and objects together.
+  public int size() {
+    checkLive();
+    return size;
+  }
+
+  private int find(String name) {
+    checkLive();
+    if (keys == null) {
+      return -1;
+    }
+    final int mask = keys.length - 1;
+    for (int slot = slot(name, keys.length); ; slot = (slot + 1) & mask) {
+      final String key = keys[slot];
+      if (key == null) {
+        return -1;
+      }
+      if (key != REMOVED && (key == name || key.equals(name))) {
+        return slot;
+      }
+    }
+  }
+
+  private void put(String name, Object value, byte tag) {
+    checkLive();
+    if (keys == null) {
+      allocate(8);
+    }
+    final int mask = keys.length - 1;
+    int slot = slot(name, keys.length);
+    for (String key; (key = keys[slot]) != null; slot = (slot + 1) & mask) {
+      if (key != REMOVED && (key == name || key.equals(name))) {
+        if (tags[slot] != tag) {
+          // Rare: the name changes kind, so it moves to the other list.
+          unlist(slot, tags[slot]);
+          list(slot, tag);
+          tags[slot] = tag;
+        }
+        values[slot] = value;
+        return;
+      }
+    }
+    if ((used + 1) * 3 > keys.length * 2) {
+      rebuild();
+      put(name, value, tag);
+      return;
+    }
+    keys[slot] = name;
+    values[slot] = value;
+    tags[slot] = tag;
+    ++size;
+    ++used;
+    list(slot, tag);
+  }
+
+  private void checkLive() {
+    if (released) {
+      throw new IllegalStateException("This JSON object was released with its ParseContext.");
+    }
+  }
+
+  private void list(int slot, byte tag) {
+    if (tag == STRING) {
+      if (stringSlots == null) {
+        stringSlots = new int[4];
+      } else if (strings == stringSlots.length) {
+        stringSlots = Arrays.copyOf(stringSlots, strings * 2);
+      }
+      stringSlots[strings++] = slot;
+    } else {
+      if (objectSlots == null) {
+        objectSlots = new int[4];
+      } else if (objects == objectSlots.length) {
+        objectSlots = Arrays.copyOf(objectSlots, objects * 2);
       }
+      objectSlots[objects++] = slot;
     }
   }
 
-  public void setLen(int l){
-    objectLen = l;
+  private void unlist(int slot, byte tag) {
+    final int[] slots = tag == STRING ? stringSlots : objectSlots;
+    final int count = tag == STRING ? strings-- : objects--;
+    int i = 0;
+    while (slots[i] != slot) {
+      ++i;
+    }
+    System.arraycopy(slots, i + 1, slots, i, count - i - 1);
   }
 
-  public int getLen(){
-    return objectLen;
+  // Copy the live entries to a new table, keeping the order of both lists
+  // and dropping removed slots. The table doubles unless removals made
+  // enough room; either way it ends up at most two thirds full.
+  private void rebuild() {
+    final String[] oldKeys = keys;
+    final Object[] oldValues = values;
+    final byte[] oldTags = tags;
+    allocate((size + 1) * 3 > keys.length ? keys.length * 2 : keys.length);
+    final int mask = keys.length - 1;
+    strings = relocate(stringSlots, strings, oldKeys, oldValues, oldTags, mask);
+    objects = relocate(objectSlots, objects, oldKeys, oldValues, oldTags, mask);
+    used = size;
   }
 
-  public int getObjCtr(){
-    return objCtr;
+  // Move the listed entries and return how many of them were still live.
+  private int relocate(int[] slots, int count, String[] oldKeys, Object[] oldValues, byte[] oldTags,
+      int mask) {
+    int live = 0;
+    for (int i = 0; i < count; ++i) {
+      final String key = oldKeys[slots[i]];
+      if (key == REMOVED) {
+        continue;
+      }
+      int slot = slot(key, keys.length);
+      while (keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      values[slot] = oldValues[slots[i]];
+      tags[slot] = oldTags[slots[i]];
+      slots[live++] = slot;
+    }
+    return live;
+  }
+
+  private void allocate(int capacity) {
+    keys = new String[capacity];
+    values = new Object[capacity];
+    tags = new byte[capacity];
+  }
+
+  // The smallest power of two that keeps the table at most two thirds full.
+  private static int tableSize(int entries) {
+    int capacity = 2;
+    while (entries * 3 > capacity * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
   }
 
-  public HashMap<String, Object> getMem(){
-    return mem;
+  // Where the probe for the name starts in a table of the given (power of
+  // two) capacity. String caches its hash code, but the codes of similar
+  // names are close together, which makes long runs of full slots; the
+  // top bits of the hash times the golden ratio spread them out.
+  private static int slot(String name, int capacity) {
+    return (name.hashCode() * 0x9e3779b9) >>> (Integer.numberOfLeadingZeros(capacity) + 1);
   }
 }
@@ -0,0 +1,57 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// The default factory: MyJSON objects and MyJSONParser parsers. Parsers
+// from one factory share its key table, if it has one, and its limits.
+final class MyJSONFactory implements JSONFactory {
+
+  private final KeyTable keys;
+  private final JSONLimits limits;
+
+  public MyJSONFactory() {
+    this(null, JSONLimits.NONE);
+  }
+
+  public MyJSONFactory(KeyTable keys) {
+    this(keys, JSONLimits.NONE);
+  }
+
+  public MyJSONFactory(KeyTable keys, JSONLimits limits) {
+    this.keys = keys;
+    this.limits = limits;
+  }
+
+  // KEYS
+  //
+  // The key table of this factory's parsers, or null if keys aren't shared.
+  public KeyTable keys() {
+    return keys;
+  }
+
+  public JSONLimits limits() {
+    return limits;
+  }
+
+  @Override
+  public JSON object() {
+    return new MyJSON();
+  }
+
+  @Override
+  public JSONParser parser() {
+    return new MyJSONParser(keys, limits);
+  }
+}
@@ -15,111 +15,137 @@
 package com.google.codeu.codingchallenge;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 final class MyJSONParser implements JSONParser {
 
+  private final KeyTable keys;
+  private final JSONLimits limits;
+
+  public MyJSONParser() {
+    this(null, JSONLimits.NONE);
+  }
+
+  // Share equal keys through the table, or not at all if it is null.
+  public MyJSONParser(KeyTable keys) {
+    this(keys, JSONLimits.NONE);
+  }
+
+  // Also reject documents that cross the limits.
+  public MyJSONParser(KeyTable keys, JSONLimits limits) {
+    this.keys = keys;
+    this.limits = limits;
+  }
+
   @Override
   public JSON parse(String in) throws IOException {
-    boolean completed = true;
-    boolean passedColon = false;
-    String key = "";
-    MyJSON map = new MyJSON();
-
-    String beginning = clear(in,'"', 0);
-    if(beginning != null && beginning.charAt(0) != '{'){
-      throw new IOException("Illegal beginning of schema.");
+    final TreeBuilder builder = new TreeBuilder(keys, null);
+    builder.reset(in);
+    new JSONScanner(in, builder, limits).scan();
+    return builder.root();
+  }
+
+  // Builds the MyJSON tree from the scanner's events. The entries of each
+  // open object are collected until it closes, so that its table can be
+  // sized for exactly the keys it has. With a ParseContext the objects come
+  // from its pool, and the one builder is reset for every parse.
+  static final class TreeBuilder implements JSONHandler {
+
+    private final KeyTable keys;
+    private final ParseContext context;
+    private final JSONScanner.Decoder decoder = new JSONScanner.Decoder();
+    // Names and values of all open objects, one after another; where each
+    // open object's entries start, and how many of them are strings.
+    private Object[] entries = new Object[32];
+    private int size;
+    private int[] starts = new int[8];
+    private int[] strings = new int[8];
+    private int depth;
+    private String in;
+    private MyJSON root;
+    private String key;
+
+    TreeBuilder(KeyTable keys, ParseContext context) {
+      this.keys = keys;
+      this.context = context;
     }
 
-    int endStr = in.length();
-    for(int i = 0; i < endStr; ++i){
-      char token = in.charAt(i);
-      if(token == '"'){
-        int end = in.indexOf(token, i + 1);
-        if(completed){
-          key = in.substring(i + 1, end);
-          if(!validEscapes(key)){
-            throw new IOException("Illegal escape character in key.");
-          }
-          completed = false;
-        }
-        else{
-          String val = in.substring(i + 1, end);
-          if(!validEscapes(val)){
-            throw new IOException("Illegal escape character in value.");
-          }
-          map.setString(key, val);
-          passedColon = false;
-          completed = true;
-        }
-        i = end;
+    // Start on a new input, forgetting whatever a failed parse left behind.
+    void reset(String in) {
+      Arrays.fill(entries, 0, size, null);
+      size = 0;
+      depth = 0;
+      this.in = in;
+      root = null;
+      key = null;
+    }
+
+    MyJSON root() {
+      return root;
+    }
+
+    @Override
+    public void startObject(int position) {
+      if (depth > 0) {
+        add(key);  // the value follows when it closes
       }
-      else if(token == '{'){
-        if(!completed){
-          map.setObject(key, parse(in.substring(i)));
-          passedColon = false;
-          completed = true;
-          i += ((MyJSON)map.getObject(key)).getLen();
-        }
-        if(i != 0 && key.equals("") && !passedColon){
-          throw new IOException("Missing Key.");
-        }
-      } // there has to be a better way to take care of exceptions :(
-      else if(token == '}' && completed && !passedColon){
-        if(in.charAt(i - 1) == ' ' || in.charAt(i - 1) == '"' || in.charAt(i - 1) == '{'
-                || (in.charAt(i - 1) == '}' && map.getObjCtr() != 0 )){
-
-          if(in.indexOf('"', i) > 0){
-            String tail = in.substring(i + 1, in.indexOf('"', i)).trim();
-            if(tail.length() != 1 || !tail.contains(",")){
-              throw new IOException("Invalid character after given object.");
-            }
-          }
-          else{
-            String tail = in.substring(i + 1).replaceAll("\\s","");
-            if(tail.length() == 1 && !tail.equals("}")){
-              throw new IOException("Invalid ending of JSON-Lite object.");
-            }
-          }
-          map.setLen(i);
-          return map;
-        }
-        else{
-          throw new IOException("Illegal character after object value.");
-        }
+      if (depth == starts.length) {
+        starts = Arrays.copyOf(starts, depth * 2);
+        strings = Arrays.copyOf(strings, depth * 2);
       }
-      else if(token == ':'){
-        if(passedColon){
-          throw new IOException("Duplicate colon before given value.");
-        }
-        else passedColon = true;
+      starts[depth] = size;
+      strings[depth] = 0;
+      ++depth;
+    }
+
+    @Override
+    public void key(int start, int end, boolean escaped) {
+      if (keys == null) {
+        key = decoder.decode(in, start, end, escaped);
+      } else if (escaped) {
+        key = keys.intern(decoder.decode(in, start, end, true));
+      } else {
+        key = keys.intern(in, start, end);
       }
-      else if(completed){
-        if(passedColon && token != ',' && token != ' ' && token != '}'){
-          throw new IOException("Invalid character after given key.");
+    }
+
+    @Override
+    public void string(int start, int end, boolean escaped) {
+      add(key);
+      add(decoder.decode(in, start, end, escaped));
+      ++strings[depth - 1];
+    }
+
+    @Override
+    public void endObject(int position) {
+      --depth;
+      final int start = starts[depth];
+      final int count = (size - start) / 2;
+      final MyJSON object = context == null
+          ? new MyJSON(strings[depth], count - strings[depth])
+          : context.object(strings[depth], count - strings[depth]);
+      for (int i = start; i < size; i += 2) {
+        final Object value = entries[i + 1];
+        if (value instanceof String) {
+          object.setString((String) entries[i], (String) value);
+        } else {
+          object.setObject((String) entries[i], (JSON) value);
         }
       }
-      else if(token != ' '){
-        throw new IOException("Invalid character after given key.");
+      Arrays.fill(entries, start, size, null);
+      size = start;
+      if (depth == 0) {
+        root = object;
+      } else {
+        add(object);
       }
     }
-    if(in.charAt(endStr - 1) != '}'){
-      throw new IOException("Incomplete schema.");
-    }
-    return map;
-  }
-
-  private String clear(String in, char c, int from){
-    if(in.indexOf(c, from) == -1) return null;
-    else return in.substring(from,in.indexOf(c)).replaceAll("\\s+","");
-  }
 
-  private boolean validEscapes(String s){
-    for(int i = 0, end = s.length() - 1; i < end; ++i){
-      if(s.charAt(i) == '\\' && s.charAt(i + 1) != 't'
-              && s.charAt(i + 1) != 'n'){
-        return false;
+    private void add(Object entry) {
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, size * 2);
       }
+      entries[size++] = entry;
     }
-    return true;
   }
 }
@@ -0,0 +1,108 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+// Everything a parse needs, kept for the next one: the scanner's decode
+// buffer, the tree builder's scratch arrays, a key table and a pool of
+// MyJSON objects. Parse any number of documents, then release() to hand
+// every object of their trees back to the pool; once the pool has grown to
+// fit the usual document, parsing allocates little more than the string
+// values themselves.
+//
+// A context is for one thread at a time, e.g. one per request or one per
+// worker thread. Trees must not be used after release(): their objects
+// throw IllegalStateException until the pool reuses them, and after that
+// they silently belong to a newer tree. A checked context never reuses
+// released objects, so every use after release() throws; use it in tests.
+final class ParseContext {
+
+  private final JSONLimits limits;
+  private final boolean checked;
+  private final MyJSONParser.TreeBuilder builder;
+
+  private final ArrayList<MyJSON> free = new ArrayList<>();
+  private final ArrayList<MyJSON> used = new ArrayList<>();
+
+  public ParseContext() {
+    this(new KeyTable(1024), JSONLimits.NONE, false);
+  }
+
+  public ParseContext(KeyTable keys, JSONLimits limits, boolean checked) {
+    this.limits = limits;
+    this.checked = checked;
+    this.builder = new MyJSONParser.TreeBuilder(keys, this);
+  }
+
+  // PARSE
+  //
+  // Parse like MyJSONParser. The tree stays valid until the next release().
+  // The objects of a failed parse go straight back to the pool.
+  public JSON parse(String in) throws IOException {
+    final int mark = used.size();
+    builder.reset(in);
+    try {
+      new JSONScanner(in, builder, limits).scan();
+    } catch (IOException ex) {
+      recycle(mark);
+      builder.reset(null);
+      throw ex;
+    }
+    final MyJSON root = builder.root();
+    builder.reset(null);
+    return root;
+  }
+
+  // RELEASE
+  //
+  // Give back every object parsed since the last release.
+  public void release() {
+    recycle(0);
+  }
+
+  // The number of objects waiting in the pool.
+  public int pooled() {
+    return free.size();
+  }
+
+  // The number of objects in trees that haven't been released.
+  public int live() {
+    return used.size();
+  }
+
+  MyJSON object(int strings, int objects) {
+    final MyJSON object;
+    if (free.isEmpty()) {
+      object = new MyJSON(strings, objects);
+    } else {
+      object = free.remove(free.size() - 1);
+      object.prepare(strings, objects);
+    }
+    used.add(object);
+    return object;
+  }
+
+  private void recycle(int from) {
+    for (int i = used.size() - 1; i >= from; --i) {
+      final MyJSON object = used.remove(i);
+      object.release();
+      if (!checked) {
+        free.add(object);
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+// Where InstrumentedJSONParser reports what it sees. ParseStats keeps
+// totals and histograms in memory; implement this to feed another metrics
+// system instead. Calls can come from many threads at once.
+interface ParseMetrics {
+
+  // ENABLED
+  //
+  // Whether to measure at all. It is asked once per parse, and nothing else
+  // is done when it says no.
+  boolean enabled();
+
+  // PARSED
+  //
+  // A parse of the given number of characters succeeded.
+  void parsed(int chars);
+
+  // FAILED
+  //
+  // A parse failed with an IOException. The reason is its message without
+  // the position, so that the same mistake always gives the same reason.
+  void failed(int chars, String reason);
+
+  // TIMED
+  //
+  // One of the sampled parses, failed or not, took the given time.
+  void timed(long nanos);
+
+  // MEASURED
+  //
+  // The shape of one sampled tree: how many objects and keys it has, how
+  // deeply it nests (a lone object is 1) and roughly how many bytes of
+  // heap it takes.
+  void measured(int objects, int keys, int depth, long bytes);
+}
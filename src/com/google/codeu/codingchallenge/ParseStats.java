@@ -0,0 +1,323 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Totals and a latency histogram for everything reported to it, kept with
+// atomic counters so that any number of parsers can share one. Register it
+// with register() to read it over JMX; reading never blocks the parsers.
+final class ParseStats implements ParseMetrics, ParseStatsMBean {
+
+  // Parse times in nanoseconds, in buckets a quarter of a power of two wide,
+  // so any percentile is within 25% of the truth.
+  static final class Histogram {
+
+    private static final int SUB_BUCKETS = 4;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * 62);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+      counts.incrementAndGet(bucket(Math.max(value, 0)));
+      count.incrementAndGet();
+      total.addAndGet(value);
+      raise(max, value);
+    }
+
+    public long count() {
+      return count.get();
+    }
+
+    public long mean() {
+      final long n = count.get();
+      return n == 0 ? 0 : total.get() / n;
+    }
+
+    public long max() {
+      return max.get();
+    }
+
+    // PERCENTILE
+    //
+    // The largest value in the bucket that holds the given fraction (0 to
+    // 1) of the recorded values, or 0 if there are none.
+    public long percentile(double fraction) {
+      final long n = count.get();
+      if (n == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(fraction * n));
+      long seen = 0;
+      for (int i = 0; i < counts.length(); ++i) {
+        seen += counts.get(i);
+        if (seen >= rank) {
+          return Math.min(upperBound(i), max.get());
+        }
+      }
+      return max.get();  // counts moved on while we were reading them
+    }
+
+    void reset() {
+      for (int i = 0; i < counts.length(); ++i) {
+        counts.set(i, 0);
+      }
+      count.set(0);
+      total.set(0);
+      max.set(0);
+    }
+
+    private static int bucket(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      final int exponent = 63 - Long.numberOfLeadingZeros(value);
+      final int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+      return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      final int exponent = bucket / SUB_BUCKETS + 1;
+      final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+      return lower + (1L << (exponent - 2)) - 1;
+    }
+  }
+
+  // Failures past this many distinct reasons are counted under
+  // OTHER_REASONS, since a message can quote the input and so the reasons
+  // need not repeat.
+  static final int MAX_REASONS = 64;
+  static final String OTHER_REASONS = "(other reasons)";
+
+  private volatile boolean enabled = true;
+
+  private final AtomicLong parses = new AtomicLong();
+  private final Histogram latency = new Histogram();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong chars = new AtomicLong();
+  private final ConcurrentMap<String, AtomicLong> reasons = new ConcurrentHashMap<>();
+  private final AtomicLong otherReasons = new AtomicLong();
+
+  private final AtomicLong trees = new AtomicLong();
+  private final AtomicLong objects = new AtomicLong();
+  private final AtomicLong keys = new AtomicLong();
+  private final AtomicLong maxDepth = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+
+  @Override
+  public boolean enabled() {
+    return enabled;
+  }
+
+  @Override
+  public void parsed(int chars) {
+    parses.incrementAndGet();
+    this.chars.addAndGet(chars);
+  }
+
+  @Override
+  public void failed(int chars, String reason) {
+    parsed(chars);
+    failures.incrementAndGet();
+    // The position is dropped here too, so that a caller passing a whole
+    // message still gets one reason per mistake.
+    final String key = InstrumentedJSONParser.withoutPosition(reason);
+    AtomicLong count = reasons.get(key);
+    if (count == null) {
+      if (reasons.size() >= MAX_REASONS) {
+        otherReasons.incrementAndGet();
+        return;
+      }
+      final AtomicLong added = new AtomicLong();
+      count = reasons.putIfAbsent(key, added);
+      if (count == null) {
+        count = added;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  @Override
+  public void timed(long nanos) {
+    latency.record(nanos);
+  }
+
+  @Override
+  public void measured(int objects, int keys, int depth, long bytes) {
+    trees.incrementAndGet();
+    this.objects.addAndGet(objects);
+    this.keys.addAndGet(keys);
+    this.bytes.addAndGet(bytes);
+    raise(maxDepth, depth);
+  }
+
+  // LATENCY
+  //
+  // The times of the sampled parses, failed ones included.
+  public Histogram latency() {
+    return latency;
+  }
+
+  // REGISTER
+  //
+  // Make these statistics visible to JMX in the platform MBean server,
+  // under com.google.codeu.codingchallenge:type=ParseStats,name=<name>.
+  public ObjectName register(String name) throws JMException {
+    final ObjectName objectName = new ObjectName(
+        "com.google.codeu.codingchallenge:type=ParseStats,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  public void unregister(ObjectName name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public long getParses() {
+    return parses.get();
+  }
+
+  @Override
+  public long getFailures() {
+    return failures.get();
+  }
+
+  @Override
+  public long getChars() {
+    return chars.get();
+  }
+
+  @Override
+  public long getTimedParses() {
+    return latency.count();
+  }
+
+  @Override
+  public long getMeanLatencyNanos() {
+    return latency.mean();
+  }
+
+  @Override
+  public long getMedianLatencyNanos() {
+    return latency.percentile(0.5);
+  }
+
+  @Override
+  public long getP99LatencyNanos() {
+    return latency.percentile(0.99);
+  }
+
+  @Override
+  public long getMaxLatencyNanos() {
+    return latency.max();
+  }
+
+  @Override
+  public long getMeasuredTrees() {
+    return trees.get();
+  }
+
+  @Override
+  public double getMeanObjects() {
+    return mean(objects);
+  }
+
+  @Override
+  public double getMeanKeys() {
+    return mean(keys);
+  }
+
+  @Override
+  public long getMaxDepth() {
+    return maxDepth.get();
+  }
+
+  @Override
+  public double getMeanEstimatedBytes() {
+    return mean(bytes);
+  }
+
+  @Override
+  public Map<String, Long> getFailuresByReason() {
+    final TreeMap<String, Long> counts = new TreeMap<>();
+    for (final Map.Entry<String, AtomicLong> entry : reasons.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    if (otherReasons.get() > 0) {
+      counts.put(OTHER_REASONS, otherReasons.get());
+    }
+    return counts;
+  }
+
+  // RESET
+  //
+  // Start counting from zero. Parses that finish while this runs may be
+  // counted in part.
+  @Override
+  public void reset() {
+    parses.set(0);
+    latency.reset();
+    failures.set(0);
+    chars.set(0);
+    reasons.clear();
+    otherReasons.set(0);
+    trees.set(0);
+    objects.set(0);
+    keys.set(0);
+    maxDepth.set(0);
+    bytes.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ParseStats(%d parses, %d failures, median %d ns, p99 %d ns, max %d ns)",
+        getParses(), getFailures(), getMedianLatencyNanos(), getP99LatencyNanos(), getMaxLatencyNanos());
+  }
+
+  private double mean(AtomicLong total) {
+    final long n = trees.get();
+    return n == 0 ? 0 : (double) total.get() / n;
+  }
+
+  private static void raise(AtomicLong max, long value) {
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+    }
+  }
+}
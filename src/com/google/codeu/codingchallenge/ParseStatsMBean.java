@@ -0,0 +1,56 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.Map;
+
+// The management interface of ParseStats, as it shows up in JMX consoles.
+// JMX only introspects public interfaces, which is why this one is public.
+public interface ParseStatsMBean {
+
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  long getParses();
+
+  long getFailures();
+
+  long getChars();
+
+  long getTimedParses();
+
+  long getMeanLatencyNanos();
+
+  long getMedianLatencyNanos();
+
+  long getP99LatencyNanos();
+
+  long getMaxLatencyNanos();
+
+  long getMeasuredTrees();
+
+  double getMeanObjects();
+
+  double getMeanKeys();
+
+  long getMaxDepth();
+
+  double getMeanEstimatedBytes();
+
+  Map<String, Long> getFailuresByReason();
+
+  void reset();
+}
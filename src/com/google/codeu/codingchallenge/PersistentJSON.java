@@ -0,0 +1,430 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// A JSON object that never changes. Unlike the other objects, setString and
+// setObject do NOT return "this": they return a new version of the object
+// with the change, and the old version stays exactly as it was. Both
+// versions share everything the change didn't touch, so a change costs
+// O(log n) instead of a copy of the whole object, and any version can be
+// read by any number of threads without locking.
+//
+// The entries live in a hash array mapped trie: each node covers five bits
+// of the key's hash and keeps only the slots that are in use, so a change
+// copies one short array per level. Keys whose hashes are equal share a
+// collision node.
+//
+// Nested objects are shared as they are, so a tree is only immutable all
+// the way down if its children are PersistentJSON too; copyOf converts a
+// whole tree. To change a nested value, set a changed copy of the child:
+//
+//   root.setObject("name", root.getObject("name").setString("last", "roe"))
+//
+// A tree made by copyOf keeps the hash of each subtree for JSONDiff. The
+// versions made by changes don't: keeping it up to date would double the
+// cost of a change, and JSONDiff compares versions through what they share
+// instead.
+final class PersistentJSON implements HashedJSON {
+
+  public static final PersistentJSON EMPTY = new PersistentJSON(BitmapNode.EMPTY, 0, true);
+
+  private final Node root;
+  private final long hash;
+  private final boolean hashed;
+
+  private PersistentJSON(Node root, long hash, boolean hashed) {
+    this.root = root;
+    this.hash = hash;
+    this.hashed = hashed;
+  }
+
+  // COPY OF
+  //
+  // Deep copy any JSON tree into PersistentJSON objects. Nested objects are
+  // walked with an explicit stack, as ImmutableJSON.copyOf does, and each
+  // object is built once its children are.
+  public static PersistentJSON copyOf(JSON source) {
+    if (source instanceof PersistentJSON) {
+      return (PersistentJSON) source;
+    }
+    final ArrayList<Copy> open = new ArrayList<>();
+    open.add(new Copy(source));
+    while (true) {
+      final Copy top = open.get(open.size() - 1);
+      if (top.next < top.children.size()) {
+        final JSON child = top.source.getObject(top.children.get(top.next));
+        if (child instanceof PersistentJSON) {
+          top.addChild((PersistentJSON) child);
+        } else {
+          open.add(new Copy(child));
+        }
+        continue;
+      }
+      final PersistentJSON done = new PersistentJSON(top.root, top.hash, top.hashed);
+      open.remove(open.size() - 1);
+      if (open.isEmpty()) {
+        return done;
+      }
+      open.get(open.size() - 1).addChild(done);
+    }
+  }
+
+  // One object being copied: its strings are in, its children are added in
+  // order as they are finished.
+  private static final class Copy {
+
+    final JSON source;
+    final ArrayList<String> children = new ArrayList<>();
+    int next;
+    Node root = BitmapNode.EMPTY;
+    long hash;
+    boolean hashed = true;
+
+    Copy(JSON source) {
+      this.source = source;
+      final ArrayList<String> names = new ArrayList<>();
+      source.getStrings(names);
+      for (final String name : names) {
+        final String value = source.getString(name);
+        root = root.put(name, name.hashCode(), 0, value);
+        hash += JSONDiff.entryHash(name, value);
+      }
+      source.getObjects(children);
+    }
+
+    // Add the finished copy of the next child.
+    void addChild(PersistentJSON value) {
+      final String name = children.get(next++);
+      root = root.put(name, name.hashCode(), 0, value);
+      hash += JSONDiff.entryHash(name, value);
+      hashed &= value.hashed;
+    }
+  }
+
+  // Only for trees made by copyOf, all the way down.
+  @Override
+  public boolean hashed() {
+    return hashed;
+  }
+
+  @Override
+  public long subtreeHash() {
+    return hash;
+  }
+
+  @Override
+  public JSON getObject(String name) {
+    final Object value = root.get(name, name.hashCode(), 0);
+    return value instanceof JSON ? (JSON) value : null;
+  }
+
+  // Returns a new version of this object; this one is unchanged.
+  @Override
+  public PersistentJSON setObject(String name, JSON value) {
+    return with(name, value);
+  }
+
+  @Override
+  public String getString(String name) {
+    final Object value = root.get(name, name.hashCode(), 0);
+    return value instanceof String ? (String) value : null;
+  }
+
+  // Returns a new version of this object; this one is unchanged.
+  @Override
+  public PersistentJSON setString(String name, String value) {
+    return with(name, value);
+  }
+
+  @Override
+  public void getObjects(Collection<String> names) {
+    root.names(names, true);
+  }
+
+  @Override
+  public void getStrings(Collection<String> names) {
+    root.names(names, false);
+  }
+
+  // CHANGES
+  //
+  // Add the name, the value in this version (or null) and the value in the
+  // other version (or null) of every entry that differs between the two,
+  // three items per entry. Parts of the trie the versions share are
+  // skipped whole, so for versions derived from one another this costs
+  // O(changes * log n) rather than a walk of both. Nested objects count as
+  // different unless they are the same instance.
+  void changes(PersistentJSON other, List<Object> out) {
+    changes(root, other.root, out);
+  }
+
+  private PersistentJSON with(String name, Object value) {
+    final Node changed = root.put(name, name.hashCode(), 0, value);
+    return changed == root ? this : new PersistentJSON(changed, 0, false);
+  }
+
+  private static void changes(Node a, Node b, List<Object> out) {
+    if (a == b) {
+      return;
+    }
+    if (!(a instanceof BitmapNode && b instanceof BitmapNode)) {
+      final ArrayList<Object> left = new ArrayList<>();
+      final ArrayList<Object> right = new ArrayList<>();
+      a.entries(left);
+      b.entries(right);
+      changes(left, right, out);
+      return;
+    }
+    final BitmapNode x = (BitmapNode) a;
+    final BitmapNode y = (BitmapNode) b;
+    for (int bits = x.bitmap | y.bitmap; bits != 0; bits &= bits - 1) {
+      final int bit = bits & -bits;
+      final int i = 2 * Integer.bitCount(x.bitmap & (bit - 1));
+      final int j = 2 * Integer.bitCount(y.bitmap & (bit - 1));
+      final boolean inX = (x.bitmap & bit) != 0;
+      final boolean inY = (y.bitmap & bit) != 0;
+      if (inX && inY && x.slots[i] == y.slots[j] && x.slots[i + 1] == y.slots[j + 1]) {
+        continue;
+      }
+      if (inX && inY && x.slots[i] == null && y.slots[j] == null) {
+        changes((Node) x.slots[i + 1], (Node) y.slots[j + 1], out);
+        continue;
+      }
+      // The slot holds an entry on one side and a node on the other, or two
+      // different keys: compare what is under it on each side.
+      final ArrayList<Object> left = new ArrayList<>();
+      final ArrayList<Object> right = new ArrayList<>();
+      if (inX) {
+        BitmapNode.entries(x.slots[i], x.slots[i + 1], left);
+      }
+      if (inY) {
+        BitmapNode.entries(y.slots[j], y.slots[j + 1], right);
+      }
+      changes(left, right, out);
+    }
+  }
+
+  // Compare two short lists of key, value pairs.
+  private static void changes(List<Object> left, List<Object> right, List<Object> out) {
+    for (int at = 0; at < left.size(); at += 2) {
+      final Object key = left.get(at);
+      final Object value = left.get(at + 1);
+      final int other = indexOfKey(right, key);
+      final Object otherValue = other < 0 ? null : right.get(other + 1);
+      if (!same(value, otherValue)) {
+        out.add(key);
+        out.add(value);
+        out.add(otherValue);
+      }
+    }
+    for (int at = 0; at < right.size(); at += 2) {
+      if (indexOfKey(left, right.get(at)) < 0) {
+        out.add(right.get(at));
+        out.add(null);
+        out.add(right.get(at + 1));
+      }
+    }
+  }
+
+  private static int indexOfKey(List<Object> pairs, Object key) {
+    for (int at = 0; at < pairs.size(); at += 2) {
+      if (key.equals(pairs.get(at))) {
+        return at;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean same(Object a, Object b) {
+    return a == b || (a instanceof String && a.equals(b));
+  }
+
+  private abstract static class Node {
+
+    // The value under the key, or null if there is none.
+    abstract Object get(String key, int hash, int shift);
+
+    // This node with the key set to the value: this node itself if the key
+    // already has exactly that value, otherwise a new node.
+    abstract Node put(String key, int hash, int shift, Object value);
+
+    // Add the keys of all object values, or of all string values.
+    abstract void names(Collection<String> names, boolean objects);
+
+    // Add every key and its value.
+    abstract void entries(List<Object> out);
+  }
+
+  // Up to 32 slots, one per value of the five hash bits at this level, of
+  // which only the used ones are stored, in order. Each slot is a key and
+  // its value, or a null key and the node for all keys sharing the slot.
+  private static final class BitmapNode extends Node {
+
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] slots;
+
+    BitmapNode(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    @Override
+    Object get(String key, int hash, int shift) {
+      final int bit = 1 << ((hash >>> shift) & 31);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      final int at = 2 * Integer.bitCount(bitmap & (bit - 1));
+      final Object slotKey = slots[at];
+      if (slotKey == null) {
+        return ((Node) slots[at + 1]).get(key, hash, shift + 5);
+      }
+      return key.equals(slotKey) ? slots[at + 1] : null;
+    }
+
+    @Override
+    Node put(String key, int hash, int shift, Object value) {
+      final int bit = 1 << ((hash >>> shift) & 31);
+      final int at = 2 * Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) == 0) {
+        final Object[] grown = new Object[slots.length + 2];
+        System.arraycopy(slots, 0, grown, 0, at);
+        grown[at] = key;
+        grown[at + 1] = value;
+        System.arraycopy(slots, at, grown, at + 2, slots.length - at);
+        return new BitmapNode(bitmap | bit, grown);
+      }
+      final Object slotKey = slots[at];
+      final Object slotValue = slots[at + 1];
+      if (slotKey == null) {
+        final Node child = ((Node) slotValue).put(key, hash, shift + 5, value);
+        return child == slotValue ? this : replace(at, null, child);
+      }
+      if (key.equals(slotKey)) {
+        return slotValue == value ? this : replace(at, slotKey, value);
+      }
+      // Two keys in one slot: push both down a level.
+      final String other = (String) slotKey;
+      final int otherHash = other.hashCode();
+      final Node child = otherHash == hash
+          ? new CollisionNode(hash, new Object[] { other, slotValue, key, value })
+          : EMPTY.put(other, otherHash, shift + 5, slotValue).put(key, hash, shift + 5, value);
+      return replace(at, null, child);
+    }
+
+    @Override
+    void names(Collection<String> names, boolean objects) {
+      for (int at = 0; at < slots.length; at += 2) {
+        if (slots[at] == null) {
+          ((Node) slots[at + 1]).names(names, objects);
+        } else if (objects ? slots[at + 1] instanceof JSON : slots[at + 1] instanceof String) {
+          names.add((String) slots[at]);
+        }
+      }
+    }
+
+    @Override
+    void entries(List<Object> out) {
+      for (int at = 0; at < slots.length; at += 2) {
+        entries(slots[at], slots[at + 1], out);
+      }
+    }
+
+    // Add the entries of one slot.
+    static void entries(Object key, Object value, List<Object> out) {
+      if (key == null) {
+        ((Node) value).entries(out);
+      } else {
+        out.add(key);
+        out.add(value);
+      }
+    }
+
+    private BitmapNode replace(int at, Object key, Object value) {
+      final Object[] copy = slots.clone();
+      copy[at] = key;
+      copy[at + 1] = value;
+      return new BitmapNode(bitmap, copy);
+    }
+  }
+
+  // Keys whose hashes are all equal, as key, value pairs.
+  private static final class CollisionNode extends Node {
+
+    private final int hash;
+    private final Object[] pairs;
+
+    CollisionNode(int hash, Object[] pairs) {
+      this.hash = hash;
+      this.pairs = pairs;
+    }
+
+    @Override
+    Object get(String key, int hash, int shift) {
+      for (int at = 0; at < pairs.length; at += 2) {
+        if (key.equals(pairs[at])) {
+          return pairs[at + 1];
+        }
+      }
+      return null;
+    }
+
+    @Override
+    Node put(String key, int hash, int shift, Object value) {
+      if (hash != this.hash) {
+        // Hang this node below a bitmap node and add the key next to it.
+        final Node parent = new BitmapNode(1 << ((this.hash >>> shift) & 31), new Object[] { null, this });
+        return parent.put(key, hash, shift, value);
+      }
+      for (int at = 0; at < pairs.length; at += 2) {
+        if (key.equals(pairs[at])) {
+          if (pairs[at + 1] == value) {
+            return this;
+          }
+          final Object[] copy = pairs.clone();
+          copy[at + 1] = value;
+          return new CollisionNode(hash, copy);
+        }
+      }
+      final Object[] grown = new Object[pairs.length + 2];
+      System.arraycopy(pairs, 0, grown, 0, pairs.length);
+      grown[pairs.length] = key;
+      grown[pairs.length + 1] = value;
+      return new CollisionNode(hash, grown);
+    }
+
+    @Override
+    void names(Collection<String> names, boolean objects) {
+      for (int at = 0; at < pairs.length; at += 2) {
+        if (objects ? pairs[at + 1] instanceof JSON : pairs[at + 1] instanceof String) {
+          names.add((String) pairs[at]);
+        }
+      }
+    }
+
+    @Override
+    void entries(List<Object> out) {
+      for (final Object item : pairs) {
+        out.add(item);
+      }
+    }
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Parses only the parts of a document that some paths select. The result
+// is a MyJSON tree holding the selected strings and objects (whole) and the
+// objects leading to them, so evaluating any of the paths against it gives
+// the same answer as against the full tree. Everything else is still
+// checked by the scanner but never decoded or built.
+final class ProjectingJSONParser implements JSONParser {
+
+  private final JSONPath[] paths;
+  // Bit p is set in ends[level] if path p ends at that level, and in
+  // continues[level] if it goes deeper.
+  private final long[] ends;
+  private final long[] continues;
+
+  public ProjectingJSONParser(JSONPath... paths) {
+    if (paths.length == 0 || paths.length > 64) {
+      throw new IllegalArgumentException("Projections take between 1 and 64 paths.");
+    }
+    this.paths = paths.clone();
+    int longest = 0;
+    for (final JSONPath path : paths) {
+      longest = Math.max(longest, path.length());
+    }
+    ends = new long[longest + 2];
+    continues = new long[longest + 2];
+    for (int p = 0; p < paths.length; ++p) {
+      ends[paths[p].length()] |= 1L << p;
+      for (int level = 0; level < paths[p].length(); ++level) {
+        continues[level] |= 1L << p;
+      }
+    }
+  }
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    final Projection projection = new Projection(in);
+    new JSONScanner(in, projection).scan();
+    return projection.root;
+  }
+
+  // Builds the projected tree. Each open object that is built remembers
+  // which paths are still alive in it; an object that no path can reach is
+  // skipped with just a depth count, and an object that a path selects is
+  // built whole.
+  private final class Projection implements JSONHandler {
+
+    private final String in;
+    private final JSONScanner.Decoder decoder = new JSONScanner.Decoder();
+    private final ArrayList<MyJSON> open = new ArrayList<>();
+    private long[] alive = new long[16];
+    // The level of the outermost object being built whole, if any.
+    private int wholeFrom = Integer.MAX_VALUE;
+    // How many skipped objects are open.
+    private int skipped;
+    private MyJSON root;
+
+    // The current key and the paths it continues.
+    private int keyStart;
+    private int keyEnd;
+    private boolean keyEscaped;
+    private long keyPaths;
+
+    Projection(String in) {
+      this.in = in;
+    }
+
+    @Override
+    public void startObject(int position) {
+      if (skipped > 0) {
+        ++skipped;
+        return;
+      }
+      if (open.isEmpty()) {
+        root = new MyJSON();
+        push(root, continues[0]);
+        return;
+      }
+      final int level = open.size();
+      if (level > wholeFrom || (keyPaths & ends[level]) != 0) {
+        final MyJSON child = attach();
+        push(child, 0);
+        wholeFrom = Math.min(wholeFrom, level);
+      } else if ((keyPaths & continues[level]) != 0) {
+        push(attach(), keyPaths & continues[level]);
+      } else {
+        skipped = 1;
+      }
+    }
+
+    @Override
+    public void key(int start, int end, boolean escaped) {
+      if (skipped > 0) {
+        return;
+      }
+      keyStart = start;
+      keyEnd = end;
+      keyEscaped = escaped;
+      final int level = open.size() - 1;
+      if (level >= wholeFrom) {
+        return;
+      }
+      keyPaths = 0;
+      for (long candidates = alive[level]; candidates != 0; candidates &= candidates - 1) {
+        final int p = Long.numberOfTrailingZeros(candidates);
+        if (paths[p].matches(level, in, start, end, escaped)) {
+          keyPaths |= 1L << p;
+        }
+      }
+    }
+
+    @Override
+    public void string(int start, int end, boolean escaped) {
+      if (skipped > 0) {
+        return;
+      }
+      final int level = open.size();
+      if (level > wholeFrom || (keyPaths & ends[level]) != 0) {
+        open.get(level - 1).setString(key(), decoder.decode(in, start, end, escaped));
+      }
+    }
+
+    @Override
+    public void endObject(int position) {
+      if (skipped > 0) {
+        --skipped;
+        return;
+      }
+      open.remove(open.size() - 1);
+      if (open.size() <= wholeFrom) {
+        wholeFrom = Integer.MAX_VALUE;
+      }
+    }
+
+    private MyJSON attach() {
+      final MyJSON child = new MyJSON();
+      open.get(open.size() - 1).setObject(key(), child);
+      return child;
+    }
+
+    private void push(MyJSON object, long paths) {
+      if (open.size() == alive.length) {
+        alive = Arrays.copyOf(alive, alive.length * 2);
+      }
+      alive[open.size()] = paths;
+      open.add(object);
+    }
+
+    private String key() {
+      return decoder.decode(in, keyStart, keyEnd, keyEscaped);
+    }
+  }
+}
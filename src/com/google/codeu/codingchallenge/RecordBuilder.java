@@ -0,0 +1,96 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.Arrays;
+
+// Lays out the records that LazyJSON and TapeJSON read: one int array for
+// the whole document, with a record per object made of its number of
+// entries followed by ENTRY ints per entry. Records are written when their
+// object closes, so children come before their parents and the root is
+// written last. Subclasses decide what the ints of a key and a string
+// value are; an object value is always the complement of its record
+// followed by a zero.
+abstract class RecordBuilder implements JSONHandler {
+
+  // Ints per entry: two or three for the key, two for the value.
+  static final int ENTRY = 5;
+
+  int[] records = new int[64];
+  int size;
+  int root;
+
+  // Entries of the currently open objects, one scratch array per depth.
+  private int[][] open = new int[8][];
+  private int[] counts = new int[8];
+  private int depth;
+
+  // Fill in entries[at] to entries[at + 2] for a key.
+  abstract void writeKey(int[] entries, int at, int start, int end, boolean escaped);
+
+  // Fill in entries[at + 3] and entries[at + 4] for a string value.
+  abstract void writeString(int[] entries, int at, int start, int end, boolean escaped);
+
+  @Override
+  public final void startObject(int position) {
+    if (depth == open.length) {
+      open = Arrays.copyOf(open, depth * 2);
+      counts = Arrays.copyOf(counts, depth * 2);
+    }
+    if (open[depth] == null) {
+      open[depth] = new int[ENTRY * 4];
+    }
+    counts[depth++] = 0;
+  }
+
+  @Override
+  public final void key(int start, int end, boolean escaped) {
+    final int d = depth - 1;
+    final int at = counts[d]++ * ENTRY;
+    if (open[d].length < at + ENTRY) {
+      open[d] = Arrays.copyOf(open[d], open[d].length * 2);
+    }
+    writeKey(open[d], at, start, end, escaped);
+  }
+
+  @Override
+  public final void string(int start, int end, boolean escaped) {
+    final int d = depth - 1;
+    writeString(open[d], (counts[d] - 1) * ENTRY, start, end, escaped);
+  }
+
+  @Override
+  public final void endObject(int position) {
+    final int d = --depth;
+    final int count = counts[d];
+    final int record = size;
+    final int length = 1 + count * ENTRY;
+    if (records.length < size + length) {
+      records = Arrays.copyOf(records, Math.max(records.length * 2, size + length));
+    }
+    records[size] = count;
+    System.arraycopy(open[d], 0, records, size + 1, count * ENTRY);
+    size += length;
+
+    if (d == 0) {
+      root = record;
+    } else {
+      // The parent's newest entry is the key this object belongs to.
+      final int at = (counts[d - 1] - 1) * ENTRY;
+      open[d - 1][at + 3] = ~record;
+      open[d - 1][at + 4] = 0;
+    }
+  }
+}
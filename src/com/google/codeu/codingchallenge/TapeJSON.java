@@ -0,0 +1,151 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A view of one object on a tape built by TapeJSONParser. A whole document
+// costs two arrays however many objects it has; a view is only a reference
+// to the tape and the offset of its record. Strings are created from the
+// tape each time they are read.
+final class TapeJSON extends CopyOnWriteJSON {
+
+  // Ints per entry on the tape: key hash, key offset, key length, value
+  // offset, value length. For object values the value offset is the
+  // complement of the child's record and the length is unused.
+  static final int ENTRY = RecordBuilder.ENTRY;
+
+  static final class Tape {
+
+    final int[] entries;
+    final char[] chars;
+
+    Tape(int[] entries, char[] chars) {
+      this.entries = entries;
+      this.chars = chars;
+    }
+  }
+
+  private final Tape tape;
+  private final int record;
+
+  private TapeJSON[] children;
+
+  TapeJSON(Tape tape, int record) {
+    this.tape = tape;
+    this.record = record;
+  }
+
+  @Override
+  JSON readObject(String name) {
+    final int entry = find(name);
+    return entry < 0 || !isObject(entry) ? null : child(entry);
+  }
+
+  @Override
+  String readString(String name) {
+    final int entry = find(name);
+    return entry < 0 || isObject(entry) ? null : text(base(entry) + 3);
+  }
+
+  @Override
+  void readObjects(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      if (isObject(it.getValue())) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  @Override
+  void readStrings(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      if (!isObject(it.getValue())) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  // Find the last entry with the given key, since later duplicates win.
+  private int find(String name) {
+    final int[] entries = tape.entries;
+    final char[] chars = tape.chars;
+    final int hash = name.hashCode();
+    final int length = name.length();
+    for (int entry = entries[record] - 1; entry >= 0; --entry) {
+      final int at = base(entry);
+      if (entries[at] != hash || entries[at + 2] != length) {
+        continue;
+      }
+      final int offset = entries[at + 1];
+      int i = 0;
+      while (i < length && chars[offset + i] == name.charAt(i)) {
+        ++i;
+      }
+      if (i == length) {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  // Every distinct key mapped to its last entry, in document order.
+  private Map<String, Integer> entries() {
+    final int count = tape.entries[record];
+    final Map<String, Integer> entries = new LinkedHashMap<>();
+    for (int entry = 0; entry < count; ++entry) {
+      entries.put(text(base(entry) + 1), entry);
+    }
+    return entries;
+  }
+
+  private boolean isObject(int entry) {
+    return tape.entries[base(entry) + 3] < 0;
+  }
+
+  private String text(int at) {
+    return new String(tape.chars, tape.entries[at], tape.entries[at + 1]);
+  }
+
+  // Children are remembered once handed out so that changes made through
+  // them stick.
+  private TapeJSON child(int entry) {
+    if (children == null) {
+      children = new TapeJSON[tape.entries[record]];
+    }
+    if (children[entry] == null) {
+      children[entry] = new TapeJSON(tape, ~tape.entries[base(entry) + 3]);
+    }
+    return children[entry];
+  }
+
+  private int base(int entry) {
+    return record + 1 + entry * ENTRY;
+  }
+
+  @Override
+  void copyTo(MyJSON copy) {
+    for (final Map.Entry<String, Integer> it : entries().entrySet()) {
+      final int entry = it.getValue();
+      if (isObject(entry)) {
+        copy.setObject(it.getKey(), child(entry));
+      } else {
+        copy.setString(it.getKey(), text(base(entry) + 3));
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Parses a document into a single TapeJSON.Tape: every decoded key and
+// value is appended to one char array, and every object becomes a record
+// of ints pointing into it, laid out by RecordBuilder. The input string is
+// not kept.
+final class TapeJSONParser implements JSONParser {
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    final TapeBuilder builder = new TapeBuilder(in);
+    new JSONScanner(in, builder).scan();
+    final TapeJSON.Tape tape = new TapeJSON.Tape(
+        Arrays.copyOf(builder.records, builder.size),
+        Arrays.copyOf(builder.chars, builder.length));
+    return new TapeJSON(tape, builder.root);
+  }
+
+  private static final class TapeBuilder extends RecordBuilder {
+
+    private final String in;
+    private final char[] chars;
+    private int length;
+
+    TapeBuilder(String in) {
+      this.in = in;
+      // Decoded text is never longer than the input.
+      this.chars = new char[in.length()];
+    }
+
+    @Override
+    void writeKey(int[] entries, int at, int start, int end, boolean escaped) {
+      final int offset = length;
+      append(start, end, escaped);
+      int hash = 0;
+      for (int i = offset; i < length; ++i) {
+        hash = 31 * hash + chars[i];
+      }
+      entries[at] = hash;
+      entries[at + 1] = offset;
+      entries[at + 2] = length - offset;
+    }
+
+    @Override
+    void writeString(int[] entries, int at, int start, int end, boolean escaped) {
+      final int offset = length;
+      append(start, end, escaped);
+      entries[at + 3] = offset;
+      entries[at + 4] = length - offset;
+    }
+
+    // Decode [start, end) of the input onto the end of the char store.
+    private void append(int start, int end, boolean escaped) {
+      if (!escaped) {
+        in.getChars(start, end, chars, length);
+        length += end - start;
+        return;
+      }
+      for (int i = start; i < end; ++i) {
+        char c = in.charAt(i);
+        if (c == '\\') {
+          c = in.charAt(++i);
+          c = c == 't' ? '\t' : c == 'n' ? '\n' : c;
+        }
+        chars[length++] = c;
+      }
+    }
+  }
+}
@@ -14,10 +14,27 @@
 
 package com.google.codeu.codingchallenge;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 final class TestMain {
 
@@ -116,7 +133,7 @@ final class TestMain {
       @Override
       public void run(JSONFactory factory) throws Exception {
         final JSONParser parser = factory.parser();
-        final JSON obj = parser.parse("{\"r\":{\"e\":{\"c\":{\"u\":{\"r\":{\"s\":{\"i\":{\"o\":{\"n\":{\"g\":{\"a\":{\"n\":{\"g\":\"functional programming <33333333333\"}}}}}}}}}}");
+        final JSON obj = parser.parse("{\"r\":{\"e\":{\"c\":{\"u\":{\"r\":{\"s\":{\"i\":{\"o\":{\"n\":{\"g\":{\"a\":{\"n\":{\"g\":\"functional programming <33333333333\"}}}}}}}}}}}}}");
         final JSON end = obj.getObject("r").getObject("e").getObject("c").getObject("u").getObject("r").getObject("s").getObject("i").getObject("o").getObject("n").getObject("g").getObject("a").getObject("n");
         Asserts.isEqual("functional programming <33333333333", end.getString("g"));
       }
@@ -167,7 +184,49 @@ final class TestMain {
         final JSONParser parser = factory.parser();
         final JSON obj = parser.parse("{ \"u\\th\\n\":\"first\", \"u\\th\\n\" : \"second\"}");
 
-        Asserts.isEqual("second", obj.getString("u\\th\\n"));
+        Asserts.isEqual("second", obj.getString("u\th\n"));
+      }
+    });
+
+    tests.add("Escaped Quotes And Backslashes", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser parser = factory.parser();
+        final JSON obj = parser.parse("{ \"say\":\"\\\"hi\\\" \\\\ }\", \"after\" : { \"x\" : \"y\" } }");
+
+        Asserts.isEqual("\"hi\" \\ }", obj.getString("say"));
+        Asserts.isEqual("y", obj.getObject("after").getString("x"));
+      }
+    });
+
+    tests.add("Wide Document Scales Linearly", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser parser = factory.parser();
+        final String small = Documents.wide(25000);
+        final String large = Documents.wide(200000);
+
+        final JSON obj = parser.parse(large);
+        Asserts.isEqual("value 199999", obj.getObject("key 199999").getString("inner"));
+
+        assertLinear(parser, small, large);
+      }
+    });
+
+    tests.add("Deep Document Scales Linearly", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser parser = factory.parser();
+        final String small = Documents.deep(25000);
+        final String large = Documents.deep(200000);
+
+        JSON obj = parser.parse(large);
+        for (int i = 0; i < 200000; ++i) {
+          obj = obj.getObject("k");
+        }
+        Asserts.isEqual("bottom", obj.getString("k"));
+
+        assertLinear(parser, small, large);
       }
     });
 
@@ -182,6 +241,1641 @@ final class TestMain {
       }
     });
 
+    tests.add("Reader Events", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        // A tiny buffer makes every token straddle a refill.
+        final JSONReader reader = new JSONReader(
+            new StringReader("{ \"a\\tb\":\"c\\\"d\", \"e\" : { } }"), 3);
+
+        Asserts.isEqual(JSONEvent.START_OBJECT, reader.next());
+        Asserts.isEqual(JSONEvent.KEY, reader.next());
+        Asserts.isEqual("a\tb", reader.getText());
+        Asserts.isEqual(JSONEvent.STRING, reader.next());
+        Asserts.isEqual("c\"d", reader.getText());
+        Asserts.isEqual(JSONEvent.KEY, reader.next());
+        Asserts.isEqual("e", reader.getText());
+        Asserts.isEqual(JSONEvent.START_OBJECT, reader.next());
+        Asserts.isEqual(2, reader.depth());
+        Asserts.isEqual(JSONEvent.END_OBJECT, reader.next());
+        Asserts.isEqual(JSONEvent.END_OBJECT, reader.next());
+        Asserts.isEqual(JSONEvent.END_DOCUMENT, reader.next());
+        Asserts.isEqual(JSONEvent.END_DOCUMENT, reader.next());
+      }
+    });
+
+    tests.add("Reader Builds Objects From A Stream", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final byte[] bytes = "{ \"name\": { \"first\": \"s\u00e4m\", \"last\": \"doe\" } }\n{ \"n\": \"2\" }"
+            .getBytes(StandardCharsets.UTF_8);
+        final JSONReader reader = new JSONReader(new ByteArrayInputStream(bytes));
+
+        final JSON first = reader.readObject(factory);
+        Asserts.isEqual("s\u00e4m", first.getObject("name").getString("first"));
+        Asserts.isEqual("doe", first.getObject("name").getString("last"));
+
+        final JSON second = reader.readObject(factory);
+        Asserts.isEqual("2", second.getString("n"));
+        Asserts.isEqual(JSONEvent.END_DOCUMENT, reader.next());
+      }
+    });
+
+    tests.add("Reader Skips Objects", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONReader reader = new JSONReader(
+            new StringReader("{ \"skip\": { \"a\": { \"b\": \"}\" } }, \"keep\": \"yes\" }"));
+
+        reader.next();
+        reader.next();
+        Asserts.isEqual(JSONEvent.START_OBJECT, reader.next());
+        reader.skipObject();
+        Asserts.isEqual(1, reader.depth());
+        Asserts.isEqual(JSONEvent.KEY, reader.next());
+        Asserts.isEqual("keep", reader.getText());
+        Asserts.isEqual(JSONEvent.STRING, reader.next());
+        Asserts.isEqual("yes", reader.getText());
+      }
+    });
+
+    tests.add("Reader Streams Input Larger Than Its Buffer", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        // About 40MB of input that never exists in memory all at once.
+        final int entries = 1000000;
+        final JSONReader reader = new JSONReader(new Reader() {
+          private int entry = -1;
+          private String chunk = "{";
+          private int offset;
+
+          @Override
+          public int read(char[] out, int off, int len) {
+            if (offset == chunk.length()) {
+              if (++entry > entries) {
+                return -1;
+              }
+              chunk = entry == entries ? "}" : (entry == 0 ? "" : ",")
+                  + "\"key" + entry + "\": { \"value\": \"" + entry + "\" }";
+              offset = 0;
+            }
+            final int n = Math.min(len, chunk.length() - offset);
+            chunk.getChars(offset, offset + n, out, off);
+            offset += n;
+            return n;
+          }
+
+          @Override
+          public void close() {}
+        }, 256);
+
+        int strings = 0;
+        String last = null;
+        for (JSONEvent event = reader.next(); event != JSONEvent.END_DOCUMENT; event = reader.next()) {
+          if (event == JSONEvent.STRING) {
+            ++strings;
+            last = reader.getText();
+          }
+        }
+        Asserts.isEqual(entries, strings);
+        Asserts.isEqual(String.valueOf(entries - 1), last);
+      }
+    });
+
+    tests.add("Reader Rejects Invalid Input", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String[] invalid = {
+          "{\"uhhh\": \"uhhhhh\" ",
+          "{ \"name\": }\"sam doe\" }",
+          "{\"\\g\": \"uhhhhh\" }",
+          " pleasedont : \"work\""
+        };
+        for (final String in : invalid) {
+          try {
+            new JSONReader(new StringReader(in)).readObject(factory);
+            Asserts.isTrue(false, "Accepted invalid input " + in);
+          } catch (IOException expected) {
+            // all is good
+          }
+        }
+        // The trailing garbage is only noticed when reading past the object.
+        try {
+          final JSONReader reader = new JSONReader(new StringReader("{ \"a\": \"b\" } x"));
+          reader.readObject(factory);
+          reader.next();
+          Asserts.isTrue(false, "Accepted trailing garbage");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("UTF-8 Parser Reads Buffer Slices", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final byte[] bytes = "xx{ \"n\u00e4me\": { \"first\": \"s\\\"\u00e4m\\\"\", \"last\": \"\u6c34\ud83d\ude00\" }, \"k\": \"v\" }yy"
+            .getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 4);
+        final JSON obj = new Utf8JSONParser().parse(buffer);
+
+        Asserts.isEqual(2, buffer.position());
+        final JSON name = obj.getObject("n\u00e4me");
+        Asserts.isNotNull(name);
+        Asserts.isEqual("s\"\u00e4m\"", name.getString("first"));
+        Asserts.isEqual("\u6c34\ud83d\ude00", name.getString("last"));
+        Asserts.isEqual(null, obj.getString("n\u00e4me"));
+        Asserts.isEqual(null, obj.getObject("k"));
+
+        final Collection<String> strings = new HashSet<>();
+        obj.getStrings(strings);
+        Asserts.isEqual(1, strings.size());
+        Asserts.isTrue(strings.contains("k"), "missing string key");
+
+        obj.setString("k", "changed").setString("new", "value");
+        Asserts.isEqual("changed", obj.getString("k"));
+        Asserts.isEqual("value", obj.getString("new"));
+        Asserts.isEqual("s\"\u00e4m\"", obj.getObject("n\u00e4me").getString("first"));
+      }
+    });
+
+    tests.add("UTF-8 Parser Maps Files", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final Path file = Files.createTempFile("codeu-test", ".json");
+        try {
+          Files.write(file, "{ \"name\": { \"first\": \"sam\", \"last\": \"d\u00f6e\" } }\n"
+              .getBytes(StandardCharsets.UTF_8));
+          final JSON obj = new Utf8JSONParser().parse(file);
+          Asserts.isEqual("d\u00f6e", obj.getObject("name").getString("last"));
+        } finally {
+          Files.delete(file);
+        }
+      }
+    });
+
+    tests.add("UTF-8 Parser Rejects Invalid Input", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final byte[][] invalid = {
+          { '{', '"', 'a', '"', ':', '"', (byte) 0xc3, '(', '"', '}' },
+          { '{', '"', 'a', '"', ':', '"', (byte) 0xc0, (byte) 0xaf, '"', '}' },
+          { '{', '"', 'a', '"', ':', '"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"', '}' },
+          { '{', '"', 'a', '"', ':', '"', (byte) 0xe2, (byte) 0x82, '"', '}' },
+          "{ \"a\": \"b\" };".getBytes(StandardCharsets.UTF_8),
+          "{\"\\g\": \"uhhhhh\" }".getBytes(StandardCharsets.UTF_8),
+          "{\"uhhh\": \"uhhhhh\" ".getBytes(StandardCharsets.UTF_8)
+        };
+        for (final byte[] in : invalid) {
+          try {
+            new Utf8JSONParser().parse(ByteBuffer.wrap(in));
+            Asserts.isTrue(false, "Accepted invalid input " + new String(in, StandardCharsets.UTF_8));
+          } catch (IOException expected) {
+            // all is good
+          }
+        }
+      }
+    });
+
+    tests.add("Lazy Parser Indexes Without Decoding", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON obj = new LazyJSONParser().parse(
+            "{ \"a\\tb\": \"x\\ny\", \"dup\": \"1\", \"inner\": { \"deep\": { } }, \"dup\": { \"v\": \"2\" } }");
+
+        Asserts.isEqual("x\ny", obj.getString("a\tb"));
+        Asserts.isEqual(null, obj.getString("dup"));
+        Asserts.isEqual("2", obj.getObject("dup").getString("v"));
+        Asserts.isTrue(obj.getObject("inner") == obj.getObject("inner"), "children should be cached");
+
+        final Collection<String> objects = new HashSet<>();
+        obj.getObjects(objects);
+        Asserts.isEqual(new HashSet<>(Arrays.asList("inner", "dup")), objects);
+
+        obj.getObject("inner").setString("added", "yes");
+        Asserts.isEqual("yes", obj.getObject("inner").getString("added"));
+        Asserts.isNotNull(obj.getObject("inner").getObject("deep"));
+
+        obj.setString("dup", "3");
+        Asserts.isEqual("3", obj.getString("dup"));
+        Asserts.isEqual("yes", obj.getObject("inner").getString("added"));
+      }
+    });
+
+    tests.add("Tape Parser Builds Views", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON obj = new TapeJSONParser().parse(
+            "{ \"name\": { \"first\": \"s\\\"am\", \"last\": \"doe\" }, \"k\\n\": \"1\", \"k\\n\": \"2\", \"e\": {} }");
+
+        final JSON name = obj.getObject("name");
+        Asserts.isEqual("s\"am", name.getString("first"));
+        Asserts.isEqual("doe", name.getString("last"));
+        Asserts.isEqual("2", obj.getString("k\n"));
+        Asserts.isEqual(null, obj.getString("name"));
+        Asserts.isNotNull(obj.getObject("e"));
+
+        final Collection<String> strings = new HashSet<>();
+        obj.getStrings(strings);
+        Asserts.isEqual(Collections.singleton("k\n"), strings);
+
+        name.setString("first", "sam");
+        Asserts.isEqual("sam", obj.getObject("name").getString("first"));
+        Asserts.isEqual("doe", obj.getObject("name").getString("last"));
+      }
+    });
+
+    tests.add("Writer Escapes Strings", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final StringBuilder out = new StringBuilder();
+        new JSONWriter(out)
+            .beginObject()
+            .key("a\"b").value("tab\there\nnew \\ line")
+            .key("inner").beginObject().endObject()
+            .endObject();
+
+        Asserts.isEqual("{\"a\\\"b\":\"tab\\there\\nnew \\\\ line\",\"inner\":{}}", out.toString());
+      }
+    });
+
+    tests.add("Writer Rejects Misplaced Events", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONWriter writer = new JSONWriter(new StringBuilder()).beginObject();
+        try {
+          writer.value("no key");
+          Asserts.isTrue(false, "Wrote a value without a key");
+        } catch (IllegalStateException expected) {
+          // all is good
+        }
+        try {
+          writer.key("k").endObject();
+          Asserts.isTrue(false, "Ended an object after a key");
+        } catch (IllegalStateException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Writer Round Trips Through Parser", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON original = factory.object()
+            .setString("quote\"key", "say \"hi\"")
+            .setString("slashes", "C:\\dir\\file")
+            .setString("ws", "a\tb\nc")
+            .setString("unicode", "s\u00e4m \u6c34 \ud83d\ude00")
+            .setObject("nested", factory.object()
+                .setString("x", "}")
+                .setObject("empty", factory.object()));
+
+        final String text = JSONWriter.toString(original);
+        assertSameJSON(original, factory.parser().parse(text));
+        assertSameJSON(original, factory.parser().parse(JSONWriter.toString(factory.parser().parse(text))));
+
+        final StringWriter writer = new StringWriter();
+        JSONWriter.write(original, writer);
+        Asserts.isEqual(text, writer.toString());
+
+        final ByteBuffer bytes = ByteBuffer.allocate(256);
+        new JSONWriter(bytes).object(original);
+        bytes.flip();
+        assertSameJSON(original, new Utf8JSONParser().parse(bytes));
+      }
+    });
+
+    tests.add("Writer Streams Many Objects", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final StringWriter out = new StringWriter();
+        final JSONWriter writer = new JSONWriter(out);
+        for (int i = 0; i < 1000; ++i) {
+          writer.beginObject().key("n").value(String.valueOf(i)).endObject();
+        }
+        writer.flush();
+
+        final JSONReader reader = new JSONReader(new StringReader(out.toString()));
+        for (int i = 0; i < 1000; ++i) {
+          Asserts.isEqual(String.valueOf(i), reader.readObject(factory).getString("n"));
+        }
+        Asserts.isEqual(JSONEvent.END_DOCUMENT, reader.next());
+      }
+    });
+
+    tests.add("Writer Handles Deep Trees", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String deep = Documents.deep(100000);
+        Asserts.isEqual(deep, JSONWriter.toString(factory.parser().parse(deep)));
+      }
+    });
+
+    tests.add("Batch Parser Keeps Order And Reports Errors", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final StringBuilder in = new StringBuilder();
+        for (int i = 1; i <= 5000; ++i) {
+          if (i % 1000 == 0) {
+            in.append("{ \"broken\": \n");
+          } else if (i % 777 == 0) {
+            in.append("  \r\n");
+          } else {
+            in.append("{ \"n\": \"").append(i).append("\" }\r\n");
+          }
+        }
+        in.append("{ \"n\": \"last\" }");
+
+        try (BatchJSONParser batch = new BatchJSONParser(factory, 4)) {
+          final List<BatchJSONParser.Record> records = batch.parse(in);
+          Asserts.isEqual(5001 - 5000 / 777, records.size());
+          int errors = 0;
+          long previous = 0;
+          for (final BatchJSONParser.Record record : records) {
+            Asserts.isTrue(record.line > previous, "records out of order");
+            previous = record.line;
+            if (record.error != null) {
+              Asserts.isEqual(0L, record.line % 1000);
+              ++errors;
+            } else if (record.line <= 5000) {
+              Asserts.isEqual(String.valueOf(record.line), record.object.getString("n"));
+            } else {
+              Asserts.isEqual("last", record.object.getString("n"));
+            }
+          }
+          Asserts.isEqual(5, errors);
+        }
+      }
+    });
+
+    tests.add("Batch Parser Streams To A Callback", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final StringBuilder in = new StringBuilder();
+        for (int i = 1; i <= 20000; ++i) {
+          in.append("{\"n\":\"").append(i).append("\"}\n");
+        }
+        final long[] next = { 1 };
+        try (BatchJSONParser batch = new BatchJSONParser(factory, 8)) {
+          batch.parse(in, new BatchJSONParser.Callback() {
+            @Override
+            public void record(long line, JSON object) {
+              Asserts.isEqual(next[0]++, line);
+              Asserts.isEqual(String.valueOf(line), object.getString("n"));
+            }
+
+            @Override
+            public void error(long line, IOException error) {
+              Asserts.isTrue(false, "unexpected error on line " + line);
+            }
+          });
+        }
+        Asserts.isEqual(20001L, next[0]);
+      }
+    });
+
+    tests.add("Concurrent JSON Loses No Writes", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON shared = new ConcurrentJSON();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+          final int id = t;
+          threads[t] = new Thread() {
+            @Override
+            public void run() {
+              for (int i = 0; i < 500; ++i) {
+                shared.setString(id + "/" + i, String.valueOf(i));
+                if (i % 10 == 0) {
+                  shared.setObject(id + "/object " + i, new ConcurrentJSON());
+                }
+                shared.getString(id + "/" + (i / 2));
+              }
+            }
+          };
+          threads[t].start();
+        }
+        for (final Thread thread : threads) {
+          thread.join();
+        }
+
+        final Collection<String> strings = new HashSet<>();
+        final Collection<String> objects = new HashSet<>();
+        shared.getStrings(strings);
+        shared.getObjects(objects);
+        Asserts.isEqual(8 * 500, strings.size());
+        Asserts.isEqual(8 * 50, objects.size());
+        Asserts.isEqual("499", shared.getString("7/499"));
+      }
+    });
+
+    tests.add("Concurrent JSON Enumerates Snapshots", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON shared = new ConcurrentJSON();
+        final int writes = 2000;
+        final Thread writer = new Thread() {
+          @Override
+          public void run() {
+            for (int i = 0; i < writes; ++i) {
+              shared.setString("k" + i, "v");
+            }
+          }
+        };
+        writer.start();
+
+        // Keys are only ever added in order, so any consistent snapshot
+        // holds exactly k0 .. k(size - 1).
+        int seen = 0;
+        while (seen < writes) {
+          final Collection<String> strings = new HashSet<>();
+          shared.getStrings(strings);
+          for (int i = 0; i < strings.size(); ++i) {
+            Asserts.isTrue(strings.contains("k" + i), "snapshot is missing k" + i);
+          }
+          seen = strings.size();
+        }
+        writer.join();
+      }
+    });
+
+    tests.add("Concurrent JSON Copies Trees", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON copy = ConcurrentJSON.copyOf(factory.parser().parse(Documents.small()));
+        Asserts.isTrue(copy.getObject("name") instanceof ConcurrentJSON, "nested object not converted");
+        Asserts.isEqual("doe", copy.getObject("name").getString("last"));
+        Asserts.isEqual("18", copy.getString("id"));
+      }
+    });
+
+    tests.add("Key Table Shares Keys Across Documents", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final KeyTable keys = new KeyTable(64);
+        final JSONParser parser = new MyJSONFactory(keys).parser();
+        final JSON first = parser.parse(Documents.small());
+        final JSON second = parser.parse(Documents.small());
+
+        final ArrayList<String> firstNames = new ArrayList<>();
+        final ArrayList<String> secondNames = new ArrayList<>();
+        first.getObject("name").getStrings(firstNames);
+        second.getObject("name").getStrings(secondNames);
+        Collections.sort(firstNames);
+        Collections.sort(secondNames);
+        Asserts.isEqual(Arrays.asList("first", "last"), firstNames);
+        for (int i = 0; i < firstNames.size(); ++i) {
+          Asserts.isTrue(firstNames.get(i) == secondNames.get(i), "key was not shared: " + firstNames.get(i));
+        }
+        Asserts.isEqual(5L, keys.misses());
+        Asserts.isEqual(5L, keys.hits());
+        Asserts.isEqual("doe", second.getObject("name").getString("last"));
+      }
+    });
+
+    tests.add("Key Table Stays Bounded", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final KeyTable keys = new KeyTable(4);
+        final JSON object = new MyJSONParser(keys).parse(Documents.flat(1000));
+        Asserts.isEqual("some value number 999", object.getString("field 999"));
+        Asserts.isEqual("some value number 0", object.getString("field 0"));
+        Asserts.isTrue(keys.hits() + keys.misses() == 1002, "every key is looked up once");
+
+        final String longKey = new String(new char[100]).replace('\0', 'x');
+        final String copy = new String(longKey);
+        keys.intern(longKey);
+        Asserts.isTrue(keys.intern(copy) == copy, "long keys are not kept");
+        Asserts.isEqual("\t", keys.intern("\t"));
+      }
+    });
+
+    tests.add("Scanner Allocates Nothing Per String", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser scanOnly = new JSONParser() {
+          @Override
+          public JSON parse(String in) throws IOException {
+            new JSONScanner(in, IGNORE_EVENTS).scan();
+            return null;
+          }
+        };
+        final String in = Documents.escapes(2000);
+        scanOnly.parse(in);
+        final long bytes = allocatedBytes(scanOnly, in);
+        Asserts.isTrue(bytes < 1000, "scanning allocated " + bytes + " bytes");
+      }
+    });
+
+    tests.add("Decoding Matches Comparing", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String in = "a\\\"b\\tc\\\\d\\n";
+        final String decoded = JSONScanner.decode(in, 0, in.length(), true);
+        Asserts.isEqual("a\"b\tc\\d\n", decoded);
+        Asserts.isEqual(decoded, new JSONScanner.Decoder().decode(in, 0, in.length(), true));
+        Asserts.isTrue(JSONScanner.decodedEquals(in, 0, in.length(), decoded), "decoded text should match");
+        Asserts.isTrue(!JSONScanner.decodedEquals(in, 0, in.length(), decoded + "x"), "longer text matched");
+        Asserts.isTrue(!JSONScanner.decodedEquals(in, 0, in.length(), "a\"b"), "shorter text matched");
+      }
+    });
+
+    tests.add("Caching Parser Returns Shared Immutable Results", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final CachingJSONFactory caching = new CachingJSONFactory(factory, 16, 1 << 20);
+        final JSON first = caching.parser().parse(Documents.small());
+        final JSON second = caching.parser().parse(new String(Documents.small()));
+        Asserts.isTrue(first == second, "the second parse should be a hit");
+        Asserts.isEqual(1L, caching.cache().hits());
+        Asserts.isEqual(1L, caching.cache().misses());
+        assertSameJSON(factory.parser().parse(Documents.small()), first);
+
+        try {
+          first.getObject("name").setString("last", "roe");
+          Asserts.isTrue(false, "cached results must not change");
+        } catch (UnsupportedOperationException expected) {
+          // all is good
+        }
+        Asserts.isEqual("doe", second.getObject("name").getString("last"));
+
+        try {
+          caching.parser().parse("{ \"a\": }");
+          Asserts.isTrue(false, "invalid input should still fail");
+        } catch (IOException expected) {
+          // all is good
+        }
+        Asserts.isEqual(1, caching.cache().size());
+      }
+    });
+
+    tests.add("Caching Parser Evicts Least Recently Used", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final CachingJSONFactory caching = new CachingJSONFactory(factory, 2, 1 << 20);
+        final JSONParser parser = caching.parser();
+        final JSON a = parser.parse("{ \"a\": \"1\" }");
+        parser.parse("{ \"b\": \"2\" }");
+        Asserts.isTrue(parser.parse("{ \"a\": \"1\" }") == a, "a is still cached");
+        parser.parse("{ \"c\": \"3\" }");  // evicts b, the least recently used
+        Asserts.isEqual(1L, caching.cache().evictions());
+        Asserts.isTrue(parser.parse("{ \"a\": \"1\" }") == a, "a was used more recently than b");
+        Asserts.isEqual(2L, caching.cache().hits());
+
+        final CachingJSONFactory small = new CachingJSONFactory(factory, 1000, 4000);
+        for (int i = 0; i < 100; ++i) {
+          small.parser().parse("{ \"key\": \"value " + i + "\" }");
+        }
+        Asserts.isTrue(small.cache().estimatedBytes() <= 4000, "over the byte limit: " + small.cache());
+        Asserts.isTrue(small.cache().size() < 100, "nothing was evicted: " + small.cache());
+        small.parser().parse(Documents.flat(1000));
+        Asserts.isTrue(small.cache().estimatedBytes() <= 4000, "a huge result was cached");
+      }
+    });
+
+    tests.add("Caching Parser Serves Concurrent Callers", new Test() {
+      @Override
+      public void run(final JSONFactory factory) throws Exception {
+        final CachingJSONFactory caching = new CachingJSONFactory(factory, 8, 1 << 20);
+        final String[] payloads = new String[16];
+        for (int i = 0; i < payloads.length; ++i) {
+          payloads[i] = "{ \"flag\": \"" + i + "\", \"rollout\": { \"percent\": \"" + i + "\" } }";
+        }
+        final Thread[] threads = new Thread[4];
+        final Exception[] failure = new Exception[1];
+        for (int t = 0; t < threads.length; ++t) {
+          threads[t] = new Thread() {
+            @Override
+            public void run() {
+              final JSONParser parser = caching.parser();
+              try {
+                for (int i = 0; i < 2000; ++i) {
+                  final int p = (i * 7 + (int) getId()) % payloads.length;
+                  final JSON flag = parser.parse(payloads[p]);
+                  Asserts.isEqual(String.valueOf(p), flag.getObject("rollout").getString("percent"));
+                }
+              } catch (Exception ex) {
+                synchronized (failure) {
+                  failure[0] = ex;
+                }
+              }
+            }
+          };
+          threads[t].start();
+        }
+        for (final Thread thread : threads) {
+          thread.join();
+        }
+        synchronized (failure) {
+          if (failure[0] != null) {
+            throw failure[0];
+          }
+        }
+        Asserts.isEqual(8000L, caching.cache().hits() + caching.cache().misses());
+        Asserts.isTrue(caching.cache().size() <= 8, "over the entry limit: " + caching.cache());
+      }
+    });
+
+    tests.add("Persistent JSON Keeps Old Versions", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final PersistentJSON original = PersistentJSON.copyOf(factory.parser().parse(Documents.small()));
+        final PersistentJSON renamed = original.setObject("name",
+            original.getObject("name").setString("last", "roe"));
+        Asserts.isEqual("doe", original.getObject("name").getString("last"));
+        Asserts.isEqual("roe", renamed.getObject("name").getString("last"));
+        Asserts.isTrue(original.getObject("name") instanceof PersistentJSON, "children are converted");
+        Asserts.isTrue(renamed.setString("id", renamed.getString("id")) == renamed, "an unchanged value keeps the version");
+
+        final PersistentJSON moved = renamed.setString("name", "sam doe");
+        Asserts.isEqual(null, moved.getObject("name"));
+        Asserts.isEqual("sam doe", moved.getString("name"));
+        Asserts.isEqual("roe", renamed.getObject("name").getString("last"));
+      }
+    });
+
+    tests.add("Persistent JSON Matches A Map", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        // "Aa" and "BB" (and their combinations) have equal hash codes.
+        final String[] colliding = { "Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB" };
+        PersistentJSON persistent = PersistentJSON.EMPTY;
+        final JSON expected = new MyJSON();
+        for (int i = 0; i < 5000; ++i) {
+          final String key = i < colliding.length ? colliding[i] : "key " + (i * 7919 % 3000);
+          if (i % 3 == 0) {
+            persistent = persistent.setObject(key, PersistentJSON.EMPTY.setString("i", "" + i));
+            expected.setObject(key, new MyJSON().setString("i", "" + i));
+          } else {
+            persistent = persistent.setString(key, "" + i);
+            expected.setString(key, "" + i);
+          }
+        }
+        persistent = persistent.setString("Aa", "changed").setObject("BBBB", PersistentJSON.EMPTY);
+        expected.setString("Aa", "changed").setObject("BBBB", new MyJSON());
+        assertSameJSON(expected, persistent);
+        Asserts.isEqual(null, persistent.getString("AaBb"));
+        Asserts.isEqual(null, PersistentJSON.EMPTY.getString("Aa"));
+      }
+    });
+
+    tests.add("Paths Select Strings And Objects", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON users = factory.parser().parse(Documents.users(20));
+        Asserts.isEqual("J\u00fcrgen M\u00fcller 7", JSONPath.compile("user 7.name").getString(users));
+        Asserts.isEqual(null, JSONPath.compile("user 7.name.first").getString(users));
+        Asserts.isEqual(null, JSONPath.compile("user 70.name").getString(users));
+        Asserts.isEqual(null, JSONPath.compile("user 7").getString(users));
+        Asserts.isEqual("S\u00e3o Paulo", JSONPath.compile("user 7").getObject(users).getString("city"));
+
+        final List<String> cities = new ArrayList<>();
+        JSONPath.compile("*.city").selectStrings(users, cities);
+        Asserts.isEqual(20, cities.size());
+        final List<String> fields = new ArrayList<>();
+        JSONPath.compile("user 3.*").selectStrings(users, fields);
+        Asserts.isEqual(3, fields.size());
+        final List<JSON> objects = new ArrayList<>();
+        JSONPath.compile("*").selectObjects(users, objects);
+        Asserts.isEqual(20, objects.size());
+
+        final JSON odd = factory.parser().parse("{ \"a.b\": { \"*\": \"star\", \"t\\tab\": \"tab\" } }");
+        Asserts.isEqual("star", JSONPath.compile("a\\.b.\\*").getString(odd));
+        Asserts.isEqual("tab", JSONPath.compile("a\\.b.t\tab").getString(odd));
+
+        for (final String invalid : new String[] { "", "a..b", "a.", ".a", "*a.b" }) {
+          try {
+            JSONPath.compile(invalid);
+            Asserts.isTrue(false, "\"" + invalid + "\" should not compile");
+          } catch (IllegalArgumentException expected) {
+            // all is good
+          }
+        }
+      }
+    });
+
+    tests.add("Projection Builds Only Selected Parts", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONPath city = JSONPath.compile("*.city");
+        final JSONPath name = JSONPath.compile("user 3.name");
+        final String in = Documents.users(50);
+        final JSON projected = new ProjectingJSONParser(city, name).parse(in);
+        final JSON full = factory.parser().parse(in);
+
+        final List<String> fullCities = new ArrayList<>();
+        final List<String> projectedCities = new ArrayList<>();
+        city.selectStrings(full, fullCities);
+        city.selectStrings(projected, projectedCities);
+        Collections.sort(fullCities);
+        Collections.sort(projectedCities);
+        Asserts.isEqual(fullCities, projectedCities);
+        Asserts.isEqual(name.getString(full), name.getString(projected));
+        Asserts.isEqual(null, projected.getObject("user 3").getString("note"));
+        Asserts.isEqual(null, projected.getObject("user 4").getString("name"));
+
+        // A selected object comes whole, however deep it goes.
+        final JSON whole = new ProjectingJSONParser(JSONPath.compile("k.k")).parse(Documents.deep(30));
+        assertSameJSON(factory.parser().parse(Documents.deep(30)).getObject("k").getObject("k"),
+            whole.getObject("k").getObject("k"));
+        final JSON nothing = new ProjectingJSONParser(JSONPath.compile("missing.*")).parse(Documents.small());
+        final List<String> names = new ArrayList<>();
+        nothing.getStrings(names);
+        nothing.getObjects(names);
+        Asserts.isTrue(names.isEmpty(), "nothing should be selected");
+
+        try {
+          new ProjectingJSONParser(city).parse("{ \"user 1\": { \"city\": \"x\" }, \"skipped\": { \"a\\q\": \"\" } }");
+          Asserts.isTrue(false, "skipped parts must still be valid");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Binary Encoding Round Trips", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String[] documents = {
+          Documents.small(), Documents.users(30), Documents.escapes(30), Documents.deep(30),
+          "{ \"\": \"\", \"emoji \ud83d\ude00\": { \"\u00e4\u4e2d\": \"\ud83d\ude00 \u00e4\" } }"
+        };
+        for (final String document : documents) {
+          final JSON original = factory.parser().parse(document);
+          for (final boolean dictionary : new boolean[] { false, true }) {
+            final ByteBuffer binary = BinaryJSONEncoder.encode(original, dictionary);
+            assertSameJSON(original, BinaryJSONDecoder.decode(binary));
+            assertSameJSON(original, BinaryJSONDecoder.view(binary));
+            Asserts.isEqual(0, binary.position());
+            // Sizes are big-endian whatever order the buffer reads in.
+            final ByteBuffer little = binary.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            assertSameJSON(original, BinaryJSONDecoder.decode(little));
+            assertSameJSON(original, BinaryJSONDecoder.view(little));
+          }
+        }
+
+        final JSON view = BinaryJSONDecoder.view(BinaryJSONEncoder.encode(factory.parser().parse(Documents.small()), true));
+        Asserts.isEqual(null, view.getString("name"));
+        Asserts.isEqual(null, view.getObject("id"));
+        Asserts.isEqual(null, view.getString("unknown"));
+        view.getObject("name").setString("last", "roe");
+        view.setString("id", "19");
+        Asserts.isEqual("roe", view.getObject("name").getString("last"));
+        Asserts.isEqual("19", view.getString("id"));
+        Asserts.isEqual("Mountain View", view.getString("city"));
+      }
+    });
+
+    tests.add("Binary Encoding Takes No Stack", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String deep = Documents.deep(100000);
+        final JSON original = new MyJSONParser().parse(deep);
+        for (final boolean dictionary : new boolean[] { false, true }) {
+          final ByteBuffer binary = BinaryJSONEncoder.encode(original, dictionary);
+          Asserts.isEqual(deep, JSONWriter.toString(BinaryJSONDecoder.decode(binary)));
+          JSON view = BinaryJSONDecoder.view(binary);
+          for (int i = 0; i < 100000; ++i) {
+            view = view.getObject("k");
+          }
+          Asserts.isEqual("bottom", view.getString("k"));
+        }
+
+        // A damaged document nested far deeper than any real one: every
+        // level claims one more entry than it has.
+        final ByteBuffer levels = ByteBuffer.allocate(4 + 1000000 * 6);
+        levels.put(BinaryJSONEncoder.MAGIC_0).put(BinaryJSONEncoder.MAGIC_1).put(BinaryJSONEncoder.VERSION).put((byte) 0);
+        while (levels.remaining() >= 6) {
+          levels.put((byte) 5).putInt(0).put((byte) 0);  // two entries, the first keyed ""
+        }
+        levels.flip();
+        try {
+          BinaryJSONDecoder.decode(levels);
+          Asserts.isTrue(false, "a damaged document was decoded");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Binary Encoding Is Smaller Than Text", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSON users = factory.parser().parse(Documents.users(200));
+        final int text = JSONWriter.toString(users).getBytes(StandardCharsets.UTF_8).length;
+        final int plain = BinaryJSONEncoder.encode(users, false).remaining();
+        final int dictionary = BinaryJSONEncoder.encode(users, true).remaining();
+        Asserts.isTrue(plain < text, plain + " bytes of binary against " + text + " of text");
+        Asserts.isTrue(dictionary < plain, dictionary + " bytes with a dictionary against " + plain);
+      }
+    });
+
+    tests.add("Binary Decoding Rejects Damaged Input", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final ByteBuffer good = BinaryJSONEncoder.encode(factory.parser().parse(Documents.small()), false);
+        final byte[] bytes = new byte[good.remaining()];
+        good.duplicate().get(bytes);
+        final ByteBuffer[] damaged = {
+          ByteBuffer.wrap(bytes, 0, bytes.length - 3).slice(),
+          ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 1)),
+          ByteBuffer.wrap("{ \"a\": \"b\" }".getBytes(StandardCharsets.UTF_8))
+        };
+        for (final ByteBuffer buffer : damaged) {
+          try {
+            BinaryJSONDecoder.decode(buffer);
+            Asserts.isTrue(false, "damaged input was decoded");
+          } catch (IOException expected) {
+            // all is good
+          }
+          try {
+            BinaryJSONDecoder.view(buffer);
+            Asserts.isTrue(false, "damaged input was viewed");
+          } catch (IOException expected) {
+            // all is good
+          }
+        }
+      }
+    });
+
+    tests.add("Incremental Parser Resumes At Any Split", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String[] documents = {
+          Documents.small(), Documents.users(3), Documents.escapes(3), Documents.deep(5), "{}"
+        };
+        for (final String document : documents) {
+          final JSON expected = factory.parser().parse(document);
+          final char[] chars = document.toCharArray();
+          for (int split = 0; split <= chars.length; ++split) {
+            final IncrementalJSONParser parser = new IncrementalJSONParser(factory);
+            parser.feed(chars, 0, split);
+            parser.feed(chars, split, chars.length - split);
+            parser.finish();
+            assertSameJSON(expected, parser.nextObject());
+            Asserts.isEqual(null, parser.nextObject());
+          }
+
+          final IncrementalJSONParser oneByOne = new IncrementalJSONParser(factory);
+          for (int i = 0; i < chars.length; ++i) {
+            Asserts.isTrue(!oneByOne.hasObject(), "the object is not complete yet");
+            oneByOne.feed(chars, i, 1);
+          }
+          Asserts.isTrue(oneByOne.hasObject(), "the object is complete");
+          assertSameJSON(expected, oneByOne.nextObject());
+        }
+      }
+    });
+
+    tests.add("Incremental Parser Splits UTF-8 Characters", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String document = Documents.users(2) + "\n{ \"emoji\": \"\ud83d\ude00\" }";
+        final byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= bytes.length; ++split) {
+          final IncrementalJSONParser parser = new IncrementalJSONParser(factory);
+          parser.feed(ByteBuffer.wrap(bytes, 0, split));
+          for (int i = split; i < bytes.length; i += 3) {
+            final ByteBuffer chunk = ByteBuffer.wrap(bytes, i, Math.min(3, bytes.length - i));
+            parser.feed(chunk);
+            Asserts.isTrue(!chunk.hasRemaining(), "every chunk is consumed");
+          }
+          parser.finish();
+          assertSameJSON(factory.parser().parse(Documents.users(2)), parser.nextObject());
+          Asserts.isEqual("\ud83d\ude00", parser.nextObject().getString("emoji"));
+          Asserts.isTrue(!parser.hasObject(), "there are only two objects");
+        }
+
+        final IncrementalJSONParser cut = new IncrementalJSONParser(factory);
+        cut.feed(ByteBuffer.wrap(new byte[] { '{', '"', 'a', '"', ':', '"', (byte) 0xc3 }));
+        try {
+          cut.finish();
+          Asserts.isTrue(false, "the input ends inside an object");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Incremental Parser Reports Errors Like The Scanner", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String[] invalid = {
+          "x", "{ \"a\" \"b\" }", "{ \"a\": \"b\\x\" }", "{ \"a\\x\": \"b\" }", "{ a }",
+          "{ \"a\": b }", "{ \"a\": \"b\" \"c\" }", "{ \"a\": \"b\" } x"
+        };
+        for (final String document : invalid) {
+          String expected = null;
+          try {
+            new MyJSONParser().parse(document);
+          } catch (IOException ex) {
+            expected = ex.getMessage();
+          }
+          String actual = null;
+          final IncrementalJSONParser parser = new IncrementalJSONParser(factory);
+          try {
+            for (final char c : document.toCharArray()) {
+              parser.feed(new char[] { c });
+            }
+            parser.finish();
+          } catch (IOException ex) {
+            actual = ex.getMessage();
+          }
+          Asserts.isEqual(expected, actual);
+        }
+
+        final IncrementalJSONParser incomplete = new IncrementalJSONParser(factory);
+        incomplete.feed("{ \"a\": { \"b\": \"c\" }".toCharArray());
+        try {
+          incomplete.finish();
+          Asserts.isTrue(false, "the input ends inside an object");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Limits Reject Documents At The Point They Cross", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONLimits limits = JSONLimits.NONE
+            .withMaxDepth(2).withMaxKeys(2).withMaxSize(40).withMaxStringLength(3);
+        final String[][] cases = {
+          { "{ \"a\": { \"b\": { } } }", "Nested deeper than the limit of 2. (at position 14)" },
+          { "{ \"a\": \"1\", \"b\": \"2\", \"c\": \"3\" }",
+            "More keys than the limit of 2. (at position 22)" },
+          { "{ \"abcd\": \"1\" }", "String longer than the limit of 3. (at position 6)" },
+          { "{ \"a\": \"b\\tc\" }", "String longer than the limit of 3. (at position 11)" },
+          // The scan stops at the limit, before anything wrong further on.
+          { "{ \"a\": \"bcde\\x\" }", "String longer than the limit of 3. (at position 11)" },
+          { "{ \"a\": \"bcdefgh", "String longer than the limit of 3. (at position 11)" },
+          { "{ \"a\": \"1\", \"b\": { \"c\": \"2\", \"d\": \"3\" } }",
+            "Document longer than the limit of 40. (at position 40)" },
+        };
+        for (final String[] c : cases) {
+          String actual = null;
+          try {
+            new MyJSONParser(null, limits).parse(c[0]);
+          } catch (IOException ex) {
+            actual = ex.getMessage();
+          }
+          Asserts.isEqual(c[1], actual);
+        }
+
+        // Right at every limit is fine, and keys are counted per object.
+        final JSON json = new MyJSONParser(null, limits)
+            .parse("{ \"abc\": { \"d\": \"efg\" }, \"h\": \"\\t\" }");
+        Asserts.isEqual("efg", json.getObject("abc").getString("d"));
+        Asserts.isEqual("\t", json.getString("h"));
+      }
+    });
+
+    tests.add("Deep Nesting Takes No Stack", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        JSON json = new MyJSONParser().parse(Documents.deep(1000000));
+        for (int i = 0; i < 1000000; ++i) {
+          json = json.getObject("k");
+        }
+        Asserts.isEqual("bottom", json.getString("k"));
+
+        try {
+          new MyJSONParser(null, JSONLimits.UNTRUSTED).parse(Documents.deep(1000000));
+          Asserts.isTrue(false, "the document is deeper than the limit");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Incremental Parser Enforces The Same Limits", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONLimits limits = JSONLimits.NONE
+            .withMaxDepth(2).withMaxKeys(2).withMaxSize(40).withMaxStringLength(3);
+        final String[] documents = {
+          "{ \"a\": { \"b\": { } } }", "{ \"a\": \"1\", \"b\": \"2\", \"c\": \"3\" }",
+          "{ \"abcd\": \"1\" }", "{ \"a\": \"b\\tc\" }",
+          "{ \"a\": \"1\", \"b\": { \"c\": \"2\", \"d\": \"3\" } }",
+          "{ \"abc\": { \"d\": \"efg\" }, \"h\": \"\\t\" }"
+        };
+        for (final String document : documents) {
+          String expected = null;
+          try {
+            new MyJSONParser(null, limits).parse(document);
+          } catch (IOException ex) {
+            expected = ex.getMessage();
+          }
+          // Whole and one character at a time.
+          for (final int chunk : new int[] { document.length(), 1 }) {
+            String actual = null;
+            final IncrementalJSONParser parser = new IncrementalJSONParser(factory, limits);
+            try {
+              final char[] chars = document.toCharArray();
+              for (int at = 0; at < chars.length; at += chunk) {
+                parser.feed(chars, at, Math.min(chunk, chars.length - at));
+              }
+              parser.finish();
+            } catch (IOException ex) {
+              actual = ex.getMessage();
+            }
+            Asserts.isEqual(expected, actual);
+          }
+        }
+
+        // The size limit applies to each top-level object on its own.
+        final IncrementalJSONParser stream = new IncrementalJSONParser(factory, limits);
+        for (int i = 0; i < 100; ++i) {
+          stream.feed("{ \"a\": \"1\" }\n".toCharArray());
+        }
+        stream.finish();
+        Asserts.isNotNull(stream.nextObject());
+      }
+    });
+
+    tests.add("Instrumented Parser Records Parses And Failures", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final ParseStats stats = new ParseStats();
+        final JSONParser parser = new InstrumentedJSONParser(factory.parser(), stats, 1);
+        final String document = "{ \"a\": \"b\", \"c\": { \"d\": \"e\" } }";
+        parser.parse(document);
+        parser.parse(document);
+        for (int i = 0; i < 2; ++i) {
+          try {
+            parser.parse("{ a }");
+            Asserts.isTrue(false, "the key has no quotes");
+          } catch (IOException expected) {
+            // all is good
+          }
+        }
+
+        Asserts.isEqual(4L, stats.getParses());
+        Asserts.isEqual(4L, stats.getTimedParses());
+        Asserts.isEqual(2L, stats.getFailures());
+        Asserts.isEqual(2L * document.length() + 2L * "{ a }".length(), stats.getChars());
+        Asserts.isEqual(1, stats.getFailuresByReason().size());
+        Asserts.isEqual(2L, stats.getFailuresByReason().values().iterator().next());
+        Asserts.isTrue(stats.getMaxLatencyNanos() > 0, "parses take time");
+
+        Asserts.isEqual(2L, stats.getMeasuredTrees());
+        Asserts.isEqual(2.0, stats.getMeanObjects());
+        Asserts.isEqual(3.0, stats.getMeanKeys());
+        Asserts.isEqual(2L, stats.getMaxDepth());
+        Asserts.isTrue(stats.getMeanEstimatedBytes() > 0, "trees take memory");
+
+        // Nothing is recorded while disabled.
+        stats.setEnabled(false);
+        parser.parse(document);
+        Asserts.isEqual(4L, stats.getParses());
+        stats.setEnabled(true);
+        stats.reset();
+        Asserts.isEqual(0L, stats.getParses());
+        Asserts.isEqual(0, stats.getFailuresByReason().size());
+
+        Asserts.isEqual("Missing key.",
+            InstrumentedJSONParser.reason(new IOException("Missing key. (at position 2)")));
+
+        // Reasons are counted without their position, and only so many
+        // of them by name.
+        stats.failed(5, "Missing key. (at position 2)");
+        stats.failed(5, "Missing key. (at position 3)");
+        for (int i = 0; i < ParseStats.MAX_REASONS + 10; ++i) {
+          stats.failed(5, "Bad value " + i + ".");
+        }
+        final Map<String, Long> reasons = stats.getFailuresByReason();
+        Asserts.isEqual(ParseStats.MAX_REASONS + 1, reasons.size());
+        Asserts.isEqual(2L, reasons.get("Missing key."));
+        Asserts.isEqual(11L, reasons.get(ParseStats.OTHER_REASONS));
+      }
+    });
+
+    tests.add("Latency Histogram Percentiles", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final ParseStats.Histogram histogram = new ParseStats.Histogram();
+        Asserts.isEqual(0L, histogram.percentile(0.5));
+        for (int i = 1; i <= 1000; ++i) {
+          histogram.record(i);
+        }
+        Asserts.isEqual(1000L, histogram.count());
+        Asserts.isEqual(500L, histogram.mean());
+        Asserts.isEqual(1000L, histogram.max());
+        final long median = histogram.percentile(0.5);
+        Asserts.isTrue(median >= 500 && median <= 625, "median " + median);
+        final long p99 = histogram.percentile(0.99);
+        Asserts.isTrue(p99 >= 990 && p99 <= 1000, "p99 " + p99);
+        Asserts.isEqual(1L, histogram.percentile(0));
+      }
+    });
+
+    tests.add("Parse Stats Are Visible Over JMX", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final ParseStats stats = new ParseStats();
+        final ObjectName name = stats.register("test " + factory.getClass().getSimpleName());
+        try {
+          final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+          new InstrumentedJSONParser(factory.parser(), stats).parse("{ }");
+          Asserts.isEqual(1L, server.getAttribute(name, "Parses"));
+          server.setAttribute(name, new Attribute("Enabled", false));
+          Asserts.isEqual(false, stats.enabled());
+          server.invoke(name, "reset", new Object[0], new String[0]);
+          Asserts.isEqual(0L, stats.getParses());
+        } finally {
+          stats.unregister(name);
+        }
+      }
+    });
+
+    tests.add("MyJSON Table Survives Growth And Changes Of Kind", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final MyJSON object = new MyJSON(1, 0);
+        for (int i = 0; i < 10000; ++i) {
+          object.setString("key " + i, "value " + i);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+          object.setObject("key " + i, new MyJSON());
+        }
+        object.setString("key 0", "back");
+        Asserts.isEqual(10000, object.size());
+
+        final ArrayList<String> strings = new ArrayList<>();
+        final ArrayList<String> objects = new ArrayList<>();
+        object.getStrings(strings);
+        object.getObjects(objects);
+        Asserts.isEqual(5001, strings.size());
+        Asserts.isEqual(4999, objects.size());
+        // Each kind lists its keys in the order they became that kind.
+        Asserts.isEqual("key 1", strings.get(0));
+        Asserts.isEqual("key 0", strings.get(5000));
+        Asserts.isEqual("key 2", objects.get(0));
+
+        for (int i = 1; i < 10000; ++i) {
+          if (i % 2 == 0) {
+            Asserts.isNotNull(object.getObject("key " + i));
+            Asserts.isEqual(null, object.getString("key " + i));
+          } else {
+            Asserts.isEqual("value " + i, object.getString("key " + i));
+            Asserts.isEqual(null, object.getObject("key " + i));
+          }
+        }
+        Asserts.isEqual("back", object.getString("key 0"));
+        Asserts.isEqual(null, object.getString("key 10000"));
+        Asserts.isEqual(null, new MyJSON().getString("key 0"));
+      }
+    });
+
+    tests.add("Parse Context Recycles Trees", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final ParseContext context = new ParseContext();
+        final String document = Documents.users(20);
+        assertSameJSON(new MyJSONParser().parse(document), context.parse(document));
+        final int objects = context.live();
+        Asserts.isEqual(0, context.pooled());
+        context.release();
+        Asserts.isEqual(0, context.live());
+        Asserts.isEqual(objects, context.pooled());
+
+        // The second tree is made from the first one's objects.
+        assertSameJSON(new MyJSONParser().parse(document), context.parse(document));
+        Asserts.isEqual(0, context.pooled());
+        context.release();
+
+        // A failed parse gives its objects back at once.
+        try {
+          context.parse("{ \"a\": { \"b\": \"c\" }, d }");
+          Asserts.isTrue(false, "the last key has no quotes");
+        } catch (IOException expected) {
+          // all is good
+        }
+        Asserts.isEqual(0, context.live());
+        Asserts.isEqual(objects, context.pooled());
+
+        // In the steady state only the string values are new.
+        final JSONParser parseAndRelease = new JSONParser() {
+          @Override
+          public JSON parse(String in) throws IOException {
+            final JSON json = context.parse(in);
+            context.release();
+            return json;
+          }
+        };
+        allocatedBytes(parseAndRelease, document);
+        final long recycled = allocatedBytes(parseAndRelease, document);
+        final long fresh = allocatedBytes(new MyJSONParser(), document);
+        Asserts.isTrue(recycled * 3 < fresh, recycled + " bytes recycled against " + fresh + " fresh");
+      }
+    });
+
+    tests.add("Parse Context Catches Use After Release", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String document = "{ \"a\": { \"b\": \"c\" }, \"d\": \"e\" }";
+        final ParseContext checked = new ParseContext(null, JSONLimits.NONE, true);
+        final JSON root = checked.parse(document);
+        final JSON child = root.getObject("a");
+        checked.release();
+        checked.parse(document);
+        Asserts.isEqual(0, checked.pooled());
+        for (final JSON stale : new JSON[] { root, child }) {
+          try {
+            stale.getString("b");
+            Asserts.isTrue(false, "the object was released");
+          } catch (IllegalStateException expected) {
+            // all is good
+          }
+          try {
+            stale.setString("b", "x");
+            Asserts.isTrue(false, "the object was released");
+          } catch (IllegalStateException expected) {
+            // all is good
+          }
+          try {
+            stale.getStrings(new ArrayList<String>());
+            Asserts.isTrue(false, "the object was released");
+          } catch (IllegalStateException expected) {
+            // all is good
+          }
+        }
+
+        // Without checking, released objects throw until they are reused.
+        final ParseContext context = new ParseContext();
+        final JSON pooled = context.parse(document);
+        context.release();
+        try {
+          pooled.getObject("a");
+          Asserts.isTrue(false, "the object was released");
+        } catch (IllegalStateException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("MyJSON Remove", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final MyJSON object = new MyJSON();
+        object.setString("a", "1").setObject("b", new MyJSON()).setString("c", "3");
+        object.remove("a").remove("b").remove("missing");
+        Asserts.isEqual(1, object.size());
+        Asserts.isEqual(null, object.getString("a"));
+        Asserts.isEqual(null, object.getObject("b"));
+        final List<String> names = new ArrayList<>();
+        object.getStrings(names);
+        object.getObjects(names);
+        Asserts.isEqual(Arrays.asList("c"), names);
+
+        // Put back as the other kind, and go through many rebuilds.
+        object.setObject("a", new MyJSON()).setString("b", "2");
+        for (int i = 0; i < 1000; ++i) {
+          object.setString("k" + i, "v" + i);
+          if (i % 3 != 0) {
+            object.remove("k" + i);
+          }
+        }
+        Asserts.isEqual(3 + 334, object.size());
+        Asserts.isNotNull(object.getObject("a"));
+        Asserts.isEqual("2", object.getString("b"));
+        Asserts.isEqual("v999", object.getString("k999"));
+        Asserts.isEqual(null, object.getString("k998"));
+        names.clear();
+        object.getStrings(names);
+        Asserts.isEqual(2 + 334, names.size());
+        Asserts.isEqual(Arrays.asList("c", "b", "k0", "k3"), names.subList(0, 4));
+      }
+    });
+
+    tests.add("Diff And Patch", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser parser = factory.parser();
+        final JSON from = parser.parse("{ \"same\": { \"x\": \"1\" }, \"changed\": \"a\", \"gone\": \"b\", "
+            + "\"toObject\": \"c\", \"toString\": { \"y\": \"2\" }, "
+            + "\"deep\": { \"in\": { \"keep\": \"k\", \"set\": \"old\", \"drop\": { } } } }");
+        final JSON to = parser.parse("{ \"same\": { \"x\": \"1\" }, \"changed\": \"A\", "
+            + "\"toObject\": { \"z\": \"3\" }, \"toString\": \"d\", \"added\": { }, "
+            + "\"deep\": { \"in\": { \"keep\": \"k\", \"set\": \"new\" } } }");
+        final JSON[][] pairs = {
+            { from, to },
+            { ImmutableJSON.copyOf(from), ImmutableJSON.copyOf(to) },
+            { PersistentJSON.copyOf(from), PersistentJSON.copyOf(to) },
+            { from, PersistentJSON.copyOf(to) },
+        };
+        for (final JSON[] pair : pairs) {
+          final JSONPatch patch = JSONDiff.diff(pair[0], pair[1]);
+          Asserts.isEqual(7, patch.size());
+          final MyJSON target = MyJSON.copyOf(from);
+          patch.apply(target);
+          assertSameJSON(to, target);
+          Asserts.isTrue(JSONDiff.diff(pair[1], pair[1]).isEmpty(), "a tree has no changes from itself");
+        }
+        Asserts.isTrue(JSONDiff.diff(ImmutableJSON.copyOf(to), PersistentJSON.copyOf(to)).isEmpty(),
+            "equal hashed trees of different kinds");
+
+        // Versions of a persistent tree: only the changed path is compared.
+        final PersistentJSON v1 = PersistentJSON.copyOf(from);
+        final PersistentJSON in = (PersistentJSON) v1.getObject("deep").getObject("in");
+        final PersistentJSON v2 = v1.setObject("deep",
+            ((PersistentJSON) v1.getObject("deep")).setObject("in", in.setString("set", "newer")));
+        final JSONPatch patch = JSONDiff.diff(v1, v2);
+        Asserts.isEqual("set string deep.in.set = \"newer\"\n", patch.toString());
+
+        // A patch that doesn't fit changes nothing.
+        final MyJSON other = MyJSON.copyOf(from).remove("deep");
+        try {
+          JSONDiff.diff(from, to).apply(other);
+          Asserts.isTrue(false, "there is no deep.in to change");
+        } catch (IllegalArgumentException expected) {
+          // all is good
+        }
+        Asserts.isEqual("a", other.getString("changed"));
+        Asserts.isEqual("b", other.getString("gone"));
+
+        // Nor does one that would change an object that can't change in place.
+        final JSONPatch nested = JSONDiff.diff(parser.parse("{ \"a\": \"1\", \"p\": { \"k\": \"1\" } }"),
+            parser.parse("{ \"a\": \"2\", \"p\": { \"k\": \"2\" } }"));
+        final JSON inner = parser.parse("{ \"k\": \"1\" }");
+        for (final JSON p : new JSON[] { PersistentJSON.copyOf(inner), ImmutableJSON.copyOf(inner) }) {
+          final MyJSON target = new MyJSON();
+          target.setString("a", "1").setObject("p", p);
+          try {
+            nested.apply(target);
+            Asserts.isTrue(false, "p can't change in place");
+          } catch (IllegalArgumentException expected) {
+            // all is good
+          }
+          Asserts.isEqual("1", target.getString("a"));
+          Asserts.isEqual("1", target.getObject("p").getString("k"));
+        }
+      }
+    });
+
+    tests.add("Diff, Patch And Copy Take No Stack", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String deep = Documents.deep(100000);
+        final JSON from = new MyJSONParser().parse(deep);
+        final JSON to = new MyJSONParser().parse(deep.replace("bottom", "changed"));
+        Asserts.isEqual(deep, JSONWriter.toString(MyJSON.copyOf(from)));
+
+        final JSONPatch patch = JSONDiff.diff(from, to);
+        Asserts.isEqual(1, patch.size());
+        final MyJSON target = MyJSON.copyOf(from);
+        patch.apply(target);
+        Asserts.isEqual(JSONWriter.toString(to), JSONWriter.toString(target));
+
+        // Setting a deep object copies it.
+        final MyJSON empty = new MyJSON();
+        JSONDiff.diff(empty, from).apply(empty);
+        Asserts.isEqual(deep, JSONWriter.toString(empty));
+
+        final ImmutableJSON frozen = ImmutableJSON.copyOf(from);
+        Asserts.isEqual(deep, JSONWriter.toString(frozen));
+        Asserts.isTrue(ImmutableJSON.copyOf(to).subtreeHash() != frozen.subtreeHash(), "the hash sees the bottom");
+        Asserts.isEqual(ImmutableJSON.copyOf(MyJSON.copyOf(from)).subtreeHash(), frozen.subtreeHash());
+        final PersistentJSON persistent = PersistentJSON.copyOf(from);
+        Asserts.isEqual(deep, JSONWriter.toString(persistent));
+        Asserts.isEqual(frozen.subtreeHash(), persistent.subtreeHash());
+        Asserts.isEqual(deep, JSONWriter.toString(ConcurrentJSON.copyOf(from)));
+        final CachingJSONParser caching =
+            new CachingJSONParser(new MyJSONParser(), new CachingJSONParser.Cache(4, 1L << 30));
+        Asserts.isEqual(deep, JSONWriter.toString(caching.parse(deep)));
+      }
+    });
+
+    tests.add("Streaming Transform", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String record = "{ \"id\" : \"7\",\n  \"user\": { \"name\": \"sam \\\"doe\\\"\", "
+            + "\"password\": \"hunter2\", \"mail\": \"sam@example.com\" },\n"
+            + "  \"session\": { \"token\": \"abc\", \"keys\": { \"a\": \"1\", \"b\": \"2\" } } }";
+        Asserts.isEqual(record, JSONTransform.NONE.transform(record));
+
+        Asserts.isEqual("{ \"id\" : \"7\",\n  \"user\": { \"name\": \"sam \\\"doe\\\"\", "
+            + "\"e\\tmail\": \"sam@example.com\" } }",
+            JSONTransform.NONE.drop("*.password").drop("session").rename("user.mail", "e\tmail")
+                .transform(record));
+        Asserts.isEqual("{\n  \"user\": { \"mail\": \"sam@example.com\" } }",
+            JSONTransform.NONE.drop("id").drop("user.name").drop("user.password").drop("session")
+                .transform(record));
+        Asserts.isEqual("{ \"a\": \"x\", \"c\": \"x\" }",
+            JSONTransform.NONE.redact("a", "x").redact("c", "x").drop("b")
+                .transform("{ \"a\": \"1\", \"b\": { }, \"c\": \"3\" }"));
+
+        final JSONTransform redact = JSONTransform.NONE.redact("session", "***").redact("user.password", "***");
+        final JSON redacted = factory.parser().parse(redact.transform(record));
+        Asserts.isEqual("***", redacted.getObject("user").getString("password"));
+        Asserts.isEqual("***", redacted.getObject("session").getObject("keys").getString("b"));
+        Asserts.isEqual("7", redacted.getString("id"));
+
+        // Keeping gives the same tree as projecting.
+        final String[] kept = { "user.name", "session.keys", "missing.path" };
+        JSONTransform keep = JSONTransform.NONE;
+        final JSONPath[] paths = new JSONPath[kept.length];
+        for (int i = 0; i < kept.length; ++i) {
+          keep = keep.keep(kept[i]);
+          paths[i] = JSONPath.compile(kept[i]);
+        }
+        assertSameJSON(new ProjectingJSONParser(paths).parse(record),
+            factory.parser().parse(keep.transform(record)));
+        Asserts.isEqual("{ }", keep.drop("user").drop("session").transform(record));
+
+        try {
+          JSONTransform.NONE.drop("a").transform("{ \"a\": \"1\", \"b\" }");
+          Asserts.isTrue(false, "the last key has no value");
+        } catch (IOException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Data Binding", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final String document = "{ \"id\": \"18\", \"ignored\": { \"name\": \"x\" }, "
+            + "\"name\": { \"first\": \"sam\", \"la\\\"st\": \"no\", \"last\": \"d\\toe\" }, "
+            + "\"active\": \"true\", \"tags\": { \"a\": \"1\", \"b\": \"2\" }, "
+            + "\"aliases\": { \"old\": { \"first\": \"samuel\" } }, \"cache\": \"no\" }";
+        final JSONBinder<Person> binder = JSONBinder.of(Person.class);
+        final Person[] people = { binder.parse(document), binder.bind(factory.parser().parse(document)) };
+        for (final Person person : people) {
+          Asserts.isEqual(18, person.id);
+          Asserts.isEqual(true, person.active);
+          Asserts.isEqual("sam", person.name.first);
+          Asserts.isEqual("d\toe", person.name.last);
+          Asserts.isEqual("Mountain View", person.city);
+          Asserts.isEqual(null, person.cache);
+          Asserts.isEqual("2", person.tags.get("b"));
+          Asserts.isEqual("samuel", person.aliases.get("old").first);
+          Asserts.isEqual(null, person.aliases.get("old").last);
+        }
+
+        final String[] wrong = {
+          "{ \"id\": \"eighteen\" }", "{ \"name\": \"sam\" }", "{ \"city\": { } }",
+          "{ \"tags\": { \"a\": { } } }", "{ \"active\": \"yes\" }",
+        };
+        final String[] errors = {
+          "Field id of Person needs a number, not \"eighteen\". (at position 8)",
+          "Field name of Person needs an object, not a string. (at position 10)",
+          "Field city of Person needs a string, not an object. (at position 10)",
+          "The values of this map are strings, not objects. (at position 17)",
+          "Field active of Person needs true or false, not \"yes\". (at position 12)",
+        };
+        for (int i = 0; i < wrong.length; ++i) {
+          try {
+            binder.parse(wrong[i]);
+            Asserts.isTrue(false, wrong[i] + " doesn't fit Person");
+          } catch (IOException expected) {
+            Asserts.isEqual(errors[i], expected.getMessage());
+          }
+        }
+        // A tree fails the same way, without positions.
+        for (int i = 0; i < wrong.length; ++i) {
+          try {
+            binder.bind(factory.parser().parse(wrong[i]));
+            Asserts.isTrue(false, wrong[i] + " doesn't fit Person");
+          } catch (IOException expected) {
+            Asserts.isEqual(errors[i].substring(0, errors[i].indexOf(" (at position")), expected.getMessage());
+          }
+        }
+        try {
+          binder.bind(factory.parser().parse("{ \"aliases\": { \"old\": { }, \"new\": \"sam\" } }"));
+          Asserts.isTrue(false, "a string in a map of objects");
+        } catch (IOException expected) {
+          Asserts.isEqual("The values of this map are objects, not strings.", expected.getMessage());
+        }
+
+        // Binding a deep tree takes no stack either.
+        final MyJSON deep = new MyJSON();
+        MyJSON bottom = deep;
+        for (int i = 0; i < 100000; ++i) {
+          final MyJSON next = new MyJSON();
+          bottom.setObject("next", next);
+          bottom = next;
+        }
+        bottom.setString("value", "bottom");
+        Chain chain = JSONBinder.of(Chain.class).bind(deep);
+        for (int i = 0; i < 100000; ++i) {
+          chain = chain.next;
+        }
+        Asserts.isEqual("bottom", chain.value);
+        try {
+          JSONBinder.of(Collection.class);
+          Asserts.isTrue(false, "an interface can't be created");
+        } catch (IllegalArgumentException expected) {
+          // all is good
+        }
+      }
+    });
+
+    tests.add("Indexed Collection", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        final JSONParser parser = factory.parser();
+        final JSONCollection indexed = new JSONCollection();
+        final JSONCollection plain = new JSONCollection();
+        indexed.addHashIndex("city");
+        for (int i = 0; i < 300; ++i) {
+          final String document = "{ \"id\": \"" + i + "\", \"city\": \"city " + (i % 7) + "\", "
+              + "\"address\": { \"zip\": \"" + (10000 + i * 37 % 1000) + "\" } }";
+          Asserts.isEqual(i, indexed.add(parser.parse(document)));
+          plain.add(parser.parse(document));
+        }
+        indexed.addSortedIndex("address.zip");
+        // A path can have both kinds of index, but not two of one kind.
+        indexed.addSortedIndex("city");
+        try {
+          indexed.addHashIndex("city");
+          Asserts.isTrue(false, "a second hash index on city");
+        } catch (IllegalArgumentException expected) {
+          // all is good
+        }
+
+        // Change documents in every way an index can see.
+        for (final JSONCollection collection : new JSONCollection[] { indexed, plain }) {
+          collection.get(3).setString("city", "Lisbon");
+          collection.get(4).getObject("address").setString("zip", "10500");
+          collection.get(5).setObject("address", new MyJSON().setString("zip", "10501"));
+          collection.get(6).setString("address", "none");
+          Asserts.isTrue(collection.remove(7), "document 7 is there");
+          Asserts.isTrue(!collection.remove(7), "document 7 is gone");
+          final JSON direct = parser.parse("{ \"city\": \"Lisbon\" }");
+          final int id = collection.add(direct);
+          direct.setString("city", "Porto");
+          collection.reindex(id);
+        }
+        Asserts.isEqual(300, indexed.size());
+
+        final List<String> queries = Arrays.asList("city 1", "city 0", "Lisbon", "Porto", "nowhere");
+        for (final String query : queries) {
+          final HashSet<Integer> expected = new HashSet<>();
+          final HashSet<Integer> actual = new HashSet<>();
+          plain.find("city", query, expected);
+          indexed.find("city", query, actual);
+          Asserts.isEqual(expected, actual);
+        }
+        final HashSet<Integer> cities = new HashSet<>();
+        final HashSet<Integer> sortedCities = new HashSet<>();
+        plain.findPrefix("city", "city ", cities);
+        indexed.findPrefix("city", "city ", sortedCities);
+        Asserts.isEqual(cities, sortedCities);
+        final HashSet<Integer> lisbon = new HashSet<>();
+        indexed.find("city", "Lisbon", lisbon);
+        Asserts.isEqual(new HashSet<>(Arrays.asList(3)), lisbon);
+
+        final String[][] ranges = { { "105" }, { "1050" }, { "" }, { "10100", "10200" }, { "10500", "10502" } };
+        for (final String[] range : ranges) {
+          final HashSet<Integer> expected = new HashSet<>();
+          final HashSet<Integer> actual = new HashSet<>();
+          if (range.length == 1) {
+            plain.findPrefix("address.zip", range[0], expected);
+            indexed.findPrefix("address.zip", range[0], actual);
+          } else {
+            plain.findRange("address.zip", range[0], range[1], expected);
+            indexed.findRange("address.zip", range[0], range[1], actual);
+          }
+          Asserts.isEqual(expected, actual);
+        }
+        final HashSet<Integer> changed = new HashSet<>();
+        indexed.findRange("address.zip", "10500", "10502", changed);
+        Asserts.isEqual(new HashSet<>(Arrays.asList(4, 5)), changed);
+        final HashSet<Integer> all = new HashSet<>();
+        indexed.findPrefix("address.zip", "", all);
+        Asserts.isEqual(298, all.size());
+      }
+    });
+
+    tests.add("Indexed Collection With One Shared Value", new Test() {
+      @Override
+      public void run(JSONFactory factory) throws Exception {
+        // Many documents under one value all land in one set of ids, which
+        // has to stay fast to add to and remove from.
+        final JSONCollection collection = new JSONCollection();
+        collection.addHashIndex("city");
+        collection.addSortedIndex("country");
+        for (int i = 0; i < 200000; ++i) {
+          collection.add(new MyJSON().setString("city", "Lisbon").setString("country", "PT"));
+        }
+        for (int id = 0; id < 200000; id += 2) {
+          collection.remove(id);
+        }
+        for (int id = 1; id < 1000; id += 2) {
+          collection.get(id).setString("city", "Porto");
+        }
+
+        final HashSet<Integer> lisbon = new HashSet<>();
+        collection.find("city", "Lisbon", lisbon);
+        Asserts.isEqual(100000 - 500, lisbon.size());
+        Asserts.isTrue(!lisbon.contains(0) && !lisbon.contains(1) && lisbon.contains(1001), "the right ids");
+        final HashSet<Integer> portugal = new HashSet<>();
+        collection.findPrefix("country", "P", portugal);
+        Asserts.isEqual(100000, portugal.size());
+      }
+    });
+
     /*
     * Testing for invalid JSON-Lite schemas.
     * All of the following tests SHOULD fail,
@@ -266,16 +1960,86 @@ final class TestMain {
       }
     });
 
-    tests.run(new JSONFactory(){
-      @Override
-      public JSONParser parser() {
-        return new MyJSONParser();
-      }
+    tests.run(new MyJSONFactory());
 
-      @Override
-      public JSON object() {
-        return new MyJSON();
-      }
-    });
+    System.out.println("RUNNING THE SAME TESTS WITH LazyJSONFactory.");
+    tests.run(new LazyJSONFactory());
+  }
+
+  // Compare two JSON trees by walking both of them.
+  private static void assertSameJSON(JSON expected, JSON actual) {
+    final Collection<String> expectedStrings = new HashSet<>();
+    final Collection<String> actualStrings = new HashSet<>();
+    expected.getStrings(expectedStrings);
+    actual.getStrings(actualStrings);
+    Asserts.isEqual(expectedStrings, actualStrings);
+    for (final String name : expectedStrings) {
+      Asserts.isEqual(expected.getString(name), actual.getString(name));
+    }
+
+    final Collection<String> expectedObjects = new HashSet<>();
+    final Collection<String> actualObjects = new HashSet<>();
+    expected.getObjects(expectedObjects);
+    actual.getObjects(actualObjects);
+    Asserts.isEqual(expectedObjects, actualObjects);
+    for (final String name : expectedObjects) {
+      assertSameJSON(expected.getObject(name), actual.getObject(name));
+    }
+  }
+
+  // Bound by the data binding test.
+  private static class Name {
+    String first;
+    String last;
+  }
+
+  private static final class Person {
+    int id;
+    boolean active;
+    Name name;
+    String city = "Mountain View";
+    transient String cache;
+    Map<String, String> tags;
+    Map<String, Name> aliases;
+  }
+
+  private static final class Chain {
+    Chain next;
+    String value;
+  }
+
+  // The large input is eight times the small one, so a linear parser should
+  // allocate about eight times as much while parsing it. A parser that copies
+  // the rest of the input per object would allocate sixty-four times as much
+  // or worse. Allocation is measured instead of time so that garbage
+  // collection and the JIT can't make the result flaky.
+  private static void assertLinear(JSONParser parser, String small, String large) throws Exception {
+    final long smallBytes = allocatedBytes(parser, small);
+    final long largeBytes = allocatedBytes(parser, large);
+    Asserts.isTrue(largeBytes < smallBytes * 12,
+        String.format("parse allocation grew from %d to %d bytes", smallBytes, largeBytes));
+  }
+
+  private static final JSONHandler IGNORE_EVENTS = new JSONHandler() {
+    @Override
+    public void startObject(int position) {}
+
+    @Override
+    public void key(int start, int end, boolean escaped) {}
+
+    @Override
+    public void string(int start, int end, boolean escaped) {}
+
+    @Override
+    public void endObject(int position) {}
+  };
+
+  private static long allocatedBytes(JSONParser parser, String in) throws Exception {
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long thread = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(thread);
+    parser.parse(in);
+    return threads.getThreadAllocatedBytes(thread) - before;
   }
 }
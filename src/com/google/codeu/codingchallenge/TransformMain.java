@@ -0,0 +1,127 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Usage: transform.sh [rules] [input [output]]
+//
+// Rules, applied as by JSONTransform:
+//   --drop=PATH  --keep=PATH  --rename=PATH=NAME  --redact=PATH[=TEXT]
+//
+// Reads one JSON-lite record per line from the input file (or standard
+// input, also as "-") and writes each transformed record on its own line
+// to the output file (or standard output). A record that doesn't parse is
+// reported on standard error and left out, and the exit status is then 1.
+// The totals and throughput go to standard error at the end.
+final class TransformMain {
+
+  public static void main(String[] args) throws Exception {
+    JSONTransform transform = JSONTransform.NONE;
+    String input = "-";
+    String output = "-";
+    int files = 0;
+    for (final String arg : args) {
+      if (arg.startsWith("--drop=")) {
+        transform = transform.drop(arg.substring("--drop=".length()));
+      } else if (arg.startsWith("--keep=")) {
+        transform = transform.keep(arg.substring("--keep=".length()));
+      } else if (arg.startsWith("--rename=")) {
+        final String rule = arg.substring("--rename=".length());
+        final int split = rule.lastIndexOf('=');
+        if (split < 0) {
+          usage("--rename needs PATH=NAME");
+        }
+        transform = transform.rename(rule.substring(0, split), rule.substring(split + 1));
+      } else if (arg.startsWith("--redact=")) {
+        final String rule = arg.substring("--redact=".length());
+        final int split = rule.lastIndexOf('=');
+        transform = split < 0
+            ? transform.redact(rule, "REDACTED")
+            : transform.redact(rule.substring(0, split), rule.substring(split + 1));
+      } else if (arg.startsWith("--")) {
+        usage("unknown option " + arg);
+      } else if (files == 0) {
+        input = arg;
+        ++files;
+      } else if (files == 1) {
+        output = arg;
+        ++files;
+      } else {
+        usage("too many files");
+      }
+    }
+
+    final long start = System.nanoTime();
+    long records = 0;
+    long failed = 0;
+    long chars = 0;
+    try (BufferedReader in = new BufferedReader(reader(input), 1 << 16);
+         Writer out = new BufferedWriter(writer(output), 1 << 16)) {
+      final StringBuilder record = new StringBuilder();
+      long line = 0;
+      for (String text; (text = in.readLine()) != null; ) {
+        ++line;
+        chars += text.length() + 1;
+        if (text.trim().isEmpty()) {
+          continue;
+        }
+        // Transform into a buffer first, so a bad record writes nothing.
+        record.setLength(0);
+        try {
+          transform.transform(text, record);
+        } catch (IOException ex) {
+          System.err.println("line " + line + ": " + ex.getMessage());
+          ++failed;
+          continue;
+        }
+        out.append(record).append('\n');
+        ++records;
+      }
+    }
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.format("%d records, %d failed, %.1f MB in %.2f s (%.1f MB/s)\n",
+        records, failed, chars / 1e6, seconds, chars / 1e6 / seconds);
+    if (failed > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static Reader reader(String file) throws IOException {
+    return new InputStreamReader(file.equals("-") ? System.in : new FileInputStream(file),
+        StandardCharsets.UTF_8);
+  }
+
+  private static Writer writer(String file) throws IOException {
+    return new OutputStreamWriter(file.equals("-") ? System.out : new FileOutputStream(file),
+        StandardCharsets.UTF_8);
+  }
+
+  private static void usage(String problem) {
+    System.err.println(problem);
+    System.err.println("Usage: transform.sh [--drop=PATH] [--keep=PATH] [--rename=PATH=NAME] "
+        + "[--redact=PATH[=TEXT]] [input [output]]");
+    System.exit(2);
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// A JSON object produced by Utf8JSONParser. Keys and values are slices of
+// the parsed buffer and are only turned into Strings when they are used:
+// keys on the first lookup, each value on its first read.
+final class Utf8JSON extends CopyOnWriteJSON {
+
+  private final ByteBuffer source;
+  // Four ints per entry: key start, key end, value start, value end. An end
+  // is stored as its complement when the slice contains escapes.
+  private final int[] slots;
+  // The nested object of each entry, or null when the entry is a string.
+  private final JSON[] children;
+
+  private Map<String, Integer> index;
+  private String[] values;
+
+  Utf8JSON(ByteBuffer source, int[] slots, JSON[] children) {
+    this.source = source;
+    this.slots = slots;
+    this.children = children;
+  }
+
+  @Override
+  JSON readObject(String name) {
+    final int entry = find(name);
+    return entry < 0 ? null : children[entry];
+  }
+
+  @Override
+  String readString(String name) {
+    final int entry = find(name);
+    return entry < 0 || children[entry] != null ? null : value(entry);
+  }
+
+  @Override
+  void readObjects(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : index().entrySet()) {
+      if (children[it.getValue()] != null) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  @Override
+  void readStrings(Collection<String> names) {
+    for (final Map.Entry<String, Integer> it : index().entrySet()) {
+      if (children[it.getValue()] == null) {
+        names.add(it.getKey());
+      }
+    }
+  }
+
+  private int find(String name) {
+    final Integer entry = index().get(name);
+    return entry == null ? -1 : entry;
+  }
+
+  // Decode every key once. Later duplicates replace earlier ones, the same
+  // way repeated setString calls would.
+  private Map<String, Integer> index() {
+    if (index == null) {
+      final int count = children.length;
+      index = new HashMap<>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; ++i) {
+        index.put(slice(slots[i * 4], slots[i * 4 + 1]), i);
+      }
+    }
+    return index;
+  }
+
+  private String value(int entry) {
+    if (values == null) {
+      values = new String[children.length];
+    }
+    if (values[entry] == null) {
+      values[entry] = slice(slots[entry * 4 + 2], slots[entry * 4 + 3]);
+    }
+    return values[entry];
+  }
+
+  private String slice(int start, int end) {
+    return end < 0
+        ? Utf8JSONParser.decode(source, start, ~end, true)
+        : Utf8JSONParser.decode(source, start, end, false);
+  }
+
+  @Override
+  void copyTo(MyJSON copy) {
+    for (final Map.Entry<String, Integer> it : index().entrySet()) {
+      final int entry = it.getValue();
+      if (children[entry] != null) {
+        copy.setObject(it.getKey(), children[entry]);
+      } else {
+        copy.setString(it.getKey(), value(entry));
+      }
+    }
+  }
+}
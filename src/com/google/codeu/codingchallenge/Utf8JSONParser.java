@@ -0,0 +1,305 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.codeu.codingchallenge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Parses UTF-8 encoded JSON-lite straight from bytes. UTF-8 and escapes are
+// validated in the same pass that finds the structure, but no String is
+// created: the resulting Utf8JSON objects keep slices of the buffer and
+// only decode a key or value once it is asked for.
+//
+// The buffer must not change while any JSON parsed from it is in use.
+final class Utf8JSONParser implements JSONParser {
+
+  @Override
+  public JSON parse(String in) throws IOException {
+    return parse(ByteBuffer.wrap(in.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  // PARSE BUFFER
+  //
+  // Parse the bytes between the buffer's position and limit. The buffer's
+  // position is not changed.
+  public JSON parse(ByteBuffer in) throws IOException {
+    return new Scan(in).run();
+  }
+
+  // PARSE FILE
+  //
+  // Memory-map the file and parse it in place.
+  public JSON parse(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  // DECODE
+  //
+  // Create the String for the slice [start, end) of the buffer, resolving
+  // escapes if there are any. The slice must already have been validated.
+  static String decode(ByteBuffer in, int start, int end, boolean escaped) {
+    final byte[] bytes;
+    int length = end - start;
+    if (in.hasArray() && !escaped) {
+      return new String(in.array(), in.arrayOffset() + start, length, StandardCharsets.UTF_8);
+    }
+    bytes = new byte[length];
+    if (!escaped) {
+      for (int i = 0; i < length; ++i) {
+        bytes[i] = in.get(start + i);
+      }
+    } else {
+      length = 0;
+      for (int i = start; i < end; ++i) {
+        byte b = in.get(i);
+        if (b == '\\') {
+          b = in.get(++i);
+          b = b == 't' ? (byte) '\t' : b == 'n' ? (byte) '\n' : b;
+        }
+        bytes[length++] = b;
+      }
+    }
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  // One run of the parser over one buffer. Entries of each open object are
+  // collected as (key start, key end, value start, value end) slots, with an
+  // end stored as its complement when that slice contains escapes.
+  private static final class Scan {
+
+    private final ByteBuffer in;
+    private final int base;
+    private final int limit;
+    private int pos;
+    private boolean escaped;
+
+    private final ArrayList<int[]> slots = new ArrayList<>();
+    private final ArrayList<JSON[]> children = new ArrayList<>();
+    private int[] counts = new int[16];
+    private JSON root;
+
+    Scan(ByteBuffer in) {
+      this.in = in;
+      this.base = in.position();
+      this.limit = in.limit();
+    }
+
+    JSON run() throws IOException {
+      pos = skipWhitespace(base);
+      if (pos >= limit || in.get(pos) != '{') {
+        throw error("Illegal beginning of schema.", pos);
+      }
+      ++pos;
+      open(0);
+
+      int depth = 1;
+      boolean empty = true;
+      while (depth > 0) {
+        pos = skipWhitespace(pos);
+        byte token = byteAt(pos);
+        if (token == '}' && empty) {
+          ++pos;
+          end(--depth);
+        } else {
+          if (token != '"') {
+            throw error("Missing key.", pos);
+          }
+          final int keyStart = pos + 1;
+          final int keyEnd = scanString(keyStart, "Illegal escape character in key.");
+          final int key = escaped ? ~keyEnd : keyEnd;
+
+          pos = skipWhitespace(keyEnd + 1);
+          if (byteAt(pos) != ':') {
+            throw error("Missing colon after key.", pos);
+          }
+          pos = skipWhitespace(pos + 1);
+          token = byteAt(pos);
+          if (token == '"') {
+            final int valueStart = pos + 1;
+            final int valueEnd = scanString(valueStart, "Illegal escape character in value.");
+            add(depth - 1, keyStart, key, valueStart, escaped ? ~valueEnd : valueEnd);
+            pos = valueEnd + 1;
+          } else if (token == '{') {
+            add(depth - 1, keyStart, key, -1, -1);
+            open(depth++);
+            empty = true;
+            ++pos;
+            continue;
+          } else {
+            throw error("Invalid character after given key.", pos);
+          }
+        }
+
+        empty = false;
+        while (depth > 0) {
+          pos = skipWhitespace(pos);
+          token = byteAt(pos);
+          if (token == ',') {
+            ++pos;
+            break;
+          } else if (token == '}') {
+            ++pos;
+            end(--depth);
+          } else {
+            throw error("Illegal character after object value.", pos);
+          }
+        }
+      }
+
+      final int tail = skipWhitespace(pos);
+      if (tail != limit) {
+        throw error("Invalid character after given object.", tail);
+      }
+      return root;
+    }
+
+    // Seal the object at the given depth and hang it on its parent's last
+    // entry, whose key is already in place.
+    private void end(int depth) {
+      final int count = counts[depth];
+      final JSON closed = new Utf8JSON(in,
+          Arrays.copyOf(slots.get(depth), count * 4),
+          Arrays.copyOf(children.get(depth), count));
+      if (depth == 0) {
+        root = closed;
+      } else {
+        children.get(depth - 1)[counts[depth - 1] - 1] = closed;
+      }
+    }
+
+    private void open(int depth) {
+      if (depth == counts.length) {
+        counts = Arrays.copyOf(counts, depth * 2);
+      }
+      counts[depth] = 0;
+      if (depth == slots.size()) {
+        slots.add(new int[16]);
+        children.add(new JSON[4]);
+      }
+    }
+
+    private void add(int depth, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+      final int count = counts[depth];
+      int[] s = slots.get(depth);
+      if (s.length < (count + 1) * 4) {
+        s = Arrays.copyOf(s, s.length * 2);
+        slots.set(depth, s);
+      }
+      s[count * 4] = keyStart;
+      s[count * 4 + 1] = keyEnd;
+      s[count * 4 + 2] = valueStart;
+      s[count * 4 + 3] = valueEnd;
+      JSON[] c = children.get(depth);
+      if (c.length <= count) {
+        c = Arrays.copyOf(c, c.length * 2);
+        children.set(depth, c);
+      }
+      c[count] = null;
+      counts[depth] = count + 1;
+    }
+
+    // Find the closing quote of the string starting at start, validating
+    // escapes and UTF-8 sequences on the way.
+    private int scanString(int start, String escapeMessage) throws IOException {
+      escaped = false;
+      int i = start;
+      while (i < limit) {
+        final int b = in.get(i) & 0xff;
+        if (b == '"') {
+          return i;
+        }
+        if (b == '\\') {
+          final byte e = byteAt(i + 1);
+          if (e != '"' && e != '\\' && e != 't' && e != 'n') {
+            throw error(escapeMessage, i);
+          }
+          escaped = true;
+          i += 2;
+        } else if (b < 0x80) {
+          ++i;
+        } else {
+          i = skipUtf8(i, b);
+        }
+      }
+      throw error("Incomplete schema.", limit);
+    }
+
+    // Validate the multi-byte UTF-8 sequence that starts with lead at i and
+    // return the index just past it.
+    private int skipUtf8(int i, int lead) throws IOException {
+      final int length;
+      int min = 0x80;
+      int max = 0xbf;
+      if (lead >= 0xc2 && lead <= 0xdf) {
+        length = 2;
+      } else if (lead >= 0xe0 && lead <= 0xef) {
+        length = 3;
+        if (lead == 0xe0) {
+          min = 0xa0;  // overlong
+        } else if (lead == 0xed) {
+          max = 0x9f;  // surrogates
+        }
+      } else if (lead >= 0xf0 && lead <= 0xf4) {
+        length = 4;
+        if (lead == 0xf0) {
+          min = 0x90;  // overlong
+        } else if (lead == 0xf4) {
+          max = 0x8f;  // beyond U+10FFFF
+        }
+      } else {
+        throw error("Invalid UTF-8.", i);
+      }
+      for (int k = 1; k < length; ++k) {
+        final int b = byteAt(i + k) & 0xff;
+        if (b < min || b > max) {
+          throw error("Invalid UTF-8.", i);
+        }
+        min = 0x80;
+        max = 0xbf;
+      }
+      return i + length;
+    }
+
+    private byte byteAt(int i) throws IOException {
+      if (i >= limit) {
+        throw error("Incomplete schema.", limit);
+      }
+      return in.get(i);
+    }
+
+    private int skipWhitespace(int i) {
+      while (i < limit) {
+        final byte c = in.get(i);
+        if (c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+          break;
+        }
+        ++i;
+      }
+      return i;
+    }
+
+    private IOException error(String message, int position) {
+      return new IOException(message + " (at position " + (position - base) + ")");
+    }
+  }
+}